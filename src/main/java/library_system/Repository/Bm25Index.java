@@ -0,0 +1,308 @@
+package library_system.repository;
+
+import library_system.domain.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Word-level inverted index ranking elements for multi-word queries with Okapi BM25.
+ * <p>
+ * The text of every configured field (already normalized, see {@link TextNormalizer}) is split
+ * into words on anything that is not a letter or digit; each word maps to the documents that
+ * contain it together with its term frequency. A query is tokenized the same way and only the
+ * posting lists of its own words are visited, so the cost depends on how common the query words
+ * are, not on the catalog size. A document matches if it contains at least one query word; rare
+ * words weigh more than common ones, and a word in a short text weighs more than the same word
+ * in a long one.
+ * </p>
+ * <p>
+ * Only the best {@code limit} documents are kept, in a bounded min-heap, so a query that matches
+ * most of the catalog does not build and sort a full result list. Equal scores keep insertion
+ * order. Like {@link NGramIndex}, an element is indexed when added (re-add it after changing a
+ * field in place) and removed documents are compacted away lazily. Queries take a shared lock.
+ * </p>
+ *
+ * @param <T> indexed element type
+ */
+public class Bm25Index<T> implements TrackedList.Listener<T> {
+
+    /** Term frequency saturation. */
+    static final double K1 = 1.2;
+
+    /** Document length normalization. */
+    static final double B = 0.75;
+
+    /** Document ids and term frequencies of one word, ids ascending. */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] freqs = new int[2];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size++] = freq;
+        }
+    }
+
+    private final List<Function<T, String>> fields;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Document id -> element (null once removed). */
+    private final List<T> docs = new ArrayList<>();
+
+    /** Document id -> word -> frequency, as indexed (null once removed). */
+    private final List<Map<String, Integer>> docTerms = new ArrayList<>();
+
+    /** Document id -> number of words (0 once removed). */
+    private int[] lengths = new int[16];
+
+    /** Element -> its document id. */
+    private final Map<T, Integer> docIds = new IdentityHashMap<>();
+
+    /** Elements added more than once -> number of extra copies. */
+    private final Map<T, Integer> extraCopies = new IdentityHashMap<>();
+
+    /** Word -> postings (may still list removed documents until compaction). */
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    /** Word -> number of live documents containing it. */
+    private final Map<String, Integer> docFreq = new HashMap<>();
+
+    private long totalLength = 0;
+    private int removed = 0;
+
+    /**
+     * @param fields extractors of the normalized texts to index (each may return null)
+     */
+    @SafeVarargs
+    public Bm25Index(Function<T, String>... fields) {
+        this.fields = List.of(fields);
+    }
+
+    @Override
+    public void added(T element) {
+        add(element);
+    }
+
+    @Override
+    public void removed(T element) {
+        remove(element);
+    }
+
+    @Override
+    public void cleared() {
+        clear();
+    }
+
+    /**
+     * Indexes an element.
+     *
+     * @param element element to add (null is ignored)
+     */
+    public void add(T element) {
+        if (element == null) return;
+        lock.writeLock().lock();
+        try {
+            if (docIds.containsKey(element)) {
+                extraCopies.merge(element, 1, Integer::sum);
+                return;
+            }
+            insert(element, termFrequencies(element));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(T element, Map<String, Integer> terms) {
+        int id = docs.size();
+        docs.add(element);
+        docTerms.add(terms);
+        docIds.put(element, id);
+        if (id == lengths.length) lengths = Arrays.copyOf(lengths, id * 2);
+        int length = 0;
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), t -> new Postings()).add(id, term.getValue());
+            docFreq.merge(term.getKey(), 1, Integer::sum);
+            length += term.getValue();
+        }
+        lengths[id] = length;
+        totalLength += length;
+    }
+
+    /**
+     * Removes an element (or one extra copy of it).
+     *
+     * @param element element to remove
+     */
+    public void remove(T element) {
+        if (element == null) return;
+        lock.writeLock().lock();
+        try {
+            Integer copies = extraCopies.get(element);
+            if (copies != null) {
+                if (copies == 1) extraCopies.remove(element);
+                else extraCopies.put(element, copies - 1);
+                return;
+            }
+            Integer id = docIds.remove(element);
+            if (id == null) return;
+            // words as indexed, in case the element's fields changed since; postings keep the stale id
+            for (String word : docTerms.get(id).keySet()) {
+                docFreq.computeIfPresent(word, (t, n) -> n == 1 ? null : n - 1);
+            }
+            docs.set(id, null);
+            docTerms.set(id, null);
+            totalLength -= lengths[id];
+            lengths[id] = 0;
+            if (++removed > 64 && removed > docIds.size()) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Rebuilds the postings without removed documents. */
+    private void compact() {
+        List<T> liveDocs = new ArrayList<>();
+        List<Map<String, Integer>> liveTerms = new ArrayList<>();
+        for (int i = 0; i < docs.size(); i++) {
+            if (docs.get(i) == null) continue;
+            liveDocs.add(docs.get(i));
+            liveTerms.add(docTerms.get(i));
+        }
+        docs.clear();
+        docTerms.clear();
+        docIds.clear();
+        postings.clear();
+        docFreq.clear();
+        totalLength = 0;
+        removed = 0;
+        for (int i = 0; i < liveDocs.size(); i++) insert(liveDocs.get(i), liveTerms.get(i));
+    }
+
+    /**
+     * Removes every element.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            docTerms.clear();
+            docIds.clear();
+            extraCopies.clear();
+            postings.clear();
+            docFreq.clear();
+            lengths = new int[16];
+            totalLength = 0;
+            removed = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the best matches for a free-text query, most relevant first.
+     *
+     * @param query words to look for (case-insensitive, any order)
+     * @param limit maximum number of results
+     * @return up to {@code limit} elements containing at least one query word
+     */
+    public List<T> search(String query, int limit) {
+        if (query == null || limit <= 0) return new ArrayList<>();
+        Set<String> words = new LinkedHashSet<>(tokenize(TextNormalizer.fold(query)));
+        lock.readLock().lock();
+        try {
+            int n = docIds.size();
+            if (n == 0 || words.isEmpty()) return new ArrayList<>();
+            double avgLength = Math.max(1.0, (double) totalLength / n);
+
+            Map<Integer, double[]> scores = new HashMap<>();
+            for (String word : words) {
+                Postings p = postings.get(word);
+                Integer df = docFreq.get(word);
+                if (p == null || df == null) continue;
+                double idf = Math.log(1 + (n - df + 0.5) / (df + 0.5));
+                for (int i = 0; i < p.size; i++) {
+                    int doc = p.docs[i];
+                    if (docs.get(doc) == null) continue;
+                    double tf = p.freqs[i];
+                    double norm = K1 * (1 - B + B * lengths[doc] / avgLength);
+                    scores.computeIfAbsent(doc, d -> new double[1])[0] += idf * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+
+            // min-heap of the best `limit` so far: lowest score on top, later insertion loses ties
+            PriorityQueue<Map.Entry<Integer, double[]>> best = new PriorityQueue<>(Math.min(limit, scores.size() + 1),
+                    (a, c) -> a.getValue()[0] != c.getValue()[0]
+                            ? Double.compare(a.getValue()[0], c.getValue()[0])
+                            : Integer.compare(c.getKey(), a.getKey()));
+            for (Map.Entry<Integer, double[]> entry : scores.entrySet()) {
+                if (best.size() < limit) {
+                    best.add(entry);
+                } else if (best.comparator().compare(entry, best.peek()) > 0) {
+                    best.poll();
+                    best.add(entry);
+                }
+            }
+            List<T> result = new ArrayList<>(best.size());
+            while (!best.isEmpty()) result.add(docs.get(best.poll().getKey()));
+            Collections.reverse(result);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of indexed elements
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Map<String, Integer> termFrequencies(T element) {
+        Map<String, Integer> terms = new HashMap<>();
+        for (Function<T, String> field : fields) {
+            for (String word : tokenize(field.apply(element))) terms.merge(word, 1, Integer::sum);
+        }
+        return terms;
+    }
+
+    /**
+     * Splits normalized text into words (maximal runs of letters and digits).
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+}
@@ -1,93 +1,95 @@
 package library_system.repository;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import library_system.domain.Book;
+import library_system.domain.TextNormalizer;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Repository for managing Book persistence and in-memory list.
+ * <p>
+ * The list is copy-on-write: searches iterate a stable snapshot without locking while
+ * mutators (synchronized) replace it, so concurrent readers never see a half-updated catalog.
+ * </p>
+ * <p>
+ * Title, author and ISBN substring searches are answered by trigram indexes
+ * ({@link NGramIndex}); exact lookups and uniqueness checks by hash indexes on the normalized
+ * keys ({@link KeyIndex}); ranked multi-word searches by a BM25 index ({@link Bm25Index}).
+ * The list reports every change to them ({@link TrackedList}), so they stay in sync on add,
+ * load and clear, including changes made directly on {@link #getBooks()}.
+ * </p>
  */
 public class BookRepository {
 
-    private static final List<Book> books = new ArrayList<>();
+    private static final NGramIndex<Book> titleIndex = new NGramIndex<>(Book::getNormalizedTitle);
+    private static final NGramIndex<Book> authorIndex = new NGramIndex<>(Book::getNormalizedAuthor);
+    private static final NGramIndex<Book> isbnIndex = new NGramIndex<>(Book::getNormalizedIsbn);
+    private static final Bm25Index<Book> textIndex = new Bm25Index<>(Book::getNormalizedTitle, Book::getNormalizedAuthor);
+
+    private static final KeyIndex<Book> byTitle = new KeyIndex<>(Book::getNormalizedTitle);
+    private static final KeyIndex<Book> byIsbn = new KeyIndex<>(Book::getNormalizedIsbn);
+    private static final KeyIndex<Book> byTitleAndAuthor = new KeyIndex<>(BookRepository::titleAuthorKey);
+
+    private static final List<Book> books = new TrackedList<>(TrackedList.Listener.all(
+            List.<TrackedList.Listener<Book>>of(titleIndex, authorIndex, isbnIndex, textIndex, byTitle, byIsbn, byTitleAndAuthor)));
     private static final String FILE_PATH = "src/main/resources/books.json";
 
     private static final ObjectMapper mapper = MapperProvider.MAPPER;
 
+    /** Snapshot format; the file name follows it (books.json / books.smile). */
+    private static StorageFormat format = StorageFormat.JSON;
+
     /**
      * Loads books from file, auto-creating and repairing JSON entries when necessary.
+     * Records are streamed and repaired one at a time in a single parse of the file.
      */
-    public static void loadFromFile() {
+    public static synchronized void loadFromFile() {
         try {
-            File file = new File(FILE_PATH);
+            File file = format.resolve(new File(FILE_PATH));
             if (!file.exists() || file.length() == 0) {
                 // ensure parent and empty file present
                 FileUtil.ensureDataDirExists();
-                mapper.writerWithDefaultPrettyPrinter().writeValue(file, List.of());
+                format.mapper().writerWithDefaultPrettyPrinter().writeValue(file, List.of());
                 books.clear();
                 return;
             }
 
-            JsonNode root = mapper.readTree(file);
-            ArrayNode array;
-            if (root == null || root.isNull()) {
-                array = mapper.createArrayNode();
-            } else if (root.isArray()) {
-                array = (ArrayNode) root;
-            } else {
-                array = mapper.createArrayNode();
-                array.add(root);
-            }
-
-            boolean fixed = false;
-            ArrayNode cleaned = mapper.createArrayNode();
-            for (int i = 0; i < array.size(); i++) {
-                JsonNode node = array.get(i);
-                if (node != null && node.isObject()) {
-                    ObjectNode obj = (ObjectNode) node;
-                    ObjectNode clean = mapper.createObjectNode();
-                    // Ensure mediaType exists and is BOOK
-                    if (!obj.has("mediaType") || obj.get("mediaType").isNull() || obj.get("mediaType").asText().isEmpty()) {
-                        clean.put("mediaType", "BOOK");
-                        fixed = true;
-                    } else {
-                        clean.put("mediaType", obj.get("mediaType").asText());
-                    }
-                    // title/author/isbn
-                    if (obj.has("title")) clean.put("title", obj.get("title").asText());
-                    if (obj.has("author")) clean.put("author", obj.get("author").asText());
-                    if (obj.has("isbn")) clean.put("isbn", obj.get("isbn").asText());
-                    // quantity - default to 1 if missing
-                    if (obj.has("quantity") && obj.get("quantity").canConvertToInt()) clean.put("quantity", obj.get("quantity").asInt());
-                    else { clean.put("quantity", 1); fixed = true; }
-                    // borrowDuration
-                    if (obj.has("borrowDuration")) clean.put("borrowDuration", obj.get("borrowDuration").asInt());
-
-                    cleaned.add(clean);
+            List<Book> loaded = new ArrayList<>();
+            boolean[] fixed = {false};
+            FileUtil.forEachRecord(file, format.mapper(), obj -> {
+                // Ensure mediaType exists and is BOOK
+                if (!obj.has("mediaType") || obj.get("mediaType").isNull() || obj.get("mediaType").asText().isEmpty()) {
+                    obj.put("mediaType", "BOOK");
+                    fixed[0] = true;
+                }
+                // quantity - default to 1 if missing
+                if (!obj.has("quantity") || !obj.get("quantity").canConvertToInt()) {
+                    obj.put("quantity", 1);
+                    fixed[0] = true;
                 }
-            }
-
-            if (fixed) {
-                // rewrite repaired and cleaned JSON
-                mapper.writerWithDefaultPrettyPrinter().writeValue(file, cleaned);
-            }
 
-            List<Book> loaded = mapper.readValue(file, new TypeReference<List<Book>>() {});
+                Book b = mapper.treeToValue(obj, Book.class);
+                if (b == null) return;
+                // Ensure quantity >=0
+                b.setQuantity(Math.max(0, b.getQuantity()));
+                loaded.add(b);
+            });
+            // one copy of the backing array instead of one per record
             books.clear();
             books.addAll(loaded);
 
-            // Ensure quantity >=0
-            for (Book b : books) {
-                if (b == null) continue;
-                b.setQuantity(Math.max(0, b.getQuantity()));
-            }
+            // rewrite repaired and cleaned JSON from memory instead of re-reading the file
+            if (fixed[0]) saveToFile();
 
         } catch (Exception e) {
             System.err.println("Error loading books: " + e.getMessage());
@@ -99,26 +101,54 @@ public class BookRepository {
      * Saves books to disk (pretty printed) and ensures mediaType & quantity are persisted.
      * Writes a cleaned representation (no id, no borrowed flag).
      */
-    public static void saveToFile() {
+    public static synchronized void saveToFile() {
         try {
-            // write cleaned array
-            ArrayNode arr = mapper.createArrayNode();
-            for (Book b : books) {
-                ObjectNode obj = mapper.createObjectNode();
-                obj.put("mediaType", "BOOK");
-                if (b.getTitle() != null) obj.put("title", b.getTitle());
-                if (b.getAuthor() != null) obj.put("author", b.getAuthor());
-                if (b.getIsbn() != null) obj.put("isbn", b.getIsbn());
-                obj.put("quantity", b.getQuantity());
-                obj.put("borrowDuration", b.getBorrowDuration());
-                arr.add(obj);
-            }
-            FileUtil.writeAtomic(new File(FILE_PATH), arr, mapper);
+            writeFile();
         } catch (Exception e) {
             System.err.println("Error saving books: " + e.getMessage());
         }
     }
 
+    /**
+     * Same as {@link #saveToFile()} but reports failure to the caller.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    static synchronized void writeFile() throws IOException {
+        // write cleaned array
+        ArrayNode arr = mapper.createArrayNode();
+        for (Book b : books) {
+            ObjectNode obj = mapper.createObjectNode();
+            obj.put("mediaType", "BOOK");
+            if (b.getTitle() != null) obj.put("title", b.getTitle());
+            if (b.getAuthor() != null) obj.put("author", b.getAuthor());
+            if (b.getIsbn() != null) obj.put("isbn", b.getIsbn());
+            obj.put("quantity", b.getQuantity());
+            obj.put("borrowDuration", b.getBorrowDuration());
+            arr.add(obj);
+        }
+        FileUtil.writeAtomic(format.resolve(new File(FILE_PATH)), arr, format.mapper());
+    }
+
+    /**
+     * Selects the snapshot format used by {@link #loadFromFile()} and {@link #saveToFile()}.
+     * Existing data is converted when the file for the new format does not exist yet.
+     *
+     * @param newFormat JSON (default, human readable) or SMILE (binary)
+     */
+    public static synchronized void setStorageFormat(StorageFormat newFormat) {
+        if (newFormat == null) return;
+        StorageFormat.migrate(new File(FILE_PATH), format, newFormat);
+        format = newFormat;
+    }
+
+    /**
+     * @return the snapshot format currently used for books
+     */
+    public static synchronized StorageFormat getStorageFormat() {
+        return format;
+    }
+
     /**
      * Returns the live in-memory list of books. Modifying returned list will affect repo.
      *
@@ -136,23 +166,76 @@ public class BookRepository {
     public static List<Book> getAll() { return books; }
 
     /**
-     * Adds a new book and persists.
+     * Adds a new book and schedules a save.
      *
      * @param b book to add
      */
-    public static void addBook(Book b) {
+    public static synchronized void addBook(Book b) {
         if (b == null) return;
         if (b.getQuantity() <= 0) b.setQuantity(1);
         books.add(b);
-        saveToFile();
+        markDirty();
+    }
+
+    /**
+     * Adds a book unless one with the same title or ISBN (normalized) already exists.
+     * The check and the insert happen atomically.
+     *
+     * @param b book to add
+     * @return true if the book was added
+     */
+    public static synchronized boolean addBookIfUnique(Book b) {
+        if (b == null) return false;
+        if (existsByTitle(b.getTitle()) || existsByIsbn(b.getIsbn())) return false;
+        addBook(b);
+        return true;
     }
 
     /**
-     * Clears repository and saves.
+     * Adds a batch of books in one step and schedules a single save (bulk import).
+     * Books whose title or ISBN already exists in the catalog, or earlier in the batch, are skipped.
+     *
+     * @param batch books to add
+     * @return the books that were skipped as duplicates
      */
-    public static void clear() {
+    public static synchronized List<Book> addBooks(Collection<Book> batch) {
+        List<Book> accepted = new ArrayList<>();
+        List<Book> skipped = new ArrayList<>();
+        Set<String> titles = new HashSet<>();
+        Set<String> isbns = new HashSet<>();
+        for (Book b : batch) {
+            if (b == null) continue;
+            String title = b.getNormalizedTitle();
+            String isbn = b.getNormalizedIsbn();
+            if (byTitle.contains(title) || byIsbn.contains(isbn)
+                    || (title != null && !titles.add(title)) || (isbn != null && !isbns.add(isbn))) {
+                skipped.add(b);
+                continue;
+            }
+            if (b.getQuantity() <= 0) b.setQuantity(1);
+            accepted.add(b);
+        }
+        if (!accepted.isEmpty()) {
+            books.addAll(accepted);
+            markDirty();
+        }
+        return skipped;
+    }
+
+    /**
+     * Clears repository and schedules a save.
+     */
+    public static synchronized void clear() {
         books.clear();
-        saveToFile();
+        markDirty();
+    }
+
+    /**
+     * Schedules a save of the book file (immediate unless write-behind persistence is enabled).
+     * Call after changing a repository-held book in place, e.g. its quantity.
+     */
+    public static void markDirty() {
+        PersistenceScheduler.markDirty("books", BookRepository::writeFile);
     }
 
     /**
@@ -163,12 +246,44 @@ public class BookRepository {
      */
     public static List<Book> findByTitleContaining(String part) {
         if (part == null || part.isBlank()) return new ArrayList<>(books);
-        String lower = part.toLowerCase();
-        List<Book> res = new ArrayList<>();
-        for (Book b : books) {
-            if (b.getTitle() != null && b.getTitle().toLowerCase().contains(lower)) res.add(b);
-        }
-        return res;
+        return titleIndex.containing(part);
+    }
+
+    /**
+     * Ranked free-text search over title and author.
+     *
+     * @param query words to look for
+     * @param limit maximum number of results
+     * @return best matching books, most relevant first
+     */
+    public static List<Book> searchRanked(String query, int limit) {
+        return textIndex.search(query, limit);
+    }
+
+    /**
+     * One page of {@link #findByTitleContaining(String)}; only the returned books are collected.
+     *
+     * @param part   substring of title (blank pages through the whole catalog)
+     * @param offset number of leading matches to skip
+     * @param limit  maximum number of books to return
+     * @return the page, in catalog order
+     */
+    public static Page<Book> findByTitleContaining(String part, int offset, int limit) {
+        if (part == null || part.isBlank()) return Page.of(books.iterator(), offset, limit);
+        return titleIndex.containing(part, offset, limit);
+    }
+
+    /**
+     * Lazily streams the books whose title contains {@code part}, without building the full
+     * result: the title index is walked once and candidates are verified as the stream reaches
+     * them. A blank query streams the catalog snapshot directly.
+     *
+     * @param part substring of title
+     * @return matching books in catalog order
+     */
+    public static Stream<Book> streamByTitleContaining(String part) {
+        if (part == null || part.isBlank()) return books.stream();
+        return titleIndex.stream(part);
     }
 
     /**
@@ -189,10 +304,7 @@ public class BookRepository {
      */
     public static List<Book> findByAuthor(String author) {
         if (author == null) return new ArrayList<>();
-        String lower = author.toLowerCase();
-        List<Book> res = new ArrayList<>();
-        for (Book b : books) if (b.getAuthor() != null && b.getAuthor().toLowerCase().contains(lower)) res.add(b);
-        return res;
+        return authorIndex.containing(author);
     }
 
     /**
@@ -203,10 +315,7 @@ public class BookRepository {
      */
     public static List<Book> findByIsbn(String isbn) {
         if (isbn == null) return new ArrayList<>();
-        String lower = isbn.toLowerCase();
-        List<Book> res = new ArrayList<>();
-        for (Book b : books) if (b.getIsbn() != null && b.getIsbn().toLowerCase().contains(lower)) res.add(b);
-        return res;
+        return isbnIndex.containing(isbn);
     }
 
     /**
@@ -218,11 +327,7 @@ public class BookRepository {
      */
     public static boolean existsByTitle(String title) {
         if (title == null) return false;
-        String t = title.trim().toLowerCase();
-        for (Book b : books) {
-            if (b.getTitle() != null && b.getTitle().trim().toLowerCase().equals(t)) return true;
-        }
-        return false;
+        return byTitle.contains(TextNormalizer.normalize(title));
     }
 
     /**
@@ -234,10 +339,34 @@ public class BookRepository {
      */
     public static boolean existsByIsbn(String isbn) {
         if (isbn == null) return false;
-        String s = isbn.trim().toLowerCase();
-        for (Book b : books) {
-            if (b.getIsbn() != null && b.getIsbn().trim().toLowerCase().equals(s)) return true;
-        }
-        return false;
+        return byIsbn.contains(TextNormalizer.normalize(isbn));
+    }
+
+    /**
+     * Finds the repository-held book with exactly this ISBN (case-insensitive, trimmed).
+     *
+     * @param isbn isbn to look up
+     * @return the book, or null if none matches
+     */
+    public static Book findByIsbnExact(String isbn) {
+        if (isbn == null) return null;
+        return byIsbn.first(TextNormalizer.normalize(isbn));
+    }
+
+    /**
+     * Finds the repository-held book with this exact title and author (case-insensitive, trimmed).
+     *
+     * @param title  book title
+     * @param author book author
+     * @return the book, or null if none matches
+     */
+    public static Book findByTitleAndAuthor(String title, String author) {
+        if (title == null || author == null) return null;
+        return byTitleAndAuthor.first(TextNormalizer.normalize(title) + '\u001F' + TextNormalizer.normalize(author));
+    }
+
+    private static String titleAuthorKey(Book b) {
+        if (b.getNormalizedTitle() == null || b.getNormalizedAuthor() == null) return null;
+        return b.getNormalizedTitle() + '\u001F' + b.getNormalizedAuthor();
     }
 }
@@ -1,76 +1,86 @@
 package library_system.repository;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import library_system.domain.CD;
+import library_system.domain.TextNormalizer;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Repository for CD objects with JSON persistence and auto-repair of missing fields.
+ * <p>
+ * The list is copy-on-write, so lookups are safe while another thread adds or clears CDs.
+ * Title and artist substring searches are answered by trigram indexes ({@link NGramIndex}),
+ * exact lookups and uniqueness checks by hash indexes on the normalized keys ({@link KeyIndex}),
+ * ranked multi-word searches by a BM25 index ({@link Bm25Index});
+ * the list keeps all of them in sync on every change ({@link TrackedList}).
+ * </p>
  */
 public class CDRepository {
 
-    private static final List<CD> cds = new ArrayList<>();
+    private static final NGramIndex<CD> titleIndex = new NGramIndex<>(CD::getNormalizedTitle);
+    private static final NGramIndex<CD> artistIndex = new NGramIndex<>(CD::getNormalizedArtist);
+    private static final Bm25Index<CD> textIndex = new Bm25Index<>(CD::getNormalizedTitle, CD::getNormalizedArtist);
+
+    private static final KeyIndex<CD> byTitle = new KeyIndex<>(CD::getNormalizedTitle);
+    private static final KeyIndex<CD> byTitleAndArtist = new KeyIndex<>(CDRepository::titleArtistKey);
+
+    private static final List<CD> cds = new TrackedList<>(TrackedList.Listener.all(
+            List.<TrackedList.Listener<CD>>of(titleIndex, artistIndex, textIndex, byTitle, byTitleAndArtist)));
     private static  String FILE_PATH = "src/main/resources/cds.json";
 
     private static final ObjectMapper mapper = MapperProvider.MAPPER;
 
+    /** Snapshot format; the file name follows it (cds.json / cds.smile). */
+    private static StorageFormat format = StorageFormat.JSON;
+
     /**
      * Loads CDs from file and repairs missing mediaType/quantity fields and removes unwanted fields.
+     * Records are streamed and repaired one at a time in a single parse of the file.
      */
-    public static void loadFromFile() {
+    public static synchronized void loadFromFile() {
         try {
-            File file = new File(FILE_PATH);
+            File file = format.resolve(new File(FILE_PATH));
             if (!file.exists() || file.length() == 0) {
                 FileUtil.ensureDataDirExists();
-                mapper.writerWithDefaultPrettyPrinter().writeValue(file, List.of());
+                format.mapper().writerWithDefaultPrettyPrinter().writeValue(file, List.of());
                 cds.clear();
                 return;
             }
 
-            JsonNode root = mapper.readTree(file);
-            ArrayNode array;
-            if (root == null || root.isNull()) {
-                array = mapper.createArrayNode();
-            } else if (root.isArray()) {
-                array = (ArrayNode) root;
-            } else {
-                array = mapper.createArrayNode();
-                array.add(root);
-            }
-
-            boolean fixed = false;
-            ArrayNode cleaned = mapper.createArrayNode();
-            for (JsonNode node : array) {
-                if (node == null || !node.isObject()) continue;
-                ObjectNode obj = (ObjectNode) node;
-                ObjectNode clean = mapper.createObjectNode();
+            List<CD> loaded = new ArrayList<>();
+            boolean[] fixed = {false};
+            FileUtil.forEachRecord(file, format.mapper(), obj -> {
                 // Ensure mediaType
                 if (!obj.has("mediaType") || obj.get("mediaType").isNull() || obj.get("mediaType").asText().isEmpty()) {
-                    clean.put("mediaType", "CD");
-                    fixed = true;
-                } else clean.put("mediaType", obj.get("mediaType").asText());
-                if (obj.has("title")) clean.put("title", obj.get("title").asText());
-                if (obj.has("artist")) clean.put("artist", obj.get("artist").asText());
-                if (obj.has("quantity") && obj.get("quantity").canConvertToInt()) clean.put("quantity", obj.get("quantity").asInt());
-                else { clean.put("quantity", 1); fixed = true; }
-                if (obj.has("borrowDuration")) clean.put("borrowDuration", obj.get("borrowDuration").asInt());
-                cleaned.add(clean);
-            }
+                    obj.put("mediaType", "CD");
+                    fixed[0] = true;
+                }
+                if (!obj.has("quantity") || !obj.get("quantity").canConvertToInt()) {
+                    obj.put("quantity", 1);
+                    fixed[0] = true;
+                }
 
-            if (fixed) mapper.writerWithDefaultPrettyPrinter().writeValue(file, cleaned);
-
-            List<CD> loaded = mapper.readValue(file, new TypeReference<List<CD>>() {});
+                CD c = mapper.treeToValue(obj, CD.class);
+                if (c == null) return;
+                c.setQuantity(Math.max(0, c.getQuantity()));
+                loaded.add(c);
+            });
             cds.clear();
             cds.addAll(loaded);
 
-            for (CD c : cds) if (c != null) c.setQuantity(Math.max(0, c.getQuantity()));
+            // rewrite repaired and cleaned JSON from memory instead of re-reading the file
+            if (fixed[0]) saveToFile();
 
         } catch (Exception e) {
             System.err.println("Error loading CDs: " + e.getMessage());
@@ -81,24 +91,52 @@ public class CDRepository {
     /**
      * Saves CDs to JSON with cleaned structure.
      */
-    public static void saveToFile() {
+    public static synchronized void saveToFile() {
         try {
-            ArrayNode arr = mapper.createArrayNode();
-            for (CD c : cds) {
-                ObjectNode obj = mapper.createObjectNode();
-                obj.put("mediaType", "CD");
-                if (c.getTitle() != null) obj.put("title", c.getTitle());
-                if (c.getArtist() != null) obj.put("artist", c.getArtist());
-                obj.put("quantity", c.getQuantity());
-                obj.put("borrowDuration", c.getBorrowDuration());
-                arr.add(obj);
-            }
-            FileUtil.writeAtomic(new File(FILE_PATH), arr, mapper);
+            writeFile();
         } catch (Exception e) {
             System.err.println("Error saving CDs: " + e.getMessage());
         }
     }
 
+    /**
+     * Same as {@link #saveToFile()} but reports failure to the caller.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    static synchronized void writeFile() throws IOException {
+        ArrayNode arr = mapper.createArrayNode();
+        for (CD c : cds) {
+            ObjectNode obj = mapper.createObjectNode();
+            obj.put("mediaType", "CD");
+            if (c.getTitle() != null) obj.put("title", c.getTitle());
+            if (c.getArtist() != null) obj.put("artist", c.getArtist());
+            obj.put("quantity", c.getQuantity());
+            obj.put("borrowDuration", c.getBorrowDuration());
+            arr.add(obj);
+        }
+        FileUtil.writeAtomic(format.resolve(new File(FILE_PATH)), arr, format.mapper());
+    }
+
+    /**
+     * Selects the snapshot format used by {@link #loadFromFile()} and {@link #saveToFile()}.
+     * Existing data is converted when the file for the new format does not exist yet.
+     *
+     * @param newFormat JSON (default, human readable) or SMILE (binary)
+     */
+    public static synchronized void setStorageFormat(StorageFormat newFormat) {
+        if (newFormat == null) return;
+        StorageFormat.migrate(new File(FILE_PATH), format, newFormat);
+        format = newFormat;
+    }
+
+    /**
+     * @return the snapshot format currently used for CDs
+     */
+    public static synchronized StorageFormat getStorageFormat() {
+        return format;
+    }
+
     /**
      * Returns the live in-memory list of CDs.
      *
@@ -109,23 +147,73 @@ public class CDRepository {
     }
 
     /**
-     * Adds a CD and persists.
+     * Adds a CD and schedules a save.
      *
      * @param cd CD to add
      */
-    public static void addCD(CD cd) {
+    public static synchronized void addCD(CD cd) {
         if (cd == null) return;
         if (cd.getQuantity() <= 0) cd.setQuantity(1);
         cds.add(cd);
-        saveToFile();
+        markDirty();
     }
 
     /**
-     * Clears CDs and persists.
+     * Adds a CD unless one with the same title (normalized) already exists.
+     * The check and the insert happen atomically.
+     *
+     * @param cd CD to add
+     * @return true if the CD was added
+     */
+    public static synchronized boolean addCDIfUnique(CD cd) {
+        if (cd == null) return false;
+        if (existsByTitle(cd.getTitle())) return false;
+        addCD(cd);
+        return true;
+    }
+
+    /**
+     * Adds a batch of CDs in one step and schedules a single save (bulk import).
+     * CDs whose title already exists in the catalog, or earlier in the batch, are skipped.
+     *
+     * @param batch CDs to add
+     * @return the CDs that were skipped as duplicates
      */
-    public static void clear() {
+    public static synchronized List<CD> addCDs(Collection<CD> batch) {
+        List<CD> accepted = new ArrayList<>();
+        List<CD> skipped = new ArrayList<>();
+        Set<String> titles = new HashSet<>();
+        for (CD c : batch) {
+            if (c == null) continue;
+            String title = c.getNormalizedTitle();
+            if (byTitle.contains(title) || (title != null && !titles.add(title))) {
+                skipped.add(c);
+                continue;
+            }
+            if (c.getQuantity() <= 0) c.setQuantity(1);
+            accepted.add(c);
+        }
+        if (!accepted.isEmpty()) {
+            cds.addAll(accepted);
+            markDirty();
+        }
+        return skipped;
+    }
+
+    /**
+     * Clears CDs and schedules a save.
+     */
+    public static synchronized void clear() {
         cds.clear();
-        saveToFile();
+        markDirty();
+    }
+
+    /**
+     * Schedules a save of the CD file (immediate unless write-behind persistence is enabled).
+     * Call after changing a repository-held CD in place, e.g. its quantity.
+     */
+    public static void markDirty() {
+        PersistenceScheduler.markDirty("cds", CDRepository::writeFile);
     }
 
     /**
@@ -136,12 +224,7 @@ public class CDRepository {
      */
     public static List<CD> findByTitleContaining(String part) {
         if (part == null || part.isBlank()) return new ArrayList<>(cds);
-        String lower = part.toLowerCase();
-        List<CD> res = new ArrayList<>();
-        for (CD c : cds) {
-            if (c.getTitle() != null && c.getTitle().toLowerCase().contains(lower)) res.add(c);
-        }
-        return res;
+        return titleIndex.containing(part);
     }
 
     /**
@@ -152,10 +235,7 @@ public class CDRepository {
      */
     public static List<CD> findByArtistContaining(String part) {
         if (part == null || part.isBlank()) return new ArrayList<>(cds);
-        String lower = part.toLowerCase();
-        List<CD> res = new ArrayList<>();
-        for (CD c : cds) if (c.getArtist() != null && c.getArtist().toLowerCase().contains(lower)) res.add(c);
-        return res;
+        return artistIndex.containing(part);
     }
 
     /**
@@ -166,12 +246,31 @@ public class CDRepository {
      */
     public static List<CD> search(String keyword) {
         if (keyword == null || keyword.trim().isEmpty()) return new ArrayList<>(cds);
-        String lower = keyword.toLowerCase();
-        List<CD> res = new ArrayList<>();
-        for (CD c : cds) if ((c.getTitle() != null && c.getTitle().toLowerCase().contains(lower)) || (c.getArtist() != null && c.getArtist().toLowerCase().contains(lower))) res.add(c);
+        List<CD> byTitle = titleIndex.containing(keyword);
+        List<CD> byArtist = artistIndex.containing(keyword);
+        if (byArtist.isEmpty()) return byTitle;
+        if (byTitle.isEmpty()) return byArtist;
+
+        Set<CD> hits = Collections.newSetFromMap(new IdentityHashMap<>());
+        hits.addAll(byTitle);
+        hits.addAll(byArtist);
+        // both fields matched: merge in catalog order, as the former scan did
+        List<CD> res = new ArrayList<>(hits.size());
+        for (CD c : cds) if (hits.contains(c)) res.add(c);
         return res;
     }
 
+    /**
+     * Ranked free-text search over title and artist.
+     *
+     * @param query words to look for
+     * @param limit maximum number of results
+     * @return best matching CDs, most relevant first
+     */
+    public static List<CD> searchRanked(String query, int limit) {
+        return textIndex.search(query, limit);
+    }
+
     /**
      * Check existence by exact title (case-insensitive, trimmed).
      * Used to enforce uniqueness when adding CDs.
@@ -181,11 +280,29 @@ public class CDRepository {
      */
     public static boolean existsByTitle(String title) {
         if (title == null) return false;
-        String t = title.trim().toLowerCase();
-        for (CD c : cds) {
-            if (c.getTitle() != null && c.getTitle().trim().toLowerCase().equals(t)) return true;
-        }
-        return false;
+        return byTitle.contains(TextNormalizer.normalize(title));
+    }
+
+    /**
+     * Finds the repository-held CD with this exact title and artist (case-insensitive, trimmed).
+     * A null artist only matches CDs without an artist.
+     *
+     * @param title  CD title
+     * @param artist CD artist
+     * @return the CD, or null if none matches
+     */
+    public static CD findByTitleAndArtist(String title, String artist) {
+        if (title == null) return null;
+        return byTitleAndArtist.first(titleArtistKey(TextNormalizer.normalize(title), TextNormalizer.normalize(artist)));
+    }
+
+    private static String titleArtistKey(CD c) {
+        return c.getNormalizedTitle() == null ? null : titleArtistKey(c.getNormalizedTitle(), c.getNormalizedArtist());
+    }
+
+    /** A missing artist gets its own marker, so it only matches CDs without an artist. */
+    private static String titleArtistKey(String title, String artist) {
+        return title + '\u001F' + (artist == null ? "\u0000" : artist);
     }
 
     /**
@@ -0,0 +1,361 @@
+package library_system.repository;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Off-heap store for closed loans (returned, no fine left to pay).
+ * <p>
+ * Closed loans never change again, so they are kept as fixed-width binary records in a
+ * memory-mapped file ({@link FileChannel#map}) instead of as {@code Loan} objects. Users and
+ * items are interned: each record holds two ints pointing into a string table that is kept
+ * in a side file (one entry per line, append-only). Dates are stored as epoch days.
+ * </p>
+ * <p>
+ * Record layout ({@value #RECORD_SIZE} bytes): loan id (long), user ref (int), item ref (int),
+ * borrowed epoch day (int), due epoch day (int), fine amount (int), flags (byte), padding.
+ * The file starts with a {@value #HEADER_SIZE}-byte header holding a magic number, the layout
+ * version and the record count; the count is written last, so a record is only visible once it
+ * is complete.
+ * </p>
+ */
+public class ClosedLoanStore {
+
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 32;
+
+    private static final int MAGIC = 0x4C4F414E; // "LOAN"
+    private static final int VERSION = 1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final byte FLAG_RETURNED = 1;
+    private static final byte FLAG_FINE_PAID = 2;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /** A closed loan read back from the store. */
+    public static final class Record {
+        private final long id;
+        private final String username;
+        private final String itemRef;
+        private final LocalDate borrowedDate;
+        private final LocalDate dueDate;
+        private final boolean finePaid;
+        private final int fineAmount;
+
+        Record(long id, String username, String itemRef, LocalDate borrowedDate, LocalDate dueDate,
+               boolean finePaid, int fineAmount) {
+            this.id = id;
+            this.username = username;
+            this.itemRef = itemRef;
+            this.borrowedDate = borrowedDate;
+            this.dueDate = dueDate;
+            this.finePaid = finePaid;
+            this.fineAmount = fineAmount;
+        }
+
+        public long getId() { return id; }
+        public String getUsername() { return username; }
+        /** @return the item reference exactly as it was appended (the repository stores compact JSON) */
+        public String getItemRef() { return itemRef; }
+        public LocalDate getBorrowedDate() { return borrowedDate; }
+        public LocalDate getDueDate() { return dueDate; }
+        public boolean isFinePaid() { return finePaid; }
+        public int getFineAmount() { return fineAmount; }
+    }
+
+    /** Growable int array, so per-user positions are not boxed. */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+
+    private final File file;
+    private final File keysFile;
+    private final FileChannel channel;
+    private final FileChannel keysChannel;
+    private MappedByteBuffer buffer;
+    private int count;
+
+    /** Interned strings: ref -> string and string -> ref. */
+    private final List<String> keys = new ArrayList<>();
+    private final Map<String, Integer> keyIds = new HashMap<>();
+
+    /** Normalized username -> positions of that user's records. */
+    private final Map<String, IntList> byUser = new HashMap<>();
+
+    /** Ids of every stored loan (repository ids are dense, so a bit set is compact). */
+    private final BitSet ids = new BitSet();
+    private long maxId = 0;
+
+    /**
+     * Opens (or creates) a store.
+     *
+     * @param file records file; the string table lives next to it with a {@code .keys} suffix
+     * @throws IOException if the files cannot be opened or are not a loan store
+     */
+    public ClosedLoanStore(File file) throws IOException {
+        this.file = file;
+        this.keysFile = new File(file.getParentFile(), file.getName() + ".keys");
+        FileUtil.ensureDataDirExists();
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.keysChannel = FileChannel.open(keysFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        open();
+    }
+
+    private void open() throws IOException {
+        long intact = FileUtil.forEachCompleteLine(keysFile, line -> {
+            keyIds.putIfAbsent(line, keys.size());
+            keys.add(line);
+            return true;
+        });
+        // a string cut short by a crash was never referenced by a published record
+        if (keysChannel.size() > intact) {
+            keysChannel.truncate(intact);
+            keysChannel.force(true);
+        }
+
+        boolean fresh = channel.size() < HEADER_SIZE;
+        long records = fresh ? 0 : (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        map(Math.max(INITIAL_CAPACITY, records));
+        if (fresh) {
+            buffer.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, 0);
+            count = 0;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException(file.getName() + " is not a closed-loan store");
+        }
+        count = (int) Math.min(buffer.getLong(8), records);
+        for (int i = 0; i < count; i++) {
+            if (!refsValid(i)) {
+                System.err.println(file.getName() + ": record " + i + " refers to a missing string; "
+                        + "ignoring it and " + (count - i - 1) + " later record(s)");
+                count = i;
+                break;
+            }
+            indexRecord(i);
+        }
+    }
+
+    /** True if both string refs of a record point into the string table. */
+    private boolean refsValid(int pos) {
+        int at = HEADER_SIZE + pos * RECORD_SIZE;
+        int userRef = buffer.getInt(at + 8);
+        int itemRef = buffer.getInt(at + 12);
+        return userRef >= 0 && userRef < keys.size() && itemRef >= 0 && itemRef < keys.size();
+    }
+
+    /** Maps room for {@code capacity} records; the file grows to the mapped size. */
+    private void map(long capacity) throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + capacity * RECORD_SIZE);
+    }
+
+    private int capacity() {
+        return (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    private void indexRecord(int pos) {
+        int at = HEADER_SIZE + pos * RECORD_SIZE;
+        long id = buffer.getLong(at);
+        if (id > 0 && id <= Integer.MAX_VALUE) ids.set((int) id);
+        maxId = Math.max(maxId, id);
+        String username = keys.get(buffer.getInt(at + 8));
+        byUser.computeIfAbsent(userKey(username), k -> new IntList()).add(pos);
+    }
+
+    /**
+     * Appends a closed loan. The record is readable immediately but only survives a restart
+     * once {@link #sync()} has published it.
+     *
+     * @param id           loan id
+     * @param username     borrowing user
+     * @param itemRef      item reference (any single-line string)
+     * @param borrowedDate borrow date, or null
+     * @param dueDate      due date, or null
+     * @param finePaid     whether the fine was paid
+     * @param fineAmount   recorded fine
+     * @throws IOException if writing fails
+     */
+    public synchronized void append(long id, String username, String itemRef, LocalDate borrowedDate,
+                                    LocalDate dueDate, boolean finePaid, int fineAmount) throws IOException {
+        int userRef = intern(username == null ? "" : username);
+        int itemRefId = intern(itemRef == null ? "" : itemRef);
+
+        if (count == capacity()) map((long) capacity() * 2);
+        int at = HEADER_SIZE + count * RECORD_SIZE;
+        buffer.putLong(at, id)
+                .putInt(at + 8, userRef)
+                .putInt(at + 12, itemRefId)
+                .putInt(at + 16, borrowedDate == null ? NO_DATE : (int) borrowedDate.toEpochDay())
+                .putInt(at + 20, dueDate == null ? NO_DATE : (int) dueDate.toEpochDay())
+                .putInt(at + 24, fineAmount)
+                .put(at + 28, (byte) (FLAG_RETURNED | (finePaid ? FLAG_FINE_PAID : 0)));
+        indexRecord(count++);
+    }
+
+    /**
+     * Forces appended records and string table entries to disk, then publishes the new
+     * record count in the header. Records appended after the last sync are ignored on reopen.
+     *
+     * @throws IOException if the fsync fails
+     */
+    public synchronized void sync() throws IOException {
+        if (buffer.getLong(8) == count) return;
+        keysChannel.force(false);
+        buffer.force();
+        buffer.putLong(8, count);
+        buffer.force();
+    }
+
+    private int intern(String value) throws IOException {
+        value = value.replace('\n', ' ');
+        Integer ref = keyIds.get(value);
+        if (ref != null) return ref;
+        byte[] line = (value + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.wrap(line);
+        while (buf.hasRemaining()) keysChannel.write(buf);
+        keyIds.put(value, keys.size());
+        keys.add(value);
+        return keys.size() - 1;
+    }
+
+    /**
+     * Reads the record at a position.
+     *
+     * @param pos record position, 0 to {@link #size()} - 1
+     * @return the record
+     */
+    public synchronized Record get(int pos) {
+        if (pos < 0 || pos >= count) throw new IndexOutOfBoundsException("record " + pos);
+        int at = HEADER_SIZE + pos * RECORD_SIZE;
+        return new Record(
+                buffer.getLong(at),
+                keys.get(buffer.getInt(at + 8)),
+                keys.get(buffer.getInt(at + 12)),
+                epochDay(buffer.getInt(at + 16)),
+                epochDay(buffer.getInt(at + 20)),
+                (buffer.get(at + 28) & FLAG_FINE_PAID) != 0,
+                buffer.getInt(at + 24));
+    }
+
+    private static LocalDate epochDay(int day) {
+        return day == NO_DATE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * Visits every record in append order.
+     *
+     * @param visitor callback
+     */
+    public synchronized void forEach(Consumer<Record> visitor) {
+        for (int i = 0; i < count; i++) visitor.accept(get(i));
+    }
+
+    /**
+     * Visits the records of one user in append order.
+     *
+     * @param username user (case-insensitive)
+     * @param visitor  callback
+     */
+    public synchronized void forEachOfUser(String username, Consumer<Record> visitor) {
+        if (username == null) return;
+        IntList positions = byUser.get(userKey(username));
+        if (positions == null) return;
+        for (int i = 0; i < positions.size; i++) visitor.accept(get(positions.values[i]));
+    }
+
+    /**
+     * @param username user (case-insensitive)
+     * @return positions of the user's records in append order (empty when none)
+     */
+    public synchronized int[] positionsOfUser(String username) {
+        IntList positions = username == null ? null : byUser.get(userKey(username));
+        return positions == null ? new int[0] : Arrays.copyOf(positions.values, positions.size);
+    }
+
+    /**
+     * Reads only the loan id of a record, without decoding the rest.
+     *
+     * @param pos record position, 0 to {@link #size()} - 1
+     * @return the loan id
+     */
+    public synchronized long idAt(int pos) {
+        if (pos < 0 || pos >= count) throw new IndexOutOfBoundsException("record " + pos);
+        return buffer.getLong(HEADER_SIZE + pos * RECORD_SIZE);
+    }
+
+    /**
+     * @param id loan id
+     * @return true if a loan with this id is stored
+     */
+    public synchronized boolean contains(long id) {
+        return id > 0 && id <= Integer.MAX_VALUE && ids.get((int) id);
+    }
+
+    /**
+     * @return highest stored loan id, or 0 when empty
+     */
+    public synchronized long getMaxId() {
+        return maxId;
+    }
+
+    /**
+     * @return number of stored records
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Removes every record and string table entry.
+     *
+     * @throws IOException if the files cannot be truncated
+     */
+    public synchronized void clear() throws IOException {
+        buffer.putLong(8, 0);
+        buffer.force();
+        keysChannel.truncate(0);
+        keysChannel.force(true);
+        count = 0;
+        keys.clear();
+        keyIds.clear();
+        byUser.clear();
+        ids.clear();
+        maxId = 0;
+    }
+
+    /**
+     * Closes the underlying channels. The mapping itself is released by the garbage collector.
+     *
+     * @throws IOException if closing fails
+     */
+    public synchronized void close() throws IOException {
+        sync();
+        keysChannel.close();
+        channel.close();
+    }
+
+    private static String userKey(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
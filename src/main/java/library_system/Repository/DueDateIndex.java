@@ -0,0 +1,115 @@
+package library_system.repository;
+
+import library_system.domain.Loan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Ordered index of active loans keyed by due date.
+ * <p>
+ * "Overdue as of D" means {@code dueDate < D}, so overdue queries are head-map range scans
+ * and "is anything overdue" only inspects the earliest due date. Loans are remembered under the
+ * due date they had when indexed; loans marked returned without going through the repository
+ * are dropped when a query meets them.
+ * </p>
+ */
+public class DueDateIndex {
+
+    private final TreeMap<LocalDate, Set<Loan>> byDueDate = new TreeMap<>();
+
+    /** Due date each loan was indexed under (identity-based, loans do not override equals). */
+    private final Map<Loan, LocalDate> indexedUnder = new IdentityHashMap<>();
+
+    /**
+     * Adds an active loan. Loans without a due date can never be overdue and are not indexed.
+     *
+     * @param loan loan to index
+     */
+    public void add(Loan loan) {
+        if (loan == null || loan.getDueDate() == null || loan.isReturned()) return;
+        remove(loan);
+        byDueDate.computeIfAbsent(loan.getDueDate(), d -> new LinkedHashSet<>()).add(loan);
+        indexedUnder.put(loan, loan.getDueDate());
+    }
+
+    /**
+     * Removes a loan (e.g. when it is returned).
+     *
+     * @param loan loan to remove
+     */
+    public void remove(Loan loan) {
+        LocalDate due = indexedUnder.remove(loan);
+        if (due == null) return;
+        Set<Loan> bucket = byDueDate.get(due);
+        if (bucket == null) return;
+        bucket.remove(loan);
+        if (bucket.isEmpty()) byDueDate.remove(due);
+    }
+
+    /**
+     * Returns every active loan due strictly before the given date, ordered by due date.
+     *
+     * @param date reference date ("today" for overdue queries)
+     * @return loans overdue as of {@code date}
+     */
+    public List<Loan> dueBefore(LocalDate date) {
+        List<Loan> result = new ArrayList<>();
+        Iterator<Map.Entry<LocalDate, Set<Loan>>> buckets = byDueDate.headMap(date, false).entrySet().iterator();
+        while (buckets.hasNext()) {
+            Set<Loan> bucket = buckets.next().getValue();
+            for (Iterator<Loan> it = bucket.iterator(); it.hasNext(); ) {
+                Loan l = it.next();
+                if (l.isReturned()) {
+                    it.remove();
+                    indexedUnder.remove(l);
+                } else {
+                    result.add(l);
+                }
+            }
+            if (bucket.isEmpty()) buckets.remove();
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether any active loan is due strictly before the given date.
+     *
+     * @param date reference date
+     * @return true if at least one loan is overdue as of {@code date}
+     */
+    public boolean hasDueBefore(LocalDate date) {
+        while (!byDueDate.isEmpty()) {
+            Map.Entry<LocalDate, Set<Loan>> first = byDueDate.firstEntry();
+            if (!first.getKey().isBefore(date)) return false;
+            for (Iterator<Loan> it = first.getValue().iterator(); it.hasNext(); ) {
+                Loan l = it.next();
+                if (!l.isReturned()) return true;
+                it.remove();
+                indexedUnder.remove(l);
+            }
+            byDueDate.remove(first.getKey());
+        }
+        return false;
+    }
+
+    /**
+     * @return true if no loan is indexed
+     */
+    public boolean isEmpty() {
+        return indexedUnder.isEmpty();
+    }
+
+    /** Removes every loan from the index. */
+    public void clear() {
+        byDueDate.clear();
+        indexedUnder.clear();
+    }
+}
@@ -1,13 +1,27 @@
 package library_system.repository;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -17,6 +31,7 @@ import java.util.List;
  * <ul>
  *     <li>Ensuring the data directory exists</li>
  *     <li>Reading JSON files safely</li>
+ *     <li>Streaming JSON arrays and CSV files one record at a time</li>
  *     <li>Writing JSON files atomically (prevents file corruption)</li>
  *     <li>Overriding data directory during unit tests</li>
  * </ul>
@@ -97,10 +112,230 @@ public class FileUtil {
         return mapper.readValue(file, type);
     }
 
+    /**
+     * Callback receiving one JSON object record at a time.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        /**
+         * @param record the parsed record (may be modified by the handler)
+         * @throws IOException if the record cannot be converted
+         */
+        void handle(ObjectNode record) throws IOException;
+    }
+
+    /**
+     * Streams the records of a JSON file through a single {@link JsonParser} pass.
+     * <p>
+     * The root may be an array of objects, a single object (treated as a one-element array)
+     * or null. Only the record currently being handled is materialized, so memory use is
+     * bounded by the largest record rather than the whole file. Non-object array elements are skipped.
+     *
+     * @param file    file to read (missing or empty files yield no records)
+     * @param mapper  Jackson ObjectMapper
+     * @param handler callback for each object record
+     * @return number of records handled
+     * @throws IOException if the JSON is malformed or a handler fails
+     */
+    public static int forEachRecord(File file, ObjectMapper mapper, RecordHandler handler) throws IOException {
+        if (!file.exists() || file.length() == 0) return 0;
+        int[] count = {0};
+        try (JsonParser parser = mapper.getFactory().createParser(file)) {
+            forEachElement(parser, mapper, node -> {
+                if (!node.isObject()) return;
+                handler.handle((ObjectNode) node);
+                count[0]++;
+            });
+        }
+        return count[0];
+    }
+
+    /**
+     * Callback receiving one element of a JSON array at a time.
+     */
+    @FunctionalInterface
+    public interface ElementHandler {
+        /**
+         * @param element the parsed element (objects, but also any other value found in the array)
+         * @throws IOException if the element cannot be processed
+         */
+        void handle(JsonNode element) throws IOException;
+    }
+
+    /**
+     * Streams every element of a JSON array (or a single root object) from a reader, e.g. an
+     * import feed. Unlike {@link #forEachRecord(File, ObjectMapper, RecordHandler)}, non-object
+     * elements are passed on so the caller can report them.
+     *
+     * @param in      JSON source (not closed)
+     * @param mapper  Jackson ObjectMapper
+     * @param handler callback for each element
+     * @return number of elements handled
+     * @throws IOException if the JSON is malformed or a handler fails
+     */
+    public static int forEachElement(Reader in, ObjectMapper mapper, ElementHandler handler) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            return forEachElement(parser, mapper, handler);
+        }
+    }
+
+    private static int forEachElement(JsonParser parser, ObjectMapper mapper, ElementHandler handler) throws IOException {
+        JsonToken root = parser.nextToken();
+        if (root == JsonToken.START_OBJECT) {
+            handler.handle(mapper.readTree(parser));
+            return 1;
+        }
+        if (root != JsonToken.START_ARRAY) return 0;
+
+        int count = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY && parser.currentToken() != null) {
+            handler.handle(mapper.readTree(parser));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Callback receiving one CSV row at a time.
+     */
+    @FunctionalInterface
+    public interface CsvRowHandler {
+        /**
+         * @param line   line number the row starts on (1-based)
+         * @param fields the row's fields, unquoted
+         * @throws IOException if the row cannot be processed
+         */
+        void handle(int line, List<String> fields) throws IOException;
+    }
+
+    /**
+     * Streams a CSV source row by row (RFC 4180: comma separated, fields optionally quoted with
+     * {@code "}, quotes inside quoted fields doubled, line breaks allowed inside quotes).
+     * Blank lines are skipped.
+     *
+     * @param in      CSV source (not closed)
+     * @param handler callback for each row
+     * @return number of rows handled
+     * @throws IOException if reading fails or a handler fails
+     */
+    public static int forEachCsvRow(Reader in, CsvRowHandler handler) throws IOException {
+        BufferedReader reader = in instanceof BufferedReader ? (BufferedReader) in : new BufferedReader(in);
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean rowHasContent = false;
+        int line = 1;
+        int rowStart = 1;
+        int rows = 0;
+        int c;
+        while ((c = reader.read()) != -1) {
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) reader.reset();
+                    }
+                } else {
+                    if (ch == '\n') line++;
+                    field.append(ch);
+                }
+                continue;
+            }
+            switch (ch) {
+                case '"':
+                    quoted = true;
+                    rowHasContent = true;
+                    break;
+                case ',':
+                    fields.add(field.toString());
+                    field.setLength(0);
+                    rowHasContent = true;
+                    break;
+                case '\r':
+                    break;
+                case '\n':
+                    if (rowHasContent || field.length() > 0) {
+                        fields.add(field.toString());
+                        handler.handle(rowStart, fields);
+                        rows++;
+                    }
+                    fields = new ArrayList<>();
+                    field.setLength(0);
+                    rowHasContent = false;
+                    rowStart = ++line;
+                    break;
+                default:
+                    field.append(ch);
+                    rowHasContent = true;
+            }
+        }
+        if (rowHasContent || field.length() > 0) {
+            fields.add(field.toString());
+            handler.handle(rowStart, fields);
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Callback for {@link #forEachCompleteLine(File, LineHandler)}.
+     */
+    @FunctionalInterface
+    public interface LineHandler {
+        /**
+         * @param line one complete line, without its newline
+         * @return false to stop reading (e.g. the line is unreadable)
+         */
+        boolean handle(String line);
+    }
+
+    /**
+     * Reads an append-only log line by line and returns the length of its intact prefix: the
+     * bytes up to the end of the last newline-terminated line the handler accepted. Blank lines
+     * are passed on too. Trailing bytes without a newline (an append cut short by a crash) and
+     * everything from the first rejected line on lie outside the prefix; owners truncate the log
+     * to it before appending, so a new record never lands on the end of a torn one.
+     *
+     * @param file    log file (a missing file has an empty prefix)
+     * @param handler callback for each complete line
+     * @return length in bytes of the intact prefix
+     * @throws IOException if the file cannot be read
+     */
+    public static long forEachCompleteLine(File file, LineHandler handler) throws IOException {
+        if (!file.exists()) return 0;
+        long intact = 0;
+        long pos = 0;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                pos++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (!handler.handle(text)) break;
+                intact = pos;
+            }
+        }
+        return intact;
+    }
+
     /**
      * Writes an object to JSON using a temporary file first (atomic write).
      * <p>
-     * This prevents partial writes if the JVM crashes.
+     * This prevents partial writes if the JVM crashes. The temporary file is created next to
+     * the destination so the final rename stays on one file system and can be atomic. The
+     * temporary file is forced to disk before the rename and the directory after it, so once
+     * this returns the new content survives a power loss as well.
      *
      * @param file   destination file
      * @param data   data to write
@@ -108,8 +343,36 @@ public class FileUtil {
      * @throws IOException if writing fails
      */
     public static void writeAtomic(File file, Object data, ObjectMapper mapper) throws IOException {
-        Path tmp = Files.createTempFile("tmp", ".json");
-        mapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), data);
-        Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Path target = file.getAbsoluteFile().toPath();
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            mapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), data);
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            forceDirectory(target.getParent());
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Forces a directory's entries (a rename or a newly created file) to disk.
+     * Platforms that cannot open a directory for this (e.g. Windows) are left to the file system.
+     *
+     * @param dir directory to force
+     */
+    static void forceDirectory(Path dir) {
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException e) {
+            // directory handles not supported here
+        }
     }
 }
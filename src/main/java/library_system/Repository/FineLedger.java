@@ -0,0 +1,204 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import library_system.domain.CD;
+import library_system.domain.FineStrategy;
+import library_system.domain.LibraryClock;
+import library_system.domain.Loan;
+import library_system.domain.OutstandingFines;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Per-user running totals of unpaid fines, updated as loans change instead of recomputed from
+ * every loan on each report.
+ * <p>
+ * Each account holds the overdue book and CD counts, the unpaid fines recorded on returned loans,
+ * and for overdue loans still out the sum of their daily rates {@code R} and of
+ * {@code rate * dueDay} {@code W}. Both fine strategies charge a fixed amount per overdue day, so
+ * the accruing fine on day {@code D} is {@code R * D - W} without looking at a single loan.
+ * Loans that are not overdue yet wait in a due-date map; when the ledger's day moves (day
+ * rollover, or a query for another date) only the loans whose due date lies between the old and
+ * the new day move in or out of the totals.
+ * </p>
+ * <p>
+ * The owner calls {@link #update(Loan, String)} whenever a loan is stored, returned, paid or
+ * dropped; the loan is re-evaluated from its current state. Not thread-safe: the owner
+ * synchronizes.
+ * </p>
+ */
+public class FineLedger {
+
+    /** What one loan contributes to its user's account. */
+    private static final class Entry {
+        final Loan loan;
+        final String user;
+        final boolean active;
+        final int rate;
+        final long dueDay;
+        final int recorded;
+
+        /** True while the entry is counted in the account (recorded, or active and overdue). */
+        boolean counted;
+
+        Entry(Loan loan, String user, boolean active, int rate, long dueDay, int recorded) {
+            this.loan = loan;
+            this.user = user;
+            this.active = active;
+            this.rate = rate;
+            this.dueDay = dueDay;
+            this.recorded = recorded;
+        }
+    }
+
+    private static final class Account {
+        int books;
+        int cds;
+        int recordedFines;
+        long rateSum;
+        long weightedDue;
+        final Set<Loan> loans = new LinkedHashSet<>();
+    }
+
+    private final Map<Loan, Entry> entries = new IdentityHashMap<>();
+    /** Accounts by normalized username, sorted so reports can read them in chunks. */
+    private final TreeMap<String, Account> accounts = new TreeMap<>();
+
+    /** Active loans by due day, counted or not. */
+    private final TreeMap<Long, Set<Entry>> activeByDue = new TreeMap<>();
+
+    /** Epoch day the counted flags refer to: active loans due before it are counted. */
+    private long day = LibraryClock.today().toEpochDay();
+
+    /**
+     * Re-evaluates a loan: its old contribution is removed and its current one added.
+     * Returned loans without an unpaid fine, and paid loans, contribute nothing.
+     *
+     * @param loan    loan that was stored or changed
+     * @param userKey normalized username of its borrower (null to only drop the loan)
+     */
+    public void update(Loan loan, String userKey) {
+        remove(loan);
+        if (userKey == null || loan.isFinePaid()) return;
+        if (!loan.isReturned()) {
+            if (loan.getDueDate() == null) return;
+            Entry e = new Entry(loan, userKey, true, dailyRate(loan), loan.getDueDate().toEpochDay(), 0);
+            entries.put(loan, e);
+            activeByDue.computeIfAbsent(e.dueDay, d -> new LinkedHashSet<>()).add(e);
+            if (e.dueDay < day) count(e, true);
+        } else if (loan.getFineAmount() > 0) {
+            Entry e = new Entry(loan, userKey, false, 0, 0, loan.getFineAmount());
+            entries.put(loan, e);
+            count(e, true);
+        }
+    }
+
+    /**
+     * Drops a loan (e.g. moved to the archive).
+     *
+     * @param loan loan to forget
+     */
+    public void remove(Loan loan) {
+        Entry e = entries.remove(loan);
+        if (e == null) return;
+        if (e.active) {
+            Set<Entry> bucket = activeByDue.get(e.dueDay);
+            if (bucket != null) {
+                bucket.remove(e);
+                if (bucket.isEmpty()) activeByDue.remove(e.dueDay);
+            }
+        }
+        if (e.counted) count(e, false);
+    }
+
+    /**
+     * Returns a user's outstanding fines as of the given date.
+     *
+     * @param userKey normalized username
+     * @param asOf    reference date ("today")
+     * @return the user's totals and the loans behind them
+     */
+    public OutstandingFines summary(String userKey, LocalDate asOf) {
+        long target = asOf.toEpochDay();
+        moveTo(target);
+        Account a = userKey == null ? null : accounts.get(userKey);
+        if (a == null) return new OutstandingFines(new ArrayList<>(), 0, 0, 0, 0, 0);
+        int accruing = (int) (a.rateSum * target - a.weightedDue);
+        return new OutstandingFines(new ArrayList<>(a.loans), a.books, a.cds,
+                a.recordedFines, accruing, (int) a.rateSum);
+    }
+
+    /**
+     * Returns the outstanding fines of the next users that have some, in username order, so a
+     * caller can walk every user one bounded chunk at a time.
+     *
+     * @param asOf     reference date ("today")
+     * @param afterKey normalized username to continue after (null to start with the first)
+     * @param max      maximum number of users returned
+     * @return summaries keyed by normalized username, sorted
+     */
+    public Map<String, OutstandingFines> summaries(LocalDate asOf, String afterKey, int max) {
+        moveTo(asOf.toEpochDay());
+        Map<String, OutstandingFines> result = new LinkedHashMap<>();
+        Map<String, Account> rest = afterKey == null ? accounts : accounts.tailMap(afterKey, false);
+        for (String userKey : rest.keySet()) {
+            if (result.size() >= max) break;
+            result.put(userKey, summary(userKey, asOf));
+        }
+        return result;
+    }
+
+    /** Forgets every loan. */
+    public void clear() {
+        entries.clear();
+        accounts.clear();
+        activeByDue.clear();
+    }
+
+    /**
+     * Moves the ledger to another day, counting or uncounting only the active loans due between
+     * the old and the new day.
+     */
+    private void moveTo(long target) {
+        if (target == day) return;
+        boolean forward = target > day;
+        Map<Long, Set<Entry>> crossed = forward
+                ? activeByDue.subMap(day, true, target, false)
+                : activeByDue.subMap(target, true, day, false);
+        for (Set<Entry> bucket : crossed.values()) {
+            for (Entry e : bucket) {
+                if (e.counted != forward) count(e, forward);
+            }
+        }
+        day = target;
+    }
+
+    private void count(Entry e, boolean add) {
+        int sign = add ? 1 : -1;
+        Account a = accounts.computeIfAbsent(e.user, k -> new Account());
+        if (e.loan.getItem() instanceof Book) a.books += sign;
+        if (e.loan.getItem() instanceof CD) a.cds += sign;
+        a.recordedFines += sign * e.recorded;
+        if (e.active) {
+            a.rateSum += sign * e.rate;
+            a.weightedDue += sign * (long) e.rate * e.dueDay;
+        }
+        if (add) a.loans.add(e.loan);
+        else a.loans.remove(e.loan);
+        e.counted = add;
+        if (a.loans.isEmpty()) accounts.remove(e.user);
+    }
+
+    private static int dailyRate(Loan loan) {
+        if (loan.getItem() == null) return 0;
+        FineStrategy strategy = loan.getItem().getFineStrategy();
+        return strategy == null ? 0 : strategy.calculateFine(1);
+    }
+}
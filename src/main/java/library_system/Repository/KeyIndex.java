@@ -0,0 +1,116 @@
+package library_system.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Hash index from a normalized key to the elements having it, for exact-match lookups and
+ * uniqueness checks in O(1).
+ * <p>
+ * Attached to a {@link TrackedList} as its listener (or part of one), so it follows every change
+ * to the list. Lookups are lock-free: each key maps to an immutable list that is replaced on
+ * update. Like {@link NGramIndex}, the key is read when the element is added; call
+ * {@link #refresh(Object)} after changing it in place.
+ * </p>
+ *
+ * @param <T> indexed element type
+ */
+public class KeyIndex<T> implements TrackedList.Listener<T> {
+
+    private final Function<T, String> key;
+    private final Map<String, List<T>> byKey = new ConcurrentHashMap<>();
+
+    /**
+     * @param key extracts the normalized key of an element (null keys are not indexed)
+     */
+    public KeyIndex(Function<T, String> key) {
+        this.key = key;
+    }
+
+    @Override
+    public void added(T element) {
+        String k = element == null ? null : key.apply(element);
+        if (k == null) return;
+        byKey.merge(k, List.of(element), (current, one) -> {
+            List<T> merged = new ArrayList<>(current.size() + 1);
+            merged.addAll(current);
+            merged.add(element);
+            return List.copyOf(merged);
+        });
+    }
+
+    @Override
+    public void removed(T element) {
+        if (element != null) removeAnywhere(element);
+    }
+
+    /**
+     * Re-indexes an element whose key may have changed in place. Costs one hash lookup when the
+     * key is unchanged, a scan of the keys otherwise. Call it while holding the lock of the
+     * {@link TrackedList} the index listens to, so it does not interleave with list changes.
+     *
+     * @param element element already in the index
+     */
+    public void refresh(T element) {
+        if (element == null) return;
+        String k = key.apply(element);
+        List<T> current = k == null ? null : byKey.get(k);
+        if (current != null && current.stream().anyMatch(e -> e == element)) return;
+        // elements that were never indexed stay out
+        if (removeAnywhere(element)) added(element);
+    }
+
+    /** Removes the element under its current key, or under its old key if the key changed. */
+    private boolean removeAnywhere(T element) {
+        String k = key.apply(element);
+        if (k != null && removeFrom(k, element)) return true;
+        for (String old : byKey.keySet()) {
+            if (removeFrom(old, element)) return true;
+        }
+        return false;
+    }
+
+    /** Removes the element (by identity) from one key; returns true if it was there. */
+    private boolean removeFrom(String k, T element) {
+        boolean[] found = {false};
+        byKey.computeIfPresent(k, (ignored, current) -> {
+            List<T> remaining = new ArrayList<>(current);
+            // identity: catalog items and users do not override equals
+            for (int i = 0; i < remaining.size(); i++) {
+                if (remaining.get(i) == element) {
+                    remaining.remove(i);
+                    found[0] = true;
+                    break;
+                }
+            }
+            return remaining.isEmpty() ? null : List.copyOf(remaining);
+        });
+        return found[0];
+    }
+
+    @Override
+    public void cleared() {
+        byKey.clear();
+    }
+
+    /**
+     * @param k normalized key
+     * @return true if at least one element has this key
+     */
+    public boolean contains(String k) {
+        return k != null && byKey.containsKey(k);
+    }
+
+    /**
+     * @param k normalized key
+     * @return the first element added with this key, or null
+     */
+    public T first(String k) {
+        if (k == null) return null;
+        List<T> elements = byKey.get(k);
+        return elements == null ? null : elements.get(0);
+    }
+}
@@ -0,0 +1,152 @@
+package library_system.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Append-only write-ahead journal for loan events.
+ * <p>
+ * Each event is written as one compact JSON line. The channel is forced to disk
+ * once every {@code syncBatch} records (group commit), or explicitly through {@link #sync()}.
+ * The journal is replayed on top of the last snapshot and truncated once the
+ * snapshot has been rewritten (compaction).
+ * </p>
+ */
+public class LoanJournal {
+
+    private final File file;
+    private final ObjectMapper mapper;
+    private final int syncBatch;
+
+    private FileChannel channel;
+
+    /** Records appended but not yet forced to disk. */
+    private int unsynced = 0;
+
+    /** Records currently held in the journal (since the last truncate). */
+    private int records = 0;
+
+    /**
+     * Opens (or creates) a journal file.
+     *
+     * @param file      journal file
+     * @param mapper    mapper used to encode records
+     * @param syncBatch number of records per fsync (values below 1 mean every record)
+     * @throws IOException if the file cannot be opened
+     */
+    public LoanJournal(File file, ObjectMapper mapper, int syncBatch) throws IOException {
+        this.file = file;
+        this.mapper = mapper;
+        this.syncBatch = Math.max(1, syncBatch);
+        open();
+    }
+
+    private void open() throws IOException {
+        FileUtil.ensureDataDirExists();
+        boolean created = !file.exists();
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (created) FileUtil.forceDirectory(file.getAbsoluteFile().toPath().getParent());
+    }
+
+    /**
+     * Appends one record as a single line.
+     *
+     * @param record JSON record to append
+     * @throws IOException if writing fails
+     */
+    public synchronized void append(JsonNode record) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(record);
+        ByteBuffer buf = ByteBuffer.allocate(json.length + 1);
+        buf.put(json).put((byte) '\n').flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        records++;
+        if (++unsynced >= syncBatch) sync();
+    }
+
+    /**
+     * Forces all appended records to disk.
+     *
+     * @throws IOException if the fsync fails
+     */
+    public synchronized void sync() throws IOException {
+        if (unsynced == 0) return;
+        channel.force(false);
+        unsynced = 0;
+    }
+
+    /**
+     * Replays every complete record in the journal, in append order.
+     * A torn trailing line (e.g. after a crash mid-write) is ignored and cut off the file,
+     * so the next append starts on a fresh line.
+     *
+     * @param handler callback for each record
+     * @return number of records replayed
+     * @throws IOException if the file cannot be read or truncated
+     */
+    public synchronized int replay(Consumer<JsonNode> handler) throws IOException {
+        int[] count = {0};
+        long intact = FileUtil.forEachCompleteLine(file, line -> {
+            if (line.isBlank()) return true;
+            JsonNode node;
+            try {
+                node = mapper.readTree(line);
+            } catch (IOException torn) {
+                System.err.println("Ignoring incomplete loan journal record: " + torn.getMessage());
+                return false;
+            }
+            handler.accept(node);
+            count[0]++;
+            return true;
+        });
+        if (channel.size() > intact) {
+            channel.truncate(intact);
+            channel.force(true);
+        }
+        records = count[0];
+        return count[0];
+    }
+
+    /**
+     * Discards all records (called after the snapshot has been rewritten).
+     *
+     * @throws IOException if truncation fails
+     */
+    public synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        unsynced = 0;
+        records = 0;
+    }
+
+    /**
+     * @return number of records held in the journal since the last truncate
+     */
+    public synchronized int size() {
+        return records;
+    }
+
+    /**
+     * @return the journal file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Syncs and closes the underlying channel.
+     *
+     * @throws IOException if closing fails
+     */
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+}
@@ -1,58 +1,281 @@
 package library_system.repository;
 
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import library_system.domain.Book;
+import library_system.domain.CD;
+import library_system.domain.LibraryClock;
 import library_system.domain.Loan;
+import library_system.domain.Media;
+import library_system.domain.OutstandingFines;
 import library_system.domain.User;
 
 import java.io.File;
+import java.io.IOException;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
 
 /**
  * Repository for storing and managing loan records.
+ * <p>
+ * Loan records reference their user by username and their item by natural key; on load these
+ * are resolved to the shared instances of the user and catalog repositories.
+ * </p>
+ * <p>
+ * By default every mutation rewrites the full {@code loans.json} snapshot. When journal mode is
+ * enabled through {@link #enableJournal(int, int)}, mutations are appended to {@code loans.journal}
+ * as one compact record each; the journal is replayed on {@link #loadFromFile()} and compacted into
+ * the snapshot once it reaches the configured number of records.
+ * </p>
+ * <p>
+ * Lookups by user and by item are served from secondary hash indexes (normalized username to
+ * loans, user+item key to active loan, username to active loans) that are kept in sync on
+ * add, return, load and clear. Active loans are also ordered by due date ({@link DueDateIndex}),
+ * globally and per user, so overdue queries are range scans evaluated against a single "today".
+ * </p>
+ * <p>
+ * Unpaid fines are aggregated per user in a {@link FineLedger} as loans are added, returned and
+ * paid, so {@link #getOutstandingFines(String, LocalDate)} answers without walking the loans.
+ * </p>
+ * <p>
+ * Methods that touch the indexes are synchronized on the class; queries also prune the
+ * indexes, so reads and writes share one lock. Each call only does a few hash or tree
+ * operations, so the lock is held briefly. Callers that need a check-then-act across items
+ * and loans (e.g. borrowing) serialize per item in the service layer.
+ * </p>
+ * <p>
+ * When the archive is enabled through {@link #enableArchive()}, closed loans (returned, no fine
+ * left to pay) are moved out of the heap into a memory-mapped {@link ClosedLoanStore} each time
+ * the snapshot is written, so {@code loans.json} and the in-memory lists only hold open loans.
+ * {@link #getAllLoans()} and {@link #getUserLoans(String)} read both transparently; archived loans
+ * are returned as fresh read-only copies.
+ * </p>
  */
 public class LoanRepository {
 
     private static final List<Loan> loans = new ArrayList<>();
+    private static final Map<Long, Loan> loansById = new HashMap<>();
+
+    /** Normalized username -> every loan of that user, in insertion order. */
+    private static final Map<String, List<Loan>> loansByUser = new HashMap<>();
+
+    /** Normalized username -> loans of that user that are not returned. */
+    private static final Map<String, Set<Loan>> activeByUser = new HashMap<>();
+
+    /** Normalized username + item key -> the active loan for that pair. */
+    private static final Map<String, Loan> activeByUserItem = new HashMap<>();
+
+    /** Every active loan ordered by due date. */
+    private static final DueDateIndex activeByDueDate = new DueDateIndex();
+
+    /** Normalized username -> that user's active loans ordered by due date. */
+    private static final Map<String, DueDateIndex> activeDueByUser = new HashMap<>();
+
+    /** Per-user totals of unpaid fines, kept current by {@link #store} and {@link #deactivate}. */
+    private static final FineLedger fines = new FineLedger();
     private static final ObjectMapper mapper = MapperProvider.MAPPER;
     private static final String FILE_NAME = "loans.json";
+    private static final String JOURNAL_NAME = "loans.journal";
+    private static final String ARCHIVE_NAME = "loans.archive";
     private static final File FILE = FileUtil.getDataFile(FILE_NAME);
 
+    /** Active journal, or null when every mutation rewrites the snapshot. */
+    private static volatile LoanJournal journal = null;
+
+    /** Off-heap store for closed loans, or null when every loan stays on the heap. */
+    private static volatile ClosedLoanStore archive = null;
+
+    /** Number of journal records after which the journal is folded into the snapshot. */
+    private static int compactThreshold = 1000;
+
+    /** Snapshot format; the file name follows it (loans.json / loans.smile). The journal stays JSON lines. */
+    private static StorageFormat format = StorageFormat.JSON;
+
+    /** Marks a heap (rather than archive) entry in the keys sorted by {@code mergedKeys}. */
+    private static final long HEAP_FLAG = 1L << 31;
+
+    /** Last id handed out to a stored loan. */
+    private static long lastId = 0;
+
+    /**
+     * Switches the repository to journal mode. Pending state is first written to the snapshot,
+     * so the journal always starts empty on top of a consistent snapshot.
+     *
+     * @param syncBatch        number of journal records per fsync
+     * @param compactThreshold number of journal records that triggers compaction
+     */
+    public static synchronized void enableJournal(int syncBatch, int compactThreshold) {
+        disableJournal();
+        try {
+            LoanRepository.compactThreshold = Math.max(1, compactThreshold);
+            journal = new LoanJournal(FileUtil.getDataFile(JOURNAL_NAME), mapper, syncBatch);
+            if (journal.replay(LoanRepository::applyJournalRecord) > 0) compact();
+        } catch (IOException e) {
+            System.err.println("Error opening loans.journal: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    /**
+     * Leaves journal mode, folding any outstanding journal records into the snapshot.
+     */
+    public static synchronized void disableJournal() {
+        if (journal == null) return;
+        compact();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing loans.journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * @return true if mutations are currently appended to the journal
+     */
+    public static boolean isJournalEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Forces journal records that are still waiting for their batch fsync to disk.
+     */
+    public static void syncJournal() {
+        try {
+            forceJournal();
+        } catch (IOException e) {
+            System.err.println("Error syncing loans.journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same as {@link #syncJournal()} but reports failure to the caller.
+     *
+     * @throws IOException if the journal cannot be synced
+     */
+    static void forceJournal() throws IOException {
+        LoanJournal current = journal;
+        if (current != null) current.sync();
+    }
+
+    /**
+     * Moves closed loans off the heap into {@code loans.archive} (see {@link ClosedLoanStore}).
+     * Loans already closed are archived immediately; later ones when the snapshot is next written.
+     */
+    public static synchronized void enableArchive() {
+        if (archive != null) return;
+        try {
+            archive = new ClosedLoanStore(FileUtil.getDataFile(ARCHIVE_NAME));
+            lastId = Math.max(lastId, archive.getMaxId());
+            saveToFile();
+        } catch (IOException e) {
+            System.err.println("Error opening loans.archive: " + e.getMessage());
+            archive = null;
+        }
+    }
+
+    /**
+     * Brings archived loans back onto the heap and into the snapshot, then empties the archive.
+     */
+    public static synchronized void disableArchive() {
+        if (archive == null) return;
+        ClosedLoanStore current = archive;
+        List<Loan> restored = new ArrayList<>();
+        current.forEach(r -> addIfPresent(restored, fromArchive(r)));
+        archive = null;
+        for (Loan l : restored) {
+            if (!loansById.containsKey(l.getId())) store(l);
+        }
+        loans.sort(Comparator.comparingLong(Loan::getId));
+        saveToFile();
+        try {
+            current.clear();
+            current.close();
+        } catch (IOException e) {
+            System.err.println("Error closing loans.archive: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if closed loans are kept in the off-heap archive
+     */
+    public static boolean isArchiveEnabled() {
+        return archive != null;
+    }
+
+    /**
+     * @return number of loans held in the archive (0 when it is disabled)
+     */
+    public static int getArchivedLoanCount() {
+        ClosedLoanStore current = archive;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Selects the snapshot format used by {@link #loadFromFile()} and {@link #saveToFile()}.
+     * Existing data is converted when the file for the new format does not exist yet.
+     *
+     * @param newFormat JSON (default, human readable) or SMILE (binary)
+     */
+    public static synchronized void setStorageFormat(StorageFormat newFormat) {
+        if (newFormat == null) return;
+        StorageFormat.migrate(FILE, format, newFormat);
+        format = newFormat;
+    }
+
+    /**
+     * @return the snapshot format currently used for loans
+     */
+    public static synchronized StorageFormat getStorageFormat() {
+        return format;
+    }
+
+    /**
+     * Rewrites the snapshot and truncates the journal.
+     */
+    public static synchronized void compact() {
+        saveToFile();
+    }
+
     /**
      * Loads all loans from JSON file, fixes missing fields, and cleans the JSON.
+     * The file is streamed record by record, so it is parsed once and never held as a tree.
+     * Users and items are resolved to the instances held by {@link UserRepository},
+     * {@link BookRepository} and {@link CDRepository}, so those must be loaded first.
+     * In journal mode the journal is replayed on top of the snapshot and then compacted.
      */
-    public static void loadFromFile() {
+    public static synchronized void loadFromFile() {
         try {
-            if (!FILE.exists() || FILE.length() == 0) {
-                loans.clear();
+            File file = format.resolve(FILE);
+            if (!file.exists() || file.length() == 0) {
+                clearInMemory();
+                if (journal != null) journal.replay(LoanRepository::applyJournalRecord);
                 saveToFile();
                 return;
             }
 
-            List<Loan> loaded;
-            JsonNode root = mapper.readTree(FILE);
-
-            if (root.isArray()) {
-                loaded = mapper.readValue(FILE, new TypeReference<List<Loan>>() {});
-            } else if (root.isObject()) {
-                Loan loan = mapper.readValue(FILE, Loan.class);
-                loaded = new ArrayList<>();
-                loaded.add(loan);
-            } else {
-                loaded = new ArrayList<>();
-            }
-
-            loans.clear();
-            boolean changed = false;
-            for (Loan l : loaded) {
-                // sanitize email
-                if (l.getUser() != null && l.getUser().getEmail() != null) {
-                    l.getUser().setEmail(sanitizeEmail(l.getUser().getEmail()));
-                }
+            clearInMemory();
+            boolean[] changed = {false};
+            FileUtil.forEachRecord(file, format.mapper(), node -> {
+                boolean[] legacy = {false};
+                Loan l = fromNode(node, legacy);
+                // records with embedded user/item copies are migrated to the key-based format
+                if (legacy[0]) changed[0] = true;
 
                 // fix dueDate if missing or invalid
                 if (l.getBorrowedDate() != null) {
@@ -60,40 +283,294 @@ public class LoanRepository {
                         if (l.getItem() != null) {
                             int duration = l.getItem().getBorrowDuration();
                             l.setDueDate(l.getBorrowedDate().plusDays(duration));
-                            changed = true;
+                            changed[0] = true;
                         }
                     }
                 }
 
                 // ensure fine fields exist
-                if (l.getFineAmount() < 0) { l.setFineAmount(0); changed = true; }
+                if (l.getFineAmount() < 0) { l.setFineAmount(0); changed[0] = true; }
                 if (!l.isFinePaid()) { l.setFinePaid(false); }
 
-                loans.add(l);
-            }
+                // already archived (e.g. a crash between archiving and rewriting the snapshot)
+                if (archive != null && archive.contains(l.getId())) { changed[0] = true; return; }
+
+                if (l.getId() <= 0 || loansById.containsKey(l.getId())) { l.setId(0); changed[0] = true; }
+                store(l);
+            });
+
+            // replay events recorded after the snapshot
+            if (journal != null && journal.replay(LoanRepository::applyJournalRecord) > 0) changed[0] = true;
 
             // save back to file if anything changed (to keep JSON clean)
-            if (changed) saveToFile();
+            if (changed[0]) saveToFile();
 
         } catch (Exception e) {
             System.err.println("Error loading loans.json: " + e.getMessage());
-            loans.clear();
+            clearInMemory();
         }
     }
 
     /**
-     * Returns all loans belonging to a specific user.
+     * Applies one journal record to the in-memory state. Records are idempotent so that
+     * replaying a journal over a snapshot that already contains them is harmless.
+     *
+     * @param record journal record
      */
-    public static List<Loan> getUserLoans(String username) {
-        List<Loan> result = new ArrayList<>();
-        for (Loan l : loans) {
-            if (l.getUser() != null && l.getUser().getUsername().equalsIgnoreCase(username)) {
-                result.add(l);
+    private static void applyJournalRecord(JsonNode record) {
+        String op = record.path("op").asText();
+        try {
+            switch (op) {
+                case "ADD": {
+                    JsonNode loanNode = record.get("loan");
+                    if (loanNode == null || loansById.containsKey(loanNode.path("id").asLong())) return;
+                    if (archive != null && archive.contains(loanNode.path("id").asLong())) return;
+                    store(fromNode(loanNode, new boolean[1]));
+                    break;
+                }
+                case "RETURN": {
+                    Loan l = loansById.get(record.path("id").asLong());
+                    if (l == null) return;
+                    l.setReturned(true);
+                    int fine = record.path("fine").asInt(0);
+                    if (fine > 0) l.setFineAmount(fine);
+                    deactivate(l);
+                    break;
+                }
+                case "PAID": {
+                    Loan l = loansById.get(record.path("id").asLong());
+                    if (l == null) return;
+                    l.setFinePaid(true);
+                    fines.update(l, userKey(l.getUser()));
+                    break;
+                }
+                case "DUE": {
+                    Loan l = loansById.get(record.path("id").asLong());
+                    if (l == null) return;
+                    JsonNode due = record.get("dueDate");
+                    reindexDueDate(l, due == null || due.isNull() ? null : LocalDate.parse(due.asText()));
+                    break;
+                }
+                default:
+                    System.err.println("Unknown loan journal record: " + op);
             }
+        } catch (IOException e) {
+            System.err.println("Skipping unreadable loan journal record: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Applies a loan event recovered from the commit journal of {@link UnitOfWork}.
+     *
+     * @param record loan event
+     */
+    static synchronized void applyCommitted(JsonNode record) {
+        applyJournalRecord(record);
+    }
+
+    /**
+     * Persists the loan events of a committed {@link UnitOfWork}: appended and synced to the
+     * journal when enabled, otherwise one snapshot rewrite.
+     *
+     * @param records loan events in commit order
+     */
+    static synchronized void persistCommitted(List<ObjectNode> records) {
+        if (records.isEmpty()) return;
+        if (journal == null) {
+            saveToFile();
+            return;
+        }
+        try {
+            for (ObjectNode record : records) journal.append(record);
+            journal.sync();
+            if (journal.size() >= compactThreshold) compact();
+        } catch (IOException e) {
+            System.err.println("Error appending to loans.journal: " + e.getMessage());
+            saveToFile();
+        }
+    }
+
+    /**
+     * Adds a loan to the in-memory structures, assigning an id if it has none.
+     */
+    private static void store(Loan l) {
+        if (l.getId() <= 0) l.setId(++lastId);
+        else lastId = Math.max(lastId, l.getId());
+        loans.add(l);
+        loansById.put(l.getId(), l);
+        if (!l.isReturned()) activeByDueDate.add(l);
+
+        String userKey = userKey(l.getUser());
+        fines.update(l, userKey);
+        if (userKey == null) return;
+        loansByUser.computeIfAbsent(userKey, k -> new ArrayList<>()).add(l);
+        if (l.isReturned()) return;
+        activeByUser.computeIfAbsent(userKey, k -> new LinkedHashSet<>()).add(l);
+        activeDueByUser.computeIfAbsent(userKey, k -> new DueDateIndex()).add(l);
+        String itemKey = itemKey(l.getItem());
+        if (itemKey != null) activeByUserItem.putIfAbsent(userKey + '\n' + itemKey, l);
+    }
+
+    /**
+     * Removes a returned loan from the active indexes and re-evaluates its fine.
+     */
+    private static void deactivate(Loan l) {
+        activeByDueDate.remove(l);
+        String userKey = userKey(l.getUser());
+        fines.update(l, userKey);
+        if (userKey == null) return;
+        Set<Loan> active = activeByUser.get(userKey);
+        if (active != null) {
+            active.remove(l);
+            if (active.isEmpty()) activeByUser.remove(userKey);
+        }
+        DueDateIndex due = activeDueByUser.get(userKey);
+        if (due != null) {
+            due.remove(l);
+            if (due.isEmpty()) activeDueByUser.remove(userKey);
+        }
+        String itemKey = itemKey(l.getItem());
+        if (itemKey != null) activeByUserItem.remove(userKey + '\n' + itemKey, l);
+    }
+
+    /**
+     * Changes a stored loan's due date and moves it in the due-date indexes and the fine ledger.
+     */
+    private static void reindexDueDate(Loan l, LocalDate date) {
+        String userKey = userKey(l.getUser());
+        activeByDueDate.remove(l);
+        DueDateIndex due = userKey == null ? null : activeDueByUser.get(userKey);
+        if (due != null) due.remove(l);
+
+        l.setDueDate(date);
+
+        activeByDueDate.add(l);
+        if (userKey != null && !l.isReturned() && date != null) {
+            activeDueByUser.computeIfAbsent(userKey, k -> new DueDateIndex()).add(l);
+        } else if (due != null && due.isEmpty()) {
+            activeDueByUser.remove(userKey);
+        }
+        fines.update(l, userKey);
+    }
+
+    private static void clearInMemory() {
+        loans.clear();
+        loansById.clear();
+        loansByUser.clear();
+        activeByUser.clear();
+        activeByUserItem.clear();
+        activeByDueDate.clear();
+        activeDueByUser.clear();
+        fines.clear();
+        // archived ids stay taken
+        lastId = archive != null ? archive.getMaxId() : 0;
+    }
+
+    /**
+     * Index key for a user: the username, lowercased (matches the former equalsIgnoreCase scans).
+     */
+    private static String userKey(User user) {
+        if (user == null || user.getUsername() == null) return null;
+        return user.getUsername().toLowerCase(Locale.ROOT);
+    }
+
+    private static String userKey(String username) {
+        return username == null ? null : username.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Index key for an item: books by ISBN, CDs by title + artist; null when the item cannot be matched.
+     */
+    private static String itemKey(Media item) {
+        if (item instanceof Book) {
+            String isbn = ((Book) item).getNormalizedIsbn();
+            return isbn == null ? null : "BOOK:" + isbn;
         }
+        if (item instanceof CD) {
+            String title = item.getNormalizedTitle();
+            String artist = ((CD) item).getNormalizedArtist();
+            if (title == null || artist == null) return null;
+            return "CD:" + title + '\u001F' + artist;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the user's active loans, dropping entries that were marked returned
+     * outside the repository since they were indexed.
+     */
+    private static Set<Loan> activeLoansOf(String userKey) {
+        Set<Loan> active = activeByUser.get(userKey);
+        if (active == null) return Collections.emptySet();
+        for (Iterator<Loan> it = active.iterator(); it.hasNext(); ) {
+            if (it.next().isReturned()) it.remove();
+        }
+        return active;
+    }
+
+    /**
+     * Persists a single mutation: appended to the journal when enabled, otherwise
+     * the snapshot is scheduled for rewrite through {@link PersistenceScheduler}.
+     *
+     * @param record journal record describing the mutation
+     */
+    private static void persist(ObjectNode record) {
+        if (UnitOfWork.stage(record)) return;
+        if (journal == null) {
+            PersistenceScheduler.markDirty("loans", LoanRepository::writeFile);
+            return;
+        }
+        try {
+            journal.append(record);
+            if (journal.size() >= compactThreshold) compact();
+            // with write-behind enabled, the flush interval also bounds how long a record waits for its fsync
+            else if (PersistenceScheduler.isEnabled()) PersistenceScheduler.markDirty("loans.journal", LoanRepository::forceJournal);
+        } catch (IOException e) {
+            System.err.println("Error appending to loans.journal: " + e.getMessage());
+            saveToFile();
+        }
+    }
+
+    /**
+     * Returns all loans belonging to a specific user.
+     */
+    public static synchronized List<Loan> getUserLoans(String username) {
+        List<Loan> userLoans = loansByUser.get(userKey(username));
+        List<Loan> result = userLoans == null ? new ArrayList<>() : new ArrayList<>(userLoans);
+        if (archive == null || username == null) return result;
+
+        archive.forEachOfUser(username, r -> addIfPresent(result, fromArchive(r)));
+        result.sort(Comparator.comparingLong(Loan::getId));
         return result;
     }
 
+    /**
+     * One page of {@link #getUserLoans(String)}; only the returned loans are built.
+     *
+     * @param username user (case-insensitive)
+     * @param offset   number of leading loans to skip
+     * @param limit    maximum number of loans to return
+     * @return the page, in the same order as {@link #getUserLoans(String)}
+     */
+    public static synchronized Page<Loan> getUserLoans(String username, int offset, int limit) {
+        List<Loan> userLoans = loansByUser.getOrDefault(userKey(username), Collections.emptyList());
+        if (archive == null || username == null) return Page.of(userLoans.iterator(), offset, limit);
+        return mergedPage(userLoans, archive.positionsOfUser(username), offset, limit);
+    }
+
+    /**
+     * Lazily streams a user's loans from a snapshot taken when the stream is created; archived
+     * loans are built one at a time as the stream reaches them.
+     *
+     * @param username user (case-insensitive)
+     * @return the user's loans, in the same order as {@link #getUserLoans(String)}
+     */
+    public static synchronized Stream<Loan> streamUserLoans(String username) {
+        List<Loan> heap = new ArrayList<>(loansByUser.getOrDefault(userKey(username), Collections.emptyList()));
+        if (archive == null || username == null) return heap.stream();
+        return mergedStream(heap, archive.positionsOfUser(username));
+    }
+
     /**
      * Checks if the specified user has any overdue loans (not returned and past due date).
      *
@@ -101,16 +578,21 @@ public class LoanRepository {
      * @return true if the user has at least one overdue loan
      */
     public static boolean hasOverdueLoans(User user) {
-        if (user == null) return false;
-        for (Loan l : loans) {
-            if (l.getUser() != null
-                    && l.getUser().getUsername().equalsIgnoreCase(user.getUsername())
-                    && !l.isReturned()
-                    && l.isOverdue()) {
-                return true;
-            }
-        }
-        return false;
+        return hasOverdueLoans(user, LibraryClock.today());
+    }
+
+    /**
+     * Checks if the specified user has any loan overdue as of the given date.
+     * Only the user's earliest due date is inspected.
+     *
+     * @param user the user to check
+     * @param asOf reference date ("today")
+     * @return true if the user has at least one loan due before {@code asOf}
+     */
+    public static synchronized boolean hasOverdueLoans(User user, LocalDate asOf) {
+        if (user == null || asOf == null) return false;
+        DueDateIndex due = activeDueByUser.get(userKey(user));
+        return due != null && due.hasDueBefore(asOf);
     }
     /**
      * Checks if the user already has an active (not returned) loan for the given media item.
@@ -119,45 +601,33 @@ public class LoanRepository {
      * @param item the media item
      * @return true if user has an active loan for this item
      */
-    public static boolean userHasActiveLoanForItem(User user, library_system.domain.Media item) {
+    public static boolean userHasActiveLoanForItem(User user, Media item) {
         return findActiveLoan(user, item) != null;
     }
 
     /**
      * Finds the active (not returned) loan for the specified user and media item.
-     * Matching: books by ISBN if present, otherwise by title+author; CDs by title+artist.
+     * Matching (case-insensitive, via the active-loan index): books by ISBN; CDs by title+artist.
      *
      * @param user the user who borrowed
      * @param item the media item
      * @return the matching Loan or null if not found
      */
-    public static Loan findActiveLoan(User user, library_system.domain.Media item) {
+    public static synchronized Loan findActiveLoan(User user, Media item) {
         if (user == null || item == null) return null;
-        for (Loan l : loans) {
-            if (l.isReturned()) continue;
-            if (l.getUser() == null || !l.getUser().getUsername().equalsIgnoreCase(user.getUsername())) continue;
-            library_system.domain.Media li = l.getItem();
-            if (li == null) continue;
-
-            if (li instanceof library_system.domain.Book && item instanceof library_system.domain.Book) {
-                String a = ((library_system.domain.Book) li).getIsbn();
-                String b = ((library_system.domain.Book) item).getIsbn();
-                if (a != null && b != null && a.equalsIgnoreCase(b)) return l;
-            } else if (li instanceof library_system.domain.CD && item instanceof library_system.domain.CD) {
-                String t1 = li.getTitle();
-                String t2 = item.getTitle();
-                String ar1 = ((library_system.domain.CD) li).getArtist();
-                String ar2 = ((library_system.domain.CD) item).getArtist();
-                if (t1 != null && t2 != null && ar1 != null && ar2 != null
-                        && t1.equalsIgnoreCase(t2) && ar1.equalsIgnoreCase(ar2)) {
-                    return l;
-                }
-            }
+        String userKey = userKey(user);
+        String itemKey = itemKey(item);
+        if (userKey == null || itemKey == null) return null;
+
+        Loan l = activeByUserItem.get(userKey + '\n' + itemKey);
+        if (l != null && l.isReturned()) {
+            deactivate(l);
+            return null;
         }
-        return null;
+        return l;
     }
 
-    public static void addLoan(Loan loan) {
+    public static synchronized void addLoan(Loan loan) {
         if (loan == null) return;
 
         // prevent duplicates
@@ -169,8 +639,12 @@ public class LoanRepository {
             loan.setDueDate(loan.getBorrowedDate().plusDays(loan.getItem().getBorrowDuration()));
         }
 
-        loans.add(loan);
-        saveToFile();
+        store(loan);
+
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", "ADD");
+        record.set("loan", toNode(loan));
+        persist(record);
     }
 
     /**
@@ -178,16 +652,10 @@ public class LoanRepository {
      *
      * @param loan loan to mark returned
      */
-    public static void markLoanReturned(Loan loan) {
+    public static synchronized void markLoanReturned(Loan loan) {
         if (loan == null) return;
 
-        for (Loan l : loans) {
-            if (!l.isReturned() && l == loan) {
-                l.setReturned(true);
-                break;
-            }
-        }
-        saveToFile();
+        markLoanReturned(loan, 0);
     }
 
     /**
@@ -196,113 +664,435 @@ public class LoanRepository {
      * @param loan loan to mark returned
      * @param fine fine amount to record
      */
-    public static void markLoanReturned(Loan loan, int fine) {
+    public static synchronized void markLoanReturned(Loan loan, int fine) {
         if (loan == null) return;
 
-        for (Loan l : loans) {
-            if (!l.isReturned() && l == loan) {
-                l.setReturned(true);
-                if (fine > 0) l.setFineAmount(fine);
-                break;
-            }
-        }
-        saveToFile();
+        Loan l = loansById.get(loan.getId());
+        if (l != loan || l.isReturned()) return;
+
+        l.setReturned(true);
+        if (fine > 0) l.setFineAmount(fine);
+        deactivate(l);
+
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", "RETURN");
+        record.put("id", l.getId());
+        record.put("fine", Math.max(0, fine));
+        persist(record);
+    }
+    /**
+     * Changes the due date of a stored loan (e.g. a renewal) and persists the change. Use this
+     * rather than {@link Loan#setDueDate(LocalDate)}, which does not update the due-date indexes
+     * or the fine ledger.
+     *
+     * @param loan loan to update
+     * @param date new due date
+     */
+    public static synchronized void updateDueDate(Loan loan, LocalDate date) {
+        if (loan == null) return;
+
+        Loan l = loansById.get(loan.getId());
+        if (l != loan) return;
+
+        reindexDueDate(l, date);
+
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", "DUE");
+        record.put("id", l.getId());
+        if (date != null) record.put("dueDate", date.toString());
+        else record.putNull("dueDate");
+        persist(record);
+    }
+
+    /**
+     * Marks the fine of a loan as paid and persists the change.
+     *
+     * @param loan loan whose fine was paid
+     */
+    public static synchronized void markFinePaid(Loan loan) {
+        if (loan == null) return;
+
+        Loan l = loansById.get(loan.getId());
+        if (l != loan || l.isFinePaid()) return;
+
+        l.setFinePaid(true);
+        fines.update(l, userKey(l.getUser()));
+
+        ObjectNode record = mapper.createObjectNode();
+        record.put("op", "PAID");
+        record.put("id", l.getId());
+        persist(record);
     }
+
+    /**
+     * Returns a user's unpaid fines as of the given date from the running per-user totals,
+     * without evaluating the user's loans one by one.
+     *
+     * @param username the user
+     * @param asOf     reference date ("today")
+     * @return counts, recorded and accruing fines, and the loans behind them
+     */
+    public static synchronized OutstandingFines getOutstandingFines(String username, LocalDate asOf) {
+        return fines.summary(userKey(username), asOf);
+    }
+
+    /**
+     * Returns the unpaid fines of the next chunk of users that have some, in username order,
+     * under one acquisition of the repository lock. Pass the last username of a chunk to read
+     * the following one.
+     *
+     * @param asOf      reference date ("today")
+     * @param afterUser username to continue after (null to start with the first)
+     * @param max       maximum number of users returned
+     * @return fines keyed by normalized (lowercase) username, sorted
+     */
+    public static synchronized Map<String, OutstandingFines> getOutstandingFines(LocalDate asOf, String afterUser, int max) {
+        return fines.summaries(asOf, afterUser == null ? null : userKey(afterUser), max);
+    }
+
     /**
      * Checks if the user has any active (not returned) loans.
      *
      * @param user the user
      * @return true if user has active loans
      */
-    public static boolean hasActiveLoans(User user) {
+    public static synchronized boolean hasActiveLoans(User user) {
         if (user == null) return false;
-        for (Loan l : loans) {
-            if (!l.isReturned() && l.getUser() != null
-                    && l.getUser().getUsername().equalsIgnoreCase(user.getUsername())) {
-                return true;
-            }
-        }
-        return false;
+        return !activeLoansOf(userKey(user)).isEmpty();
     }
     /**
      * Clears all loans (useful for testing).
      */
-    public static void clear() {
-        loans.clear();
+    public static synchronized void clear() {
+        if (archive != null) {
+            try {
+                archive.clear();
+            } catch (IOException e) {
+                System.err.println("Error clearing loans.archive: " + e.getMessage());
+            }
+        }
+        clearInMemory();
         saveToFile();
     }
 
     /**
-     * Returns a copy of all loans.
+     * Returns a copy of all loans, including archived ones (ordered by id when the archive is enabled).
      *
      * @return list of all loans
      */
-    public static List<Loan> getAllLoans() {
-        return new ArrayList<>(loans);
+    public static synchronized List<Loan> getAllLoans() {
+        if (archive == null) return new ArrayList<>(loans);
+
+        List<Loan> all = new ArrayList<>(archive.size() + loans.size());
+        archive.forEach(r -> addIfPresent(all, fromArchive(r)));
+        all.addAll(loans);
+        all.sort(Comparator.comparingLong(Loan::getId));
+        return all;
+    }
+
+
+    /**
+     * One page of {@link #getAllLoans()}; only the returned loans are built.
+     *
+     * @param offset number of leading loans to skip
+     * @param limit  maximum number of loans to return
+     * @return the page, in the same order as {@link #getAllLoans()}
+     */
+    public static synchronized Page<Loan> getAllLoans(int offset, int limit) {
+        if (archive == null) return Page.of(loans.iterator(), offset, limit);
+        return mergedPage(loans, null, offset, limit);
+    }
+
+    /**
+     * Lazily streams all loans, so reports can walk every loan (including archived ones)
+     * without holding them all in memory. The heap loans are snapshotted and the merge order
+     * computed once, when the stream is created; archived loans are built one at a time as the
+     * stream reaches them.
+     *
+     * @return all loans, in the same order as {@link #getAllLoans()}
+     */
+    public static synchronized Stream<Loan> streamAllLoans() {
+        List<Loan> heap = new ArrayList<>(loans);
+        if (archive == null) return heap.stream();
+        return mergedStream(heap, null);
+    }
+
+    /**
+     * Pages through heap loans and archived records merged by id; loans are built for the page alone.
+     *
+     * @param positions archive positions to include, or null for every record
+     */
+    private static Page<Loan> mergedPage(List<Loan> heap, int[] positions, int offset, int limit) {
+        long[] keys = mergedKeys(heap, positions);
+        int from = Math.min(Math.max(0, offset), keys.length);
+        int to = (int) Math.min(keys.length, (long) from + Math.max(0, limit));
+        List<Loan> items = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) addIfPresent(items, mergedLoan(archive, heap, keys[i]));
+        return new Page<>(items, from, to < keys.length);
+    }
+
+    /**
+     * Streams heap loans and archived records merged by id, walking the merge order once.
+     *
+     * @param heap      snapshot of the heap loans to include
+     * @param positions archive positions to include, or null for every record
+     */
+    private static Stream<Loan> mergedStream(List<Loan> heap, int[] positions) {
+        ClosedLoanStore store = archive;
+        return Arrays.stream(mergedKeys(heap, positions))
+                .mapToObj(key -> {
+                    synchronized (LoanRepository.class) {
+                        // the archive may have been disabled or cleared since the stream was created
+                        return archive == store ? mergedLoan(store, heap, key) : null;
+                    }
+                })
+                .filter(Objects::nonNull);
     }
 
+    /**
+     * Merge order of heap loans and archived records: only ids are sorted, packed as id, source
+     * and position in one long.
+     */
+    private static long[] mergedKeys(List<Loan> heap, int[] positions) {
+        int archived = positions == null ? archive.size() : positions.length;
+        long[] keys = new long[heap.size() + archived];
+        for (int i = 0; i < archived; i++) {
+            int pos = positions == null ? i : positions[i];
+            keys[i] = (archive.idAt(pos) << 32) | pos;
+        }
+        for (int i = 0; i < heap.size(); i++) {
+            keys[archived + i] = (heap.get(i).getId() << 32) | HEAP_FLAG | i;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
 
     /**
-     * Returns all overdue loans (not yet returned and past due date).
+     * Resolves one merge key to its loan, or null if the archived record is gone or unreadable.
+     */
+    private static Loan mergedLoan(ClosedLoanStore store, List<Loan> heap, long key) {
+        int index = (int) (key & ~HEAP_FLAG & 0xFFFFFFFFL);
+        if ((key & HEAP_FLAG) != 0) return heap.get(index);
+        return index < store.size() ? fromArchive(store.get(index)) : null;
+    }
+
+    /**
+     * Returns all overdue loans (not yet returned and past due date), ordered by due date.
      */
     public static List<Loan> getOverdueLoans() {
-        List<Loan> overdue = new ArrayList<>();
+        return getOverdueLoans(LibraryClock.today());
+    }
+
+    /**
+     * Returns all loans overdue as of the given date (not returned and due before it),
+     * ordered by due date.
+     *
+     * @param asOf reference date ("today")
+     * @return overdue loans
+     */
+    public static synchronized List<Loan> getOverdueLoans(LocalDate asOf) {
+        if (asOf == null) return new ArrayList<>();
+        return activeByDueDate.dueBefore(asOf);
+    }
+
+    /**
+     * Writes the full snapshot of all loans and, in journal mode, truncates the journal
+     * because every journaled event is now contained in the snapshot. With the archive enabled,
+     * closed loans are first moved to it and left out of the snapshot.
+     */
+    public static synchronized void saveToFile() {
+        try {
+            writeFile();
+        } catch (Exception e) {
+            System.err.println("Error saving loans.json: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same as {@link #saveToFile()} but reports failure to the caller.
+     *
+     * @throws IOException if the snapshot, archive or journal cannot be written
+     */
+    static synchronized void writeFile() throws IOException {
+        if (archive != null) archiveClosedLoans();
+        ArrayNode arr = mapper.createArrayNode();
         for (Loan l : loans) {
-            if (!l.isReturned() && l.isOverdue()) {
-                overdue.add(l);
-            }
+            arr.add(toNode(l));
+        }
+        FileUtil.writeAtomic(format.resolve(FILE), arr, format.mapper());
+        if (journal != null) journal.truncate();
+    }
+
+    /**
+     * Builds the persisted JSON representation of a loan (shared by the snapshot and the journal).
+     * The user is stored by username and the item by its natural key (see {@link #itemRef}).
+     */
+    private static ObjectNode toNode(Loan l) {
+        ObjectNode loanObj = mapper.createObjectNode();
+        loanObj.put("id", l.getId());
+
+        // references only: the user and item themselves live in their own repositories
+        User u = l.getUser();
+        if (u != null) loanObj.put("username", u.getUsername());
+        loanObj.set("item", itemRef(l.getItem()));
+
+        if (l.getBorrowedDate() != null) loanObj.put("borrowedDate", l.getBorrowedDate().toString());
+        if (l.getDueDate() != null) loanObj.put("dueDate", l.getDueDate().toString());
+        loanObj.put("returned", l.isReturned());
+        loanObj.put("finePaid", l.isFinePaid());
+        loanObj.put("fineAmount", l.getFineAmount());
+        return loanObj;
+    }
+
+    /**
+     * Moves every closed loan from the heap to the archive. The archive is synced before the
+     * loans are dropped, so a loan is always in the archive, the snapshot, or both.
+     */
+    private static void archiveClosedLoans() throws IOException {
+        List<Loan> closed = new ArrayList<>();
+        for (Loan l : loans) {
+            if (isClosed(l)) closed.add(l);
+        }
+        if (closed.isEmpty()) return;
+
+        for (Loan l : closed) {
+            User u = l.getUser();
+            archive.append(l.getId(), u != null ? u.getUsername() : null,
+                    mapper.writeValueAsString(itemRef(l.getItem())),
+                    l.getBorrowedDate(), l.getDueDate(), l.isFinePaid(), l.getFineAmount());
+        }
+        archive.sync();
+
+        Set<Loan> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        moved.addAll(closed);
+        loans.removeIf(moved::contains);
+        for (Loan l : closed) {
+            loansById.remove(l.getId());
+            deactivate(l);
+            String userKey = userKey(l.getUser());
+            List<Loan> userLoans = userKey == null ? null : loansByUser.get(userKey);
+            if (userLoans == null) continue;
+            userLoans.removeIf(moved::contains);
+            if (userLoans.isEmpty()) loansByUser.remove(userKey);
         }
-        return overdue;
     }
 
-    public static void saveToFile() {
+    /**
+     * A loan is closed once it is returned and has no fine left to pay; it never changes again.
+     */
+    private static boolean isClosed(Loan l) {
+        return l.isReturned() && (l.isFinePaid() || l.getFineAmount() <= 0);
+    }
+
+    /**
+     * Rebuilds a loan from an archive record, or returns null if its item reference is unreadable.
+     */
+    private static Loan fromArchive(ClosedLoanStore.Record r) {
         try {
-            ArrayNode arr = mapper.createArrayNode();
-            for (Loan l : loans) {
-                ObjectNode loanObj = mapper.createObjectNode();
-
-                // user
-                ObjectNode userNode = mapper.createObjectNode();
-                User u = l.getUser();
-                if (u != null) {
-                    userNode.put("username", u.getUsername());
-                    userNode.put("password", u.getPassword());
-                    userNode.put("email", u.getEmail() != null ? sanitizeEmail(u.getEmail()) : null);
-                    userNode.put("fineBalance", u.getFineBalance());
-                }
-                loanObj.set("user", userNode);
-
-                // item
-                ObjectNode itemNode = mapper.createObjectNode();
-                library_system.domain.Media m = l.getItem();
-                if (m != null) {
-                    if (m.getMediaType() != null) itemNode.put("mediaType", m.getMediaType());
-                    itemNode.put("title", m.getTitle());
-                    if (m instanceof library_system.domain.Book) {
-                        library_system.domain.Book bk = (library_system.domain.Book) m;
-                        itemNode.put("author", bk.getAuthor());
-                        if (bk.getIsbn() != null) itemNode.put("isbn", bk.getIsbn());
-                    } else if (m instanceof library_system.domain.CD) {
-                        library_system.domain.CD cd = (library_system.domain.CD) m;
-                        itemNode.put("artist", cd.getArtist());
-                    }
-                    itemNode.put("quantity", m.getQuantity());
-                    itemNode.put("borrowDuration", m.getBorrowDuration());
-                }
-                loanObj.set("item", itemNode);
+            Loan l = new Loan();
+            l.setId(r.getId());
+            l.setUser(resolveUser(r.getUsername(), null));
+            JsonNode ref = mapper.readTree(r.getItemRef());
+            if (ref.isObject() && ref.size() > 0) l.setItem(resolveItem(ref));
+            if (r.getBorrowedDate() != null) l.setBorrowedDate(r.getBorrowedDate());
+            l.setDueDate(r.getDueDate());
+            l.setReturned(true);
+            l.setFinePaid(r.isFinePaid());
+            l.setFineAmount(r.getFineAmount());
+            return l;
+        } catch (IOException e) {
+            System.err.println("Skipping unreadable archived loan " + r.getId() + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-                if (l.getBorrowedDate() != null) loanObj.put("borrowedDate", l.getBorrowedDate().toString());
-                if (l.getDueDate() != null) loanObj.put("dueDate", l.getDueDate().toString());
-                loanObj.put("returned", l.isReturned());
-                loanObj.put("finePaid", l.isFinePaid());
-                loanObj.put("fineAmount", l.getFineAmount());
+    private static void addIfPresent(List<Loan> target, Loan l) {
+        if (l != null) target.add(l);
+    }
 
-                arr.add(loanObj);
-            }
-            mapper.writerWithDefaultPrettyPrinter().writeValue(FILE, arr);
-        } catch (Exception e) {
-            System.err.println("Error saving loans.json: " + e.getMessage());
+    /**
+     * Item reference stored in a loan record: media type plus the natural key used to find the
+     * item again (books: ISBN, or title+author when there is no ISBN; CDs: title+artist).
+     * The title is kept so a reference that can no longer be resolved still displays.
+     */
+    static ObjectNode itemRef(Media m) {
+        ObjectNode ref = mapper.createObjectNode();
+        if (m == null) return ref;
+        if (m.getMediaType() != null) ref.put("mediaType", m.getMediaType());
+        ref.put("title", m.getTitle());
+        if (m instanceof Book) {
+            Book bk = (Book) m;
+            if (bk.getIsbn() != null) ref.put("isbn", bk.getIsbn());
+            ref.put("author", bk.getAuthor());
+        } else if (m instanceof CD) {
+            ref.put("artist", ((CD) m).getArtist());
+        }
+        return ref;
+    }
+
+    /**
+     * Rebuilds a loan from a persisted record, resolving its user and item to the canonical
+     * repository instances. Both the key-based format and the legacy format (full user and item
+     * copies embedded in every loan) are accepted; references that cannot be resolved fall back
+     * to a detached copy built from the record so no loan history is lost.
+     *
+     * @param node   persisted loan record
+     * @param legacy set to true when the record used the legacy embedded format
+     * @return the loan
+     * @throws IOException if the embedded item cannot be read
+     */
+    private static Loan fromNode(JsonNode node, boolean[] legacy) throws IOException {
+        Loan l = new Loan();
+        l.setId(node.path("id").asLong(0));
+
+        JsonNode userNode = node.get("user");
+        if (node.hasNonNull("username")) {
+            l.setUser(resolveUser(node.get("username").asText(), null));
+        } else if (userNode != null && userNode.isObject()) {
+            legacy[0] = true;
+            l.setUser(resolveUser(textOrNull(userNode, "username"), userNode));
+        }
+
+        JsonNode itemNode = node.get("item");
+        if (itemNode != null && itemNode.isObject() && itemNode.size() > 0) {
+            if (itemNode.has("quantity") || itemNode.has("borrowDuration")) legacy[0] = true;
+            l.setItem(resolveItem(itemNode));
+        }
+
+        if (node.hasNonNull("borrowedDate")) l.setBorrowedDate(LocalDate.parse(node.get("borrowedDate").asText()));
+        if (node.hasNonNull("dueDate")) l.setDueDate(LocalDate.parse(node.get("dueDate").asText()));
+        l.setReturned(node.path("returned").asBoolean(false));
+        l.setFinePaid(node.path("finePaid").asBoolean(false));
+        l.setFineAmount(node.path("fineAmount").asInt(0));
+        return l;
+    }
+
+    private static User resolveUser(String username, JsonNode embedded) throws IOException {
+        User canonical = UserRepository.findUser(username);
+        if (canonical != null) return canonical;
+
+        User detached = embedded != null ? mapper.treeToValue(embedded, User.class) : new User();
+        if (detached.getUsername() == null) detached.setUsername(username);
+        if (detached.getEmail() != null) detached.setEmail(sanitizeEmail(detached.getEmail()));
+        return detached;
+    }
+
+    private static Media resolveItem(JsonNode ref) throws IOException {
+        String type = ref.path("mediaType").asText("");
+        Media canonical = null;
+        if ("BOOK".equals(type)) {
+            String isbn = textOrNull(ref, "isbn");
+            canonical = isbn != null
+                    ? BookRepository.findByIsbnExact(isbn)
+                    : BookRepository.findByTitleAndAuthor(textOrNull(ref, "title"), textOrNull(ref, "author"));
+        } else if ("CD".equals(type)) {
+            canonical = CDRepository.findByTitleAndArtist(textOrNull(ref, "title"), textOrNull(ref, "artist"));
         }
+        return canonical != null ? canonical : mapper.treeToValue(ref, Media.class);
+    }
+
+    private static String textOrNull(JsonNode node, String field) {
+        return node.hasNonNull(field) ? node.get(field).asText() : null;
     }
 
     private static String sanitizeEmail(String email) {
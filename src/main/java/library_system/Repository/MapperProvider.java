@@ -1,8 +1,10 @@
 package library_system.repository;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
 /**
@@ -23,15 +25,21 @@ public class MapperProvider {
      * <p>
      * Automatically configured to handle Java 8 date/time types and ignore unknown properties.
      */
-    public static ObjectMapper MAPPER = createMapper();
+    public static ObjectMapper MAPPER = createMapper(new JsonFactory());
 
     /**
-     * Reinitializes the mapper.
+     * Mapper for the binary Smile snapshot format, configured exactly like {@link #MAPPER}.
+     */
+    public static ObjectMapper SMILE_MAPPER = createMapper(new SmileFactory());
+
+    /**
+     * Reinitializes the mappers.
      * <p>
      * Useful in unit tests to ensure a clean JSON environment.
      */
     public static void resetForTesting() {
-        MAPPER = createMapper();
+        MAPPER = createMapper(new JsonFactory());
+        SMILE_MAPPER = createMapper(new SmileFactory());
     }
 
     /**
@@ -44,10 +52,11 @@ public class MapperProvider {
      *     <li>Ignoring unknown JSON fields to allow forward compatibility</li>
      * </ul>
      *
+     * @param factory underlying format (JSON text or Smile binary)
      * @return configured mapper
      */
-    private static ObjectMapper createMapper() {
-        ObjectMapper mapper = new ObjectMapper();
+    private static ObjectMapper createMapper(JsonFactory factory) {
+        ObjectMapper mapper = new ObjectMapper(factory);
 
         // Support Java 8 date/time types
         mapper.registerModule(new JavaTimeModule());
@@ -0,0 +1,331 @@
+package library_system.repository;
+
+import library_system.domain.TextNormalizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Trigram inverted index answering case-insensitive "contains" queries on one text field.
+ * <p>
+ * The field extractor supplies the already-normalized value (see {@link TextNormalizer}), which
+ * is split into overlapping 3-character grams; each gram maps to the sorted list of documents
+ * containing it. Queries are folded the same way. A query of 3 or more characters intersects
+ * the posting lists of its own grams, smallest first, and only the surviving candidates are
+ * verified with {@link String#contains}, so results are exactly those of a full scan.
+ * Shorter queries fall back to scanning the normalized values held by the index.
+ * </p>
+ * <p>
+ * Results come back in insertion order. An element is indexed once even if it is added
+ * repeatedly. The field is read when the element is added, so an element whose field is changed
+ * in place must be removed and added again. Queries take a shared lock and updates an exclusive
+ * one, so concurrent searches do not block each other.
+ * </p>
+ *
+ * @param <T> indexed element type
+ */
+public class NGramIndex<T> implements TrackedList.Listener<T> {
+
+    static final int N = 3;
+
+    /** Growable sorted int array used for posting lists. */
+    private static final class IntList {
+        int[] values = new int[2];
+        int size;
+
+        void add(int v) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = v;
+        }
+    }
+
+    private final Function<T, String> field;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** Document id -> element (null once removed). */
+    private final List<T> docs = new ArrayList<>();
+
+    /** Document id -> normalized field value (null once removed or when the field was null). */
+    private final List<String> values = new ArrayList<>();
+
+    /** Element -> its document id. */
+    private final Map<T, Integer> docIds = new IdentityHashMap<>();
+
+    /** Elements added more than once -> number of extra copies. */
+    private final Map<T, Integer> extraCopies = new IdentityHashMap<>();
+
+    /** Packed gram -> ids of the documents containing it, ascending. */
+    private final Map<Long, IntList> postings = new HashMap<>();
+
+    private int removed = 0;
+
+    /**
+     * @param field extracts the normalized text of an element (may return null)
+     */
+    public NGramIndex(Function<T, String> field) {
+        this.field = field;
+    }
+
+    @Override
+    public void added(T element) {
+        add(element);
+    }
+
+    @Override
+    public void removed(T element) {
+        remove(element);
+    }
+
+    @Override
+    public void cleared() {
+        clear();
+    }
+
+    /**
+     * Indexes an element.
+     *
+     * @param element element to add (null is ignored)
+     */
+    public void add(T element) {
+        if (element == null) return;
+        lock.writeLock().lock();
+        try {
+            if (docIds.containsKey(element)) {
+                extraCopies.merge(element, 1, Integer::sum);
+                return;
+            }
+            insert(element, field.apply(element));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(T element, String value) {
+        int id = docs.size();
+        docs.add(element);
+        values.add(value);
+        docIds.put(element, id);
+        if (value == null) return;
+        for (long gram : grams(value)) {
+            IntList list = postings.computeIfAbsent(gram, g -> new IntList());
+            // a gram repeated within one value is posted once
+            if (list.size == 0 || list.values[list.size - 1] != id) list.add(id);
+        }
+    }
+
+    /**
+     * Removes an element (or one extra copy of it).
+     *
+     * @param element element to remove
+     */
+    public void remove(T element) {
+        if (element == null) return;
+        lock.writeLock().lock();
+        try {
+            Integer copies = extraCopies.get(element);
+            if (copies != null) {
+                if (copies == 1) extraCopies.remove(element);
+                else extraCopies.put(element, copies - 1);
+                return;
+            }
+            Integer id = docIds.remove(element);
+            if (id == null) return;
+            docs.set(id, null);
+            values.set(id, null);
+            // posting lists keep the stale id until compaction; verification skips it
+            if (++removed > 64 && removed > docIds.size()) compact();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** Rebuilds the index without removed documents. */
+    private void compact() {
+        List<T> liveDocs = new ArrayList<>();
+        List<String> liveValues = new ArrayList<>();
+        for (int i = 0; i < docs.size(); i++) {
+            if (docs.get(i) == null) continue;
+            liveDocs.add(docs.get(i));
+            liveValues.add(values.get(i));
+        }
+        docs.clear();
+        values.clear();
+        docIds.clear();
+        postings.clear();
+        removed = 0;
+        for (int i = 0; i < liveDocs.size(); i++) insert(liveDocs.get(i), liveValues.get(i));
+    }
+
+    /**
+     * Removes every element.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            docs.clear();
+            values.clear();
+            docIds.clear();
+            extraCopies.clear();
+            postings.clear();
+            removed = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds every element whose field contains the query, ignoring case.
+     *
+     * @param query substring to look for (not null)
+     * @return matching elements in insertion order
+     */
+    public List<T> containing(String query) {
+        List<T> result = new ArrayList<>();
+        match(query, result::add);
+        return result;
+    }
+
+    /**
+     * Returns one page of {@link #containing(String)}. Matching stops as soon as the page (and one
+     * look-ahead element) is filled, so only the requested elements are collected.
+     *
+     * @param query  substring to look for (not null)
+     * @param offset number of leading matches to skip
+     * @param limit  maximum number of matches to return
+     * @return the page, in insertion order
+     */
+    public Page<T> containing(String query, int offset, int limit) {
+        int skip = Math.max(0, offset);
+        int take = Math.max(0, limit);
+        List<T> items = new ArrayList<>(Math.min(take, 64));
+        boolean[] more = {false};
+        int[] seen = {0};
+        match(query, element -> {
+            if (seen[0]++ < skip) return true;
+            if (items.size() < take) return items.add(element);
+            more[0] = true;
+            return false;
+        });
+        return new Page<>(items, skip, more[0]);
+    }
+
+    /**
+     * Lazily streams the matches of {@link #containing(String)}. The posting lists are walked
+     * once, when the stream is created, and the surviving candidates captured with their values;
+     * each candidate is then verified as the stream reaches it. Like a snapshot, the stream does
+     * not see elements added or removed after it was created.
+     *
+     * @param query substring to look for (not null)
+     * @return matching elements in insertion order
+     */
+    public Stream<T> stream(String query) {
+        String q = TextNormalizer.fold(query);
+        List<T> candidateDocs = new ArrayList<>();
+        List<String> candidateValues = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int id : candidates(q)) {
+                if (values.get(id) == null) continue;
+                candidateDocs.add(docs.get(id));
+                candidateValues.add(values.get(id));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return IntStream.range(0, candidateDocs.size())
+                .filter(i -> candidateValues.get(i).contains(q))
+                .mapToObj(candidateDocs::get);
+    }
+
+    /**
+     * Feeds every match, in insertion order, to {@code sink} until it returns false.
+     */
+    private void match(String query, Predicate<T> sink) {
+        String q = TextNormalizer.fold(query);
+        lock.readLock().lock();
+        try {
+            for (int id : candidates(q)) {
+                if (!offerIfMatch(id, q, sink)) return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids that may match a folded query, ascending: the intersection of its grams' posting lists,
+     * or every id for a query shorter than {@link #N}. Caller holds the read lock.
+     */
+    private int[] candidates(String q) {
+        if (q.length() < N) return IntStream.range(0, docs.size()).toArray();
+
+        List<IntList> lists = new ArrayList<>();
+        for (long gram : grams(q)) {
+            IntList list = postings.get(gram);
+            if (list == null) return new int[0];
+            lists.add(list);
+        }
+        lists.sort(Comparator.comparingInt(l -> l.size));
+
+        int[] candidates = Arrays.copyOf(lists.get(0).values, lists.get(0).size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.size() && count > 0; i++) {
+            count = intersect(candidates, count, lists.get(i));
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /** Offers the document if it matches; returns false when the sink wants no more. */
+    private boolean offerIfMatch(int id, String q, Predicate<T> sink) {
+        String value = values.get(id);
+        return value == null || !value.contains(q) || sink.test(docs.get(id));
+    }
+
+    /**
+     * Keeps the candidates also present in {@code other} (both ascending); returns the new count.
+     */
+    private static int intersect(int[] candidates, int count, IntList other) {
+        int kept = 0;
+        int j = 0;
+        for (int i = 0; i < count && j < other.size; i++) {
+            int id = candidates[i];
+            while (j < other.size && other.values[j] < id) j++;
+            if (j < other.size && other.values[j] == id) candidates[kept++] = id;
+        }
+        return kept;
+    }
+
+    /**
+     * @return number of indexed elements
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return docIds.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Splits a normalized value into its packed trigrams (3 UTF-16 chars in one long).
+     */
+    private static long[] grams(String value) {
+        if (value.length() < N) return new long[0];
+        long[] result = new long[value.length() - N + 1];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) value.charAt(i) << 32) | ((long) value.charAt(i + 1) << 16) | value.charAt(i + 2);
+        }
+        return result;
+    }
+}
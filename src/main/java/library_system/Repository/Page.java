@@ -0,0 +1,136 @@
+package library_system.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * One slice of a query result, addressed by offset and limit.
+ * <p>
+ * Paged finders only build the requested items (plus one look-ahead to answer {@link #hasMore()}),
+ * so a listing that renders twenty rows does not copy the whole result. Offsets are positions in
+ * the current result; if the underlying data changes between two calls, a following page may
+ * skip or repeat an item.
+ * </p>
+ *
+ * @param <T> item type
+ */
+public final class Page<T> {
+
+    /**
+     * Fetches one page of a query; used to turn a paged finder into a stream.
+     *
+     * @param <T> item type
+     */
+    @FunctionalInterface
+    public interface Fetcher<T> {
+        /**
+         * @param offset number of leading results to skip
+         * @param limit  maximum number of results to return
+         * @return the page
+         */
+        Page<T> fetch(int offset, int limit);
+    }
+
+    private final List<T> items;
+    private final int offset;
+    private final boolean hasMore;
+
+    /**
+     * @param items   items of this page
+     * @param offset  position of the first item in the full result
+     * @param hasMore whether results exist past this page
+     */
+    public Page(List<T> items, int offset, boolean hasMore) {
+        this.items = Collections.unmodifiableList(items);
+        this.offset = offset;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * Builds a page by skipping and taking from an iterator; the iterator is read at most
+     * {@code offset + limit + 1} times.
+     *
+     * @param it     source in result order
+     * @param offset number of leading results to skip (negative is treated as 0)
+     * @param limit  maximum number of results (negative is treated as 0)
+     * @param <T>    item type
+     * @return the page
+     */
+    public static <T> Page<T> of(Iterator<? extends T> it, int offset, int limit) {
+        offset = Math.max(0, offset);
+        limit = Math.max(0, limit);
+        for (int i = 0; i < offset && it.hasNext(); i++) it.next();
+        List<T> items = new ArrayList<>(Math.min(limit, 64));
+        while (items.size() < limit && it.hasNext()) items.add(it.next());
+        return new Page<>(items, offset, it.hasNext());
+    }
+
+    /**
+     * Streams a paged query lazily, fetching {@code pageSize} results at a time.
+     * Every fetch starts over from its offset, so this suits finders that can seek; a finder that
+     * skips by iterating makes the whole stream quadratic and should expose a cursor instead.
+     *
+     * @param fetcher  paged finder
+     * @param pageSize results fetched per call
+     * @param <T>      item type
+     * @return stream over the whole result
+     */
+    public static <T> Stream<T> stream(Fetcher<T> fetcher, int pageSize) {
+        int size = Math.max(1, pageSize);
+        Iterator<T> it = new Iterator<>() {
+            private Page<T> page = fetcher.fetch(0, size);
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                if (next < page.items.size()) return true;
+                if (!page.hasMore) return false;
+                page = fetcher.fetch(page.getNextOffset(), size);
+                next = 0;
+                return !page.items.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.items.get(next++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED), false);
+    }
+
+    /**
+     * @return items of this page (read-only)
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return position of the first item in the full result
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return offset to request for the following page
+     */
+    public int getNextOffset() {
+        return offset + items.size();
+    }
+
+    /**
+     * @return true if results exist past this page
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
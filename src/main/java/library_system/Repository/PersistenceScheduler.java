@@ -0,0 +1,225 @@
+package library_system.repository;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Write-behind scheduler that coalesces repository saves.
+ * <p>
+ * Repositories report mutations through {@link #markDirty(String, Saver)} instead of
+ * rewriting their file immediately. While the scheduler is disabled (the default) the save
+ * runs synchronously, exactly as before. Once {@link #enable(long, int)} is called, dirty
+ * repositories are flushed by a background thread every {@code intervalMillis}, or as soon as
+ * {@code threshold} mutations have accumulated, whichever comes first. A JVM shutdown
+ * hook and {@link #flush()} write out anything still pending, so a clean exit never loses data.
+ * A save that fails stays dirty and is tried again by the next flush.
+ * </p>
+ * <p>
+ * {@link #batch(Supplier)} groups the mutations of one multi-step operation: saves requested on
+ * the calling thread while it runs are collected and issued once each when it ends, so an
+ * operation touching several items writes every affected file a single time.
+ * </p>
+ */
+public class PersistenceScheduler {
+
+    /**
+     * Writes one repository to disk, reporting failure instead of swallowing it.
+     */
+    @FunctionalInterface
+    public interface Saver {
+        /**
+         * @throws IOException if the repository could not be written
+         */
+        void save() throws IOException;
+    }
+
+    /** Repository name -> save action, for every repository with unsaved changes. */
+    private static final Map<String, Saver> dirty = new LinkedHashMap<>();
+
+    private static ScheduledExecutorService executor = null;
+    private static Thread shutdownHook = null;
+
+    /** Mutations that trigger an inline flush; 0 means interval-only. */
+    private static int threshold = 0;
+
+    /** Mutations reported since the last flush. */
+    private static int pendingMutations = 0;
+
+    /** How long {@link #shutdown()} waits for a background flush that is already running. */
+    private static final long SHUTDOWN_WAIT_MILLIS = 30_000;
+
+    /** Saves deferred by the {@link #batch(Supplier)} running on this thread, if any. */
+    private static final ThreadLocal<Map<String, Saver>> batch = new ThreadLocal<>();
+
+    private PersistenceScheduler() {}
+
+    /**
+     * Enables write-behind persistence.
+     *
+     * @param intervalMillis flush interval of the background thread (values below 1 disable the timer)
+     * @param threshold      number of mutations that forces a flush (values below 1 disable the threshold)
+     */
+    public static void enable(long intervalMillis, int threshold) {
+        shutdown();
+        synchronized (PersistenceScheduler.class) {
+            PersistenceScheduler.threshold = Math.max(0, threshold);
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "persistence-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            if (intervalMillis > 0) {
+                executor.scheduleWithFixedDelay(PersistenceScheduler::flush,
+                        intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+            shutdownHook = new Thread(PersistenceScheduler::flush, "persistence-shutdown-flush");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * Flushes pending changes and returns to synchronous persistence.
+     * A background flush that is already writing is allowed to finish (interrupting it would
+     * abort the file write), then the remaining changes are written on the calling thread.
+     * Saves run outside the scheduler lock so they never wait on a repository
+     * that is itself reporting a mutation.
+     */
+    public static void shutdown() {
+        ScheduledExecutorService stopping;
+        synchronized (PersistenceScheduler.class) {
+            stopping = executor;
+            executor = null;
+            if (shutdownHook != null) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException alreadyShuttingDown) {
+                    // the hook is running or has run; nothing left to unregister
+                }
+                shutdownHook = null;
+            }
+        }
+        if (stopping != null) {
+            // cancels the periodic flush; a flush already queued or running completes
+            stopping.shutdown();
+            try {
+                if (!stopping.awaitTermination(SHUTDOWN_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    System.err.println("Background save still running after " + SHUTDOWN_WAIT_MILLIS + " ms");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return true when saves are deferred to the scheduler
+     */
+    public static synchronized boolean isEnabled() {
+        return executor != null;
+    }
+
+    /**
+     * Records that a repository has unsaved changes. When the scheduler is disabled the
+     * save runs immediately on the calling thread.
+     *
+     * @param name  repository name (e.g. "books"); repeated marks for the same name are coalesced
+     * @param saver action that writes the repository to disk
+     */
+    public static void markDirty(String name, Saver saver) {
+        Map<String, Saver> deferred = batch.get();
+        if (deferred != null) {
+            deferred.put(name, saver);
+            return;
+        }
+        synchronized (PersistenceScheduler.class) {
+            if (executor != null) {
+                dirty.put(name, saver);
+                if (threshold > 0 && ++pendingMutations >= threshold) {
+                    // hand the flush to the background thread: the caller may hold a repository lock
+                    pendingMutations = 0;
+                    executor.execute(PersistenceScheduler::flush);
+                }
+                return;
+            }
+        }
+        try {
+            saver.save();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Save of " + name + " failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs a multi-step operation and issues each save it requested once, when it ends (also if
+     * it fails, since earlier steps may already have changed memory). Nested calls join the
+     * outermost batch.
+     *
+     * @param work operation to run
+     * @param <T>  result type
+     * @return the operation's result
+     */
+    public static <T> T batch(Supplier<T> work) {
+        if (batch.get() != null) return work.get();
+        Map<String, Saver> deferred = new LinkedHashMap<>();
+        batch.set(deferred);
+        try {
+            return work.get();
+        } finally {
+            batch.remove();
+            for (Map.Entry<String, Saver> e : deferred.entrySet()) markDirty(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Redirects the saves requested on this thread into {@code target}, or stops deferring them
+     * when it is null. {@link UnitOfWork} uses it to issue the saves itself once its commit
+     * record is durable.
+     *
+     * @param target map collecting deferred saves, or null
+     * @return the previous target, to be restored afterwards
+     */
+    static Map<String, Saver> deferInto(Map<String, Saver> target) {
+        Map<String, Saver> previous = batch.get();
+        if (target == null) batch.remove();
+        else batch.set(target);
+        return previous;
+    }
+
+    /**
+     * @param name repository name
+     * @return true if the repository has changes that were not written yet
+     */
+    public static synchronized boolean isDirty(String name) {
+        return dirty.containsKey(name);
+    }
+
+    /**
+     * Writes every dirty repository now. A repository whose save fails is marked dirty again
+     * (unless a newer mark already replaced it), so the next tick or {@link #shutdown()} retries it.
+     */
+    public static void flush() {
+        Map<String, Saver> savers;
+        synchronized (PersistenceScheduler.class) {
+            if (dirty.isEmpty()) return;
+            savers = new LinkedHashMap<>(dirty);
+            dirty.clear();
+            pendingMutations = 0;
+        }
+        for (Map.Entry<String, Saver> e : savers.entrySet()) {
+            try {
+                e.getValue().save();
+            } catch (IOException | RuntimeException ex) {
+                System.err.println("Background save of " + e.getKey() + " failed: " + ex.getMessage());
+                synchronized (PersistenceScheduler.class) {
+                    dirty.putIfAbsent(e.getKey(), e.getValue());
+                }
+            }
+        }
+    }
+}
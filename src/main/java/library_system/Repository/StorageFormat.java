@@ -0,0 +1,120 @@
+package library_system.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * On-disk snapshot formats supported by the repositories.
+ * <p>
+ * {@link #JSON} is the human-readable format kept for debugging; {@link #SMILE} is Jackson's
+ * binary JSON encoding, which is smaller and faster to parse while keeping the exact same
+ * document structure. Both formats share the repositories' record layout, so switching is a
+ * matter of picking the mapper and the file extension.
+ * </p>
+ */
+public enum StorageFormat {
+
+    /** Pretty-printed JSON text ({@code .json}). */
+    JSON(".json"),
+
+    /** Binary Smile encoding ({@code .smile}). */
+    SMILE(".smile");
+
+    private final String extension;
+
+    StorageFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return file extension including the leading dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * @return the shared mapper that reads and writes this format
+     */
+    public ObjectMapper mapper() {
+        return this == SMILE ? MapperProvider.SMILE_MAPPER : MapperProvider.MAPPER;
+    }
+
+    /**
+     * Returns the file holding a repository's data in this format, derived from its
+     * JSON file name (e.g. {@code books.json} becomes {@code books.smile}).
+     *
+     * @param jsonFile the repository's JSON file
+     * @return file for this format in the same directory
+     */
+    public File resolve(File jsonFile) {
+        String name = jsonFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return new File(jsonFile.getParentFile(), base + extension);
+    }
+
+    /**
+     * Converts a snapshot file from one format to another. The document is copied as-is,
+     * so the converted file loads into exactly the same objects.
+     *
+     * @param source     file to read
+     * @param sourceFmt  format of {@code source}
+     * @param target     file to write (replaced atomically)
+     * @param targetFmt  format of {@code target}
+     * @throws IOException if reading or writing fails
+     */
+    public static void convert(File source, StorageFormat sourceFmt, File target, StorageFormat targetFmt) throws IOException {
+        JsonNode root = (!source.exists() || source.length() == 0)
+                ? sourceFmt.mapper().createArrayNode()
+                : sourceFmt.mapper().readTree(source);
+        FileUtil.writeAtomic(target, root, targetFmt.mapper());
+    }
+
+    /**
+     * Prepares a repository for a format switch: the file of the current format is converted
+     * unless the file for the new format is strictly newer. A target left over from an earlier
+     * switch is therefore refreshed with everything saved since, while a live file in the new
+     * format is not overwritten by a stale one in the old format.
+     *
+     * @param jsonFile the repository's JSON file
+     * @param from     current format
+     * @param to       new format
+     */
+    static void migrate(File jsonFile, StorageFormat from, StorageFormat to) {
+        if (from == to) return;
+        File source = from.resolve(jsonFile);
+        File target = to.resolve(jsonFile);
+        if (!source.exists() || (target.exists() && target.lastModified() > source.lastModified())) return;
+        try {
+            convert(source, from, target, to);
+        } catch (IOException e) {
+            System.err.println("Error converting " + source.getName() + " to " + target.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Command-line converter: {@code StorageFormat <source> <target>}; formats are taken from
+     * the file extensions, e.g. {@code books.json books.smile} or {@code loans.smile loans.json}.
+     *
+     * @param args source and target paths
+     * @throws IOException if conversion fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: StorageFormat <source.(json|smile)> <target.(json|smile)>");
+            return;
+        }
+        File source = new File(args[0]);
+        File target = new File(args[1]);
+        convert(source, forFile(source), target, forFile(target));
+        System.out.println("Converted " + source + " -> " + target);
+    }
+
+    private static StorageFormat forFile(File file) {
+        return file.getName().endsWith(SMILE.extension) ? SMILE : JSON;
+    }
+}
@@ -0,0 +1,197 @@
+package library_system.repository;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Copy-on-write list that reports every element added or removed to a {@link Listener}.
+ * <p>
+ * The repositories hand out their live lists (callers, tests included, add and clear them
+ * directly), so secondary indexes cannot rely on the repository's own mutators being used.
+ * Wrapping the list keeps those indexes in sync whichever way the list is changed.
+ * Reads and iteration behave exactly like {@link CopyOnWriteArrayList}: they see a stable
+ * snapshot and never lock.
+ * </p>
+ *
+ * @param <T> element type
+ */
+public class TrackedList<T> extends AbstractList<T> implements RandomAccess {
+
+    /**
+     * Receives changes of a {@link TrackedList}. Called while the list's write lock is held,
+     * so notifications arrive in the same order as the changes.
+     *
+     * @param <T> element type
+     */
+    public interface Listener<T> {
+        /** @param element element that was added */
+        void added(T element);
+
+        /** @param element element that was removed */
+        void removed(T element);
+
+        /** Called after the list was cleared. */
+        void cleared();
+
+        /**
+         * Combines several listeners into one that notifies them in order.
+         *
+         * @param listeners listeners to notify
+         * @param <T>       element type
+         * @return combined listener
+         */
+        static <T> Listener<T> all(List<? extends Listener<T>> listeners) {
+            return new Listener<>() {
+                @Override
+                public void added(T element) {
+                    for (Listener<T> l : listeners) l.added(element);
+                }
+
+                @Override
+                public void removed(T element) {
+                    for (Listener<T> l : listeners) l.removed(element);
+                }
+
+                @Override
+                public void cleared() {
+                    for (Listener<T> l : listeners) l.cleared();
+                }
+            };
+        }
+    }
+
+    private final CopyOnWriteArrayList<T> delegate = new CopyOnWriteArrayList<>();
+    private final Listener<T> listener;
+
+    /**
+     * @param listener receiver of changes
+     */
+    public TrackedList(Listener<T> listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public T get(int index) {
+        return delegate.get(index);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public synchronized boolean add(T element) {
+        delegate.add(element);
+        listener.added(element);
+        return true;
+    }
+
+    @Override
+    public synchronized void add(int index, T element) {
+        delegate.add(index, element);
+        listener.added(element);
+    }
+
+    @Override
+    public synchronized boolean addAll(Collection<? extends T> elements) {
+        // one copy of the backing array for the whole batch
+        if (!delegate.addAll(elements)) return false;
+        for (T element : elements) listener.added(element);
+        return true;
+    }
+
+    @Override
+    public synchronized T set(int index, T element) {
+        T previous = delegate.set(index, element);
+        listener.removed(previous);
+        listener.added(element);
+        return previous;
+    }
+
+    @Override
+    public synchronized T remove(int index) {
+        T removed = delegate.remove(index);
+        listener.removed(removed);
+        return removed;
+    }
+
+    @Override
+    public synchronized boolean remove(Object element) {
+        int index = delegate.indexOf(element);
+        if (index < 0) return false;
+        remove(index);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        boolean changed = false;
+        for (T element : delegate) {
+            if (filter.test(element)) {
+                delegate.remove(element);
+                listener.removed(element);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public synchronized boolean removeAll(Collection<?> elements) {
+        return removeIf(elements::contains);
+    }
+
+    @Override
+    public synchronized boolean retainAll(Collection<?> elements) {
+        return removeIf(e -> !elements.contains(e));
+    }
+
+    @Override
+    public synchronized void clear() {
+        delegate.clear();
+        listener.cleared();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return delegate.iterator();
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public Stream<T> stream() {
+        return delegate.stream();
+    }
+
+    @Override
+    public boolean contains(Object element) {
+        return delegate.contains(element);
+    }
+
+    @Override
+    public int indexOf(Object element) {
+        return delegate.indexOf(element);
+    }
+
+    @Override
+    public Object[] toArray() {
+        return delegate.toArray();
+    }
+
+    @Override
+    public <E> E[] toArray(E[] array) {
+        return delegate.toArray(array);
+    }
+}
@@ -0,0 +1,296 @@
+package library_system.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import library_system.domain.Book;
+import library_system.domain.CD;
+import library_system.domain.Media;
+import library_system.domain.User;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Commits the changes of one operation across the book, CD, loan and user repositories as a
+ * single journaled record.
+ * <p>
+ * Without it, a return writes the catalog, the loans and the users as independent saves, and a
+ * crash between them leaves the files disagreeing (stock released but loan still open, fine on
+ * the loan but not on the user). Once {@link #enable()} is called, {@link #run(Supplier)} stages
+ * everything the operation changes: stock of the items passed to {@link #stage(Media)}, loan
+ * events and updated users. When the operation ends, one record holding the after-image of every
+ * change is appended to {@code commits.journal} and forced to disk; that append is the commit
+ * point. The repository files are then written (synchronously, also with write-behind enabled)
+ * and forced to disk, renames included, before a {@code done} marker is appended. The journal is
+ * truncated whenever no commit is in flight, so a record is only dropped once every file it
+ * covers is durable.
+ * </p>
+ * <p>
+ * {@link #enable()} first recovers: every record without its {@code done} marker is re-applied
+ * to the loaded repositories and the files are rewritten, so an application that loads its
+ * repositories and then enables the unit of work starts from a consistent state. Re-applying a
+ * record is harmless because it holds absolute values (quantities, user state) and idempotent
+ * loan events. While disabled, {@link #run(Supplier)} only batches saves like
+ * {@link PersistenceScheduler#batch(Supplier)}.
+ * </p>
+ */
+public final class UnitOfWork {
+
+    private static final String JOURNAL_NAME = "commits.journal";
+
+    private static final ObjectMapper mapper = MapperProvider.MAPPER;
+
+    /** Commit journal, or null while disabled. */
+    private static volatile LoanJournal journal = null;
+
+    /** Sequence number of the last commit record. */
+    private static long lastTxn = 0;
+
+    /** Commits whose record is durable but whose files may not be written yet. */
+    private static int inFlight = 0;
+
+    /** Unit of work running on this thread, if any. */
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    private final List<Media> items = new ArrayList<>();
+    private final Set<Media> itemSet = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, User> users = new LinkedHashMap<>();
+    private final List<ObjectNode> loanRecords = new ArrayList<>();
+    private final Map<String, PersistenceScheduler.Saver> saves = new LinkedHashMap<>();
+
+    private UnitOfWork() {}
+
+    /**
+     * Recovers unfinished commits and starts journaling units of work.
+     * Call after the repositories have been loaded.
+     */
+    public static synchronized void enable() {
+        if (journal != null) return;
+        try {
+            LoanJournal opened = new LoanJournal(FileUtil.getDataFile(JOURNAL_NAME), mapper, 1);
+            recover(opened);
+            journal = opened;
+        } catch (IOException e) {
+            System.err.println("Error opening commits.journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops journaling; later units of work only batch their saves.
+     */
+    public static synchronized void disable() {
+        if (journal == null) return;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing commits.journal: " + e.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * @return true if units of work are committed through the journal
+     */
+    public static boolean isEnabled() {
+        return journal != null;
+    }
+
+    /**
+     * Runs an operation as one unit of work. Nested calls join the outermost one. If the
+     * operation fails, what it already changed is still committed, since memory has changed.
+     *
+     * @param work operation to run
+     * @param <T>  result type
+     * @return the operation's result
+     */
+    public static <T> T run(Supplier<T> work) {
+        if (current.get() != null) return work.get();
+        if (journal == null) return PersistenceScheduler.batch(work);
+
+        UnitOfWork uow = new UnitOfWork();
+        current.set(uow);
+        Map<String, PersistenceScheduler.Saver> outer = PersistenceScheduler.deferInto(uow.saves);
+        try {
+            return work.get();
+        } finally {
+            PersistenceScheduler.deferInto(outer);
+            current.remove();
+            uow.commit();
+        }
+    }
+
+    /**
+     * Stages the stock of an item changed by the running unit of work (no-op outside one).
+     *
+     * @param item repository-held book or CD
+     */
+    public static void stage(Media item) {
+        UnitOfWork uow = current.get();
+        if (uow != null && (item instanceof Book || item instanceof CD) && uow.itemSet.add(item)) {
+            uow.items.add(item);
+        }
+    }
+
+    /**
+     * Stages a changed user instead of persisting it right away.
+     *
+     * @param user changed user
+     * @return true if a unit of work took the change
+     */
+    static boolean stage(User user) {
+        UnitOfWork uow = current.get();
+        if (uow == null || user == null || user.getUsername() == null) return false;
+        uow.users.put(user.getUsername().toLowerCase(Locale.ROOT), user);
+        return true;
+    }
+
+    /**
+     * Stages a loan journal record instead of persisting it right away.
+     *
+     * @param record loan event
+     * @return true if a unit of work took the record
+     */
+    static boolean stage(ObjectNode record) {
+        UnitOfWork uow = current.get();
+        if (uow == null) return false;
+        uow.loanRecords.add(record);
+        return true;
+    }
+
+    private void commit() {
+        if (items.isEmpty() && users.isEmpty() && loanRecords.isEmpty()) {
+            for (Map.Entry<String, PersistenceScheduler.Saver> e : saves.entrySet()) PersistenceScheduler.markDirty(e.getKey(), e.getValue());
+            return;
+        }
+        long txn = -1;
+        synchronized (UnitOfWork.class) {
+            if (journal != null) {
+                try {
+                    journal.append(toRecord(lastTxn + 1));
+                    txn = ++lastTxn;
+                    inFlight++;
+                } catch (IOException e) {
+                    System.err.println("Error appending to commits.journal: " + e.getMessage());
+                }
+            }
+        }
+        writeFiles();
+        if (txn >= 0) finish(txn);
+    }
+
+    private ObjectNode toRecord(long txn) {
+        ObjectNode record = mapper.createObjectNode();
+        record.put("txn", txn);
+        ArrayNode itemArr = record.putArray("items");
+        for (Media m : items) {
+            ObjectNode ref = LoanRepository.itemRef(m);
+            ref.put("quantity", m.getQuantity());
+            itemArr.add(ref);
+        }
+        ArrayNode userArr = record.putArray("users");
+        for (User u : users.values()) userArr.add((JsonNode) mapper.valueToTree(u));
+        ArrayNode loanArr = record.putArray("loans");
+        for (ObjectNode r : loanRecords) loanArr.add(r);
+        return record;
+    }
+
+    private void writeFiles() {
+        LoanRepository.persistCommitted(loanRecords);
+        UserRepository.persistCommitted(users.values());
+        for (PersistenceScheduler.Saver saver : saves.values()) {
+            try {
+                saver.save();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Save after commit failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private static synchronized void finish(long txn) {
+        if (journal == null) return;
+        try {
+            if (--inFlight == 0) {
+                journal.truncate();
+            } else {
+                ObjectNode done = mapper.createObjectNode();
+                done.put("done", txn);
+                journal.append(done);
+            }
+        } catch (IOException e) {
+            System.err.println("Error finishing commit " + txn + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Re-applies every commit record that has no {@code done} marker, rewrites all repository
+     * files and empties the journal.
+     */
+    private static void recover(LoanJournal log) throws IOException {
+        List<JsonNode> records = new ArrayList<>();
+        Set<Long> done = new HashSet<>();
+        log.replay(node -> {
+            if (node.has("done")) done.add(node.get("done").asLong());
+            else if (node.has("txn")) records.add(node);
+        });
+        int redone = 0;
+        for (JsonNode record : records) {
+            if (done.contains(record.get("txn").asLong())) continue;
+            apply(record);
+            redone++;
+        }
+        if (redone > 0) {
+            System.out.println("Recovered " + redone + " unfinished commit(s) from commits.journal.");
+            BookRepository.saveToFile();
+            CDRepository.saveToFile();
+            UserRepository.saveToFile();
+            LoanRepository.saveToFile();
+        }
+        log.truncate();
+        lastTxn = 0;
+        inFlight = 0;
+    }
+
+    private static void apply(JsonNode record) throws IOException {
+        for (JsonNode ref : record.path("items")) {
+            Media item = findItem(ref);
+            if (item == null) {
+                System.err.println("Recovery: item no longer in catalog: " + ref.path("title").asText());
+                continue;
+            }
+            item.setQuantity(ref.path("quantity").asInt(item.getQuantity()));
+        }
+        for (JsonNode node : record.path("users")) {
+            User existing = UserRepository.findUser(node.path("username").asText(null));
+            if (existing != null) {
+                mapper.readerForUpdating(existing).readValue(node);
+                UserRepository.updateUser(existing);
+            } else {
+                UserRepository.addUser(mapper.treeToValue(node, User.class));
+            }
+        }
+        for (JsonNode loanRecord : record.path("loans")) LoanRepository.applyCommitted(loanRecord);
+    }
+
+    private static Media findItem(JsonNode ref) {
+        String type = ref.path("mediaType").asText("");
+        String title = ref.hasNonNull("title") ? ref.get("title").asText() : null;
+        if ("BOOK".equals(type)) {
+            return ref.hasNonNull("isbn")
+                    ? BookRepository.findByIsbnExact(ref.get("isbn").asText())
+                    : BookRepository.findByTitleAndAuthor(title, ref.path("author").asText(null));
+        }
+        if ("CD".equals(type)) return CDRepository.findByTitleAndArtist(title, ref.path("artist").asText(null));
+        return null;
+    }
+}
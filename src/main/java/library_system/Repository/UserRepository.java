@@ -2,49 +2,141 @@ package library_system.repository;
 
 import library_system.domain.User;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
 
 /**
  * Repository responsible for persisting User objects to JSON.
  * <p>
- * Uses the shared {@link MapperProvider#MAPPER} and {@link FileUtil} helpers
+ * Uses the shared {@link MapperProvider} mappers (via {@link StorageFormat}) and {@link FileUtil} helpers
  * to read and write {@code src/main/resources/users.json}. Methods return
- * defensive copies where appropriate.
+ * defensive copies where appropriate. The user list is copy-on-write, so lookups
+ * never block and are safe while another thread registers or removes a user.
+ * </p>
+ * <p>
+ * {@link #findUser(String)} and {@link #findUserByEmail(String)} are hash lookups on the
+ * lowercased username and sanitized, lowercased email ({@link KeyIndex}). The list reports every
+ * change to both indexes ({@link TrackedList}), including direct changes through
+ * {@link #getUsers()}; {@link #updateUser(User)} re-indexes a user whose email changed.
+ * </p>
+ * <p>
+ * By default every change rewrites the whole user file. With {@link #enableRecordStore()}, users
+ * are kept in a log-structured {@link UserStore} instead ({@code users.log}): adding, updating
+ * or removing a user appends that user's record alone, and the log is compacted once most of
+ * it is superseded.
  * </p>
  */
 public class UserRepository {
 
-    private static final ObjectMapper mapper = MapperProvider.MAPPER;
     private static final String FILE_NAME = "users.json";
     private static final File FILE = FileUtil.getDataFile(FILE_NAME);
 
-    private static List<User> users = new ArrayList<>();
+    private static final KeyIndex<User> byUsername = new KeyIndex<>(UserRepository::usernameKey);
+    private static final KeyIndex<User> byEmail = new KeyIndex<>(UserRepository::emailKey);
+
+    private static final List<User> users = new TrackedList<>(TrackedList.Listener.all(
+            List.<TrackedList.Listener<User>>of(byUsername, byEmail)));
+
+    /** Snapshot format; the file name follows it (users.json / users.smile). */
+    private static StorageFormat format = StorageFormat.JSON;
+
+    private static final String STORE_NAME = "users.log";
+
+    /** Per-user record log, or null when every change rewrites the snapshot. */
+    private static volatile UserStore store = null;
 
     /**
      * Loads users from disk. Creates an empty file if missing.
      */
-    public static void loadFromFile() {
+    public static synchronized void loadFromFile() {
         try {
-            List<User> loaded = FileUtil.readList(FILE, new TypeReference<List<User>>() {}, mapper);
+            List<User> loaded = store != null
+                    ? store.load()
+                    : FileUtil.readList(format.resolve(FILE), new TypeReference<List<User>>() {}, format.mapper());
             users.clear();
             if (loaded != null) {
                 for (User u : loaded) {
                     if (u.getEmail() != null) {
                         u.setEmail(sanitizeEmail(u.getEmail()));
                     }
-                    users.add(u);
                 }
+                users.addAll(loaded);
             }
         } catch (Exception e) {
-            users = new ArrayList<>();
+            users.clear();
             System.err.println("Error loading users.json: " + e.getMessage());
         }
     }
 
+    /**
+     * Switches to record-store mode. An existing {@code users.log} becomes the source of the
+     * in-memory users; otherwise the log is seeded with the current users.
+     */
+    public static synchronized void enableRecordStore() {
+        if (store != null) return;
+        try {
+            UserStore opened = new UserStore(FileUtil.getDataFile(STORE_NAME), MapperProvider.MAPPER);
+            store = opened;
+            if (opened.getFile().length() > 0) {
+                loadFromFile();
+            } else {
+                opened.rewrite(users);
+            }
+        } catch (IOException e) {
+            System.err.println("Error opening users.log: " + e.getMessage());
+            store = null;
+        }
+    }
+
+    /**
+     * Leaves record-store mode: the users are written back to the snapshot and the log is removed.
+     */
+    public static synchronized void disableRecordStore() {
+        UserStore current = store;
+        if (current == null) return;
+        store = null;
+        saveToFile();
+        try {
+            current.close();
+            Files.deleteIfExists(current.getFile().toPath());
+        } catch (IOException e) {
+            System.err.println("Error closing users.log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true if users are stored one record at a time in {@code users.log}
+     */
+    public static boolean isRecordStoreEnabled() {
+        return store != null;
+    }
+
+    /**
+     * Selects the snapshot format used by {@link #loadFromFile()} and {@link #saveToFile()}.
+     * Existing data is converted when the file for the new format does not exist yet.
+     *
+     * @param newFormat JSON (default, human readable) or SMILE (binary)
+     */
+    public static synchronized void setStorageFormat(StorageFormat newFormat) {
+        if (newFormat == null) return;
+        StorageFormat.migrate(FILE, format, newFormat);
+        format = newFormat;
+    }
+
+    /**
+     * @return the snapshot format currently used for users
+     */
+    public static synchronized StorageFormat getStorageFormat() {
+        return format;
+    }
+
     /** Returns internal user list (used by tests). */
     public static List<User> getUsers() {
         return users;
@@ -53,18 +145,31 @@ public class UserRepository {
     /**
      * Saves users to disk atomically.
      */
-    public static void saveToFile() {
+    public static synchronized void saveToFile() {
         try {
-            // sanitize emails before saving
-            for (User u : users) {
-                if (u.getEmail() != null) {
-                    u.setEmail(sanitizeEmail(u.getEmail()));
-                }
-            }
-            FileUtil.writeAtomic(FILE, users, mapper);
+            writeFile();
         } catch (Exception e) {
-            System.err.println("Failed to save users.json: " + e.getMessage());
+            System.err.println("Failed to save " + (store != null ? "users.log" : "users.json") + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Same as {@link #saveToFile()} but reports failure to the caller.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    static synchronized void writeFile() throws IOException {
+        if (store != null) {
+            store.rewrite(users);
+            return;
+        }
+        // sanitize emails before saving
+        for (User u : users) {
+            if (u.getEmail() != null) {
+                u.setEmail(sanitizeEmail(u.getEmail()));
+            }
         }
+        FileUtil.writeAtomic(format.resolve(FILE), users, format.mapper());
     }
 
     /**
@@ -72,12 +177,12 @@ public class UserRepository {
      *
      * @param user user to add
      */
-    public static void addUser(User user) {
+    public static synchronized void addUser(User user) {
         if (user.getEmail() != null) {
             user.setEmail(sanitizeEmail(user.getEmail()));
         }
         users.add(user);
-        saveToFile();
+        persist(user);
     }
 
     /**
@@ -88,10 +193,7 @@ public class UserRepository {
      */
     public static User findUser(String username) {
         if (username == null) return null;
-        return users.stream()
-                .filter(u -> u.getUsername().equalsIgnoreCase(username))
-                .findFirst()
-                .orElse(null);
+        return byUsername.first(username.toLowerCase(Locale.ROOT));
     }
 
     /**
@@ -102,11 +204,7 @@ public class UserRepository {
      */
     public static User findUserByEmail(String email) {
         if (email == null) return null;
-        String s = sanitizeEmail(email);
-        return users.stream()
-                .filter(u -> u.getEmail() != null && u.getEmail().equalsIgnoreCase(s))
-                .findFirst()
-                .orElse(null);
+        return byEmail.first(sanitizeEmail(email).toLowerCase(Locale.ROOT));
     }
 
     /**
@@ -115,11 +213,11 @@ public class UserRepository {
      * @param username username to remove
      * @return true if removed
      */
-    public static boolean removeUser(String username) {
+    public static synchronized boolean removeUser(String username) {
         User u = findUser(username);
         if (u != null) {
             users.remove(u);
-            saveToFile();
+            persistRemoval(u);
             return true;
         }
         return false;
@@ -130,17 +228,16 @@ public class UserRepository {
      *
      * @param user user to delete
      */
-    public static void deleteUser(User user) {
-        users.remove(user);
-        saveToFile();
+    public static synchronized void deleteUser(User user) {
+        if (users.remove(user)) persistRemoval(user);
     }
 
     /**
      * Clears all users (for testing) and persists the empty state.
      */
-    public static void clear() {
+    public static synchronized void clear() {
         users.clear();
-        saveToFile();
+        markDirty();
     }
 
     /**
@@ -150,18 +247,117 @@ public class UserRepository {
         return new ArrayList<>(users);
     }
 
+    /**
+     * One page of {@link #getAllUsers()}, read from the current snapshot without copying it.
+     *
+     * @param offset number of leading users to skip
+     * @param limit  maximum number of users to return
+     * @return the page, in registration order
+     */
+    public static Page<User> getAllUsers(int offset, int limit) {
+        return Page.of(users.iterator(), offset, limit);
+    }
+
+    /**
+     * @return a stream over the current snapshot of users (no copy is made)
+     */
+    public static Stream<User> streamUsers() {
+        return users.stream();
+    }
+
     /**
      * Persist changes to an existing user (e.g., fine payment).
      *
      * @param user the user that was modified
      */
-    public static void updateUser(User user) {
+    public static synchronized void updateUser(User user) {
         // Ensure parameter is used to avoid unused-parameter warnings
         if (user == null) return;
         if (user.getEmail() != null) user.setEmail(sanitizeEmail(user.getEmail()));
+        synchronized (users) {
+            byUsername.refresh(user);
+            byEmail.refresh(user);
+        }
         // In-memory user objects are the same instances returned by the repo,
         // so just saving is sufficient to persist the change.
-        saveToFile();
+        persist(user);
+    }
+
+    /**
+     * Persists one added or changed user: its record alone in record-store mode, otherwise
+     * a save of the whole file.
+     */
+    private static void persist(User user) {
+        if (UnitOfWork.stage(user)) return;
+        UserStore current = store;
+        if (current == null) {
+            markDirty();
+            return;
+        }
+        try {
+            current.put(user);
+            compactIfNeeded(current);
+        } catch (IOException e) {
+            System.err.println("Error appending to users.log: " + e.getMessage());
+            saveToFile();
+        }
+    }
+
+    /**
+     * Persists the users changed by a committed {@link UnitOfWork}: their records alone in
+     * record-store mode, otherwise one save of the whole file.
+     *
+     * @param changed users staged by the unit of work
+     */
+    static synchronized void persistCommitted(Collection<User> changed) {
+        if (changed.isEmpty()) return;
+        UserStore current = store;
+        if (current == null) {
+            saveToFile();
+            return;
+        }
+        try {
+            for (User u : changed) current.put(u);
+            compactIfNeeded(current);
+        } catch (IOException e) {
+            System.err.println("Error appending to users.log: " + e.getMessage());
+            saveToFile();
+        }
+    }
+
+    private static void persistRemoval(User user) {
+        UserStore current = store;
+        if (current == null) {
+            markDirty();
+            return;
+        }
+        try {
+            current.delete(user.getUsername());
+            compactIfNeeded(current);
+        } catch (IOException e) {
+            System.err.println("Error appending to users.log: " + e.getMessage());
+            saveToFile();
+        }
+    }
+
+    private static void compactIfNeeded(UserStore current) throws IOException {
+        current.setLiveCount(users.size());
+        if (current.needsCompaction()) current.rewrite(users);
+    }
+
+    /**
+     * Schedules a save of the user file (immediate unless write-behind persistence is enabled).
+     */
+    public static void markDirty() {
+        PersistenceScheduler.markDirty("users", UserRepository::writeFile);
+    }
+
+    private static String usernameKey(User u) {
+        return u.getUsername() == null ? null : u.getUsername().toLowerCase(Locale.ROOT);
+    }
+
+    private static String emailKey(User u) {
+        return u.getEmail() == null ? null : sanitizeEmail(u.getEmail()).toLowerCase(Locale.ROOT);
     }
 
     private static String sanitizeEmail(String email) {
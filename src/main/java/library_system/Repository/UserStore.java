@@ -0,0 +1,244 @@
+package library_system.repository;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import library_system.domain.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Log-structured store holding one record per user.
+ * <p>
+ * Every change is appended as one compact JSON line: {@code {"key":..,"user":{..}}} for an
+ * insert or update, {@code {"key":..,"deleted":true}} for a removal. The key is the lowercased
+ * username and the last line for a key wins, so updating one user's fine balance writes that
+ * user alone instead of the whole user file. Each append is forced to disk before it returns.
+ * </p>
+ * <p>
+ * Superseded lines are garbage. Once they outnumber the live records (and at least
+ * {@value #MIN_GARBAGE} of them exist), {@link #needsCompaction()} reports it and the owner
+ * calls {@link #rewrite(Collection)}, which writes one line per live user to a temporary file
+ * and atomically replaces the log. A torn trailing line (crash mid-append) is cut off on load,
+ * so the next append starts on a fresh line.
+ * </p>
+ */
+public class UserStore {
+
+    /** Garbage lines tolerated before compaction is suggested. */
+    static final int MIN_GARBAGE = 64;
+
+    private final File file;
+    private final ObjectMapper mapper;
+    private FileChannel channel;
+
+    /** Lines currently in the log. */
+    private int records = 0;
+
+    /** Users currently live in the log. */
+    private int live = 0;
+
+    /**
+     * Opens (or creates) a store.
+     *
+     * @param file   log file
+     * @param mapper mapper used to encode records
+     * @throws IOException if the file cannot be opened
+     */
+    public UserStore(File file, ObjectMapper mapper) throws IOException {
+        this.file = file;
+        this.mapper = mapper;
+        open();
+    }
+
+    private void open() throws IOException {
+        FileUtil.ensureDataDirExists();
+        channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Reads the current users: the last record of every key that is not deleted, in the order
+     * the keys were first written.
+     *
+     * @return live users
+     * @throws IOException if the file cannot be read or truncated
+     */
+    public synchronized List<User> load() throws IOException {
+        Map<String, User> current = new LinkedHashMap<>();
+        int[] lines = {0};
+        long intact;
+        try {
+            intact = FileUtil.forEachCompleteLine(file, line -> {
+                if (line.isBlank()) return true;
+                JsonNode node;
+                try {
+                    node = mapper.readTree(line);
+                } catch (IOException torn) {
+                    System.err.println("Ignoring incomplete user record: " + torn.getMessage());
+                    return false;
+                }
+                lines[0]++;
+                String key = node.path("key").asText(null);
+                if (key == null) return true;
+                if (node.path("deleted").asBoolean(false)) {
+                    current.remove(key);
+                } else if (node.has("user")) {
+                    try {
+                        current.put(key, mapper.treeToValue(node.get("user"), User.class));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return true;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (channel.size() > intact) {
+            channel.truncate(intact);
+            channel.force(true);
+        }
+        records = lines[0];
+        live = current.size();
+        return new ArrayList<>(current.values());
+    }
+
+    /**
+     * Writes the current state of one user (insert or update).
+     *
+     * @param user user to store
+     * @throws IOException if writing fails
+     */
+    public synchronized void put(User user) throws IOException {
+        if (user == null || user.getUsername() == null) return;
+        ObjectNode record = mapper.createObjectNode();
+        record.put("key", key(user.getUsername()));
+        record.set("user", mapper.valueToTree(user));
+        append(record);
+    }
+
+    /**
+     * Records the removal of a user.
+     *
+     * @param username user to remove
+     * @throws IOException if writing fails
+     */
+    public synchronized void delete(String username) throws IOException {
+        if (username == null) return;
+        ObjectNode record = mapper.createObjectNode();
+        record.put("key", key(username));
+        record.put("deleted", true);
+        append(record);
+    }
+
+    private void append(ObjectNode record) throws IOException {
+        byte[] json = mapper.writeValueAsBytes(record);
+        ByteBuffer buf = ByteBuffer.allocate(json.length + 1);
+        buf.put(json).put((byte) '\n').flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        channel.force(false);
+        records++;
+    }
+
+    /**
+     * Tells the store how many users are live, so it can judge how much of the log is garbage.
+     *
+     * @param liveUsers number of users the owner currently holds
+     */
+    public synchronized void setLiveCount(int liveUsers) {
+        live = liveUsers;
+    }
+
+    /**
+     * @return true once superseded records outnumber the live ones
+     */
+    public synchronized boolean needsCompaction() {
+        int garbage = records - live;
+        return garbage >= MIN_GARBAGE && garbage > live;
+    }
+
+    /**
+     * Replaces the log with one record per given user.
+     *
+     * @param users the live users
+     * @throws IOException if the new log cannot be written
+     */
+    public synchronized void rewrite(Collection<User> users) throws IOException {
+        Path target = file.getAbsoluteFile().toPath();
+        Path tmp = Files.createTempFile(target.getParent(), file.getName(), ".tmp");
+        try {
+            int written = 0;
+            try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (User u : users) {
+                    if (u.getUsername() == null) continue;
+                    ObjectNode record = mapper.createObjectNode();
+                    record.put("key", key(u.getUsername()));
+                    record.set("user", mapper.valueToTree(u));
+                    out.write(mapper.writeValueAsString(record));
+                    out.write('\n');
+                    written++;
+                }
+            }
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                ch.force(true);
+            }
+            channel.close();
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            FileUtil.forceDirectory(target.getParent());
+            records = written;
+            live = written;
+        } finally {
+            Files.deleteIfExists(tmp);
+            if (!channel.isOpen()) open();
+        }
+    }
+
+    /**
+     * @return number of lines in the log, live or superseded
+     */
+    public synchronized int size() {
+        return records;
+    }
+
+    /**
+     * @return the log file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Closes the underlying channel.
+     *
+     * @throws IOException if closing fails
+     */
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+}
@@ -10,25 +10,41 @@ public class Book extends Media {
     private String author;
     private String isbn;
 
+    /** Cached normalized forms used by repository matching (not persisted). */
+    private String normalizedAuthor;
+    private String normalizedIsbn;
+
     public Book() { super(); }
 
     public Book(String title, String author, String isbn) {
         super(title);
-        this.author = author;
-        this.isbn = isbn;
+        setAuthor(author);
+        setIsbn(isbn);
     }
 
     public Book(String title, String author, String isbn, int quantity) {
         super(title);
-        this.author = author;
-        this.isbn = isbn;
+        setAuthor(author);
+        setIsbn(isbn);
         super.setQuantity(quantity);
     }
     public String getAuthor() { return author; }
-    public void setAuthor(String author) { this.author = author; }
+    public void setAuthor(String author) {
+        this.author = author;
+        this.normalizedAuthor = TextNormalizer.normalize(author);
+    }
 
     public String getIsbn() { return isbn; }
-    public void setIsbn(String isbn) { this.isbn = isbn; }
+    public void setIsbn(String isbn) {
+        this.isbn = isbn;
+        this.normalizedIsbn = TextNormalizer.normalize(isbn);
+    }
+
+    @JsonIgnore
+    public String getNormalizedAuthor() { return normalizedAuthor; }
+
+    @JsonIgnore
+    public String getNormalizedIsbn() { return normalizedIsbn; }
 
     @JsonProperty("quantity")
     public int getQuantity() {
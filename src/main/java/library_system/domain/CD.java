@@ -7,6 +7,9 @@ public class CD extends Media {
 
     private String artist;
 
+    /** Cached normalized artist used by repository matching (not persisted). */
+    private String normalizedArtist;
+
     public CD() {
         super();
         this.borrowDuration = 7;  // CDs are loaned for 7 days
@@ -14,12 +17,18 @@ public class CD extends Media {
 
     public CD(String title, String artist) {
         super(title);
-        this.artist = artist;
+        setArtist(artist);
         this.borrowDuration = 7;
     }
 
     public String getArtist() { return artist; }
-    public void setArtist(String artist) { this.artist = artist; }
+    public void setArtist(String artist) {
+        this.artist = artist;
+        this.normalizedArtist = TextNormalizer.normalize(artist);
+    }
+
+    @JsonIgnore
+    public String getNormalizedArtist() { return normalizedArtist; }
 
     @JsonProperty("quantity")
     public int getQuantity() { return super.getQuantity(); }
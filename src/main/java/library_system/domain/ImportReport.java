@@ -0,0 +1,91 @@
+package library_system.domain;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Outcome of a bulk catalog import: how many rows were added and why the others were rejected.
+ */
+public class ImportReport {
+
+    /**
+     * A rejected input row.
+     */
+    public static class Reject {
+
+        /** Row number in the source (CSV line, or 1-based position in a JSON array). */
+        private final int row;
+
+        /** Why the row was not imported. */
+        private final String reason;
+
+        /**
+         * @param row    row number in the source
+         * @param reason why the row was rejected
+         */
+        public Reject(int row, String reason) {
+            this.row = row;
+            this.reason = reason;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "row " + row + ": " + reason;
+        }
+    }
+
+    /** Number of items added to the catalog. */
+    private int imported;
+
+    /** Rejected rows, in the order they were detected. */
+    private final List<Reject> rejects = new ArrayList<>();
+
+    /**
+     * Records a rejected row.
+     *
+     * @param row    row number in the source
+     * @param reason why the row was rejected
+     */
+    public void reject(int row, String reason) {
+        rejects.add(new Reject(row, reason));
+    }
+
+    /**
+     * @param imported number of items added to the catalog
+     */
+    public void setImported(int imported) {
+        this.imported = imported;
+    }
+
+    public int getImported() {
+        return imported;
+    }
+
+    /**
+     * @return rejected rows ordered by row number (read-only)
+     */
+    public List<Reject> getRejects() {
+        List<Reject> sorted = new ArrayList<>(rejects);
+        sorted.sort(Comparator.comparingInt(Reject::getRow));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    public int getRejectedCount() {
+        return rejects.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Imported " + imported + ", rejected " + rejects.size();
+    }
+}
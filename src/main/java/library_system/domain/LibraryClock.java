@@ -0,0 +1,61 @@
+package library_system.domain;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * The library's notion of "today".
+ * <p>
+ * Loans, services and reports read the date here instead of calling {@link LocalDate#now()}
+ * directly. An operation reads {@link #today()} once and passes that date down to every loan it
+ * evaluates, so one sweep sees a single day even if it runs across midnight. Tests and
+ * benchmarks can pin the date with {@link #fixAt(LocalDate)} or install any {@link Clock}.
+ * </p>
+ */
+public final class LibraryClock {
+
+    private static volatile Clock clock = Clock.systemDefaultZone();
+
+    private LibraryClock() {}
+
+    /**
+     * @return the current date of the installed clock
+     */
+    public static LocalDate today() {
+        return LocalDate.now(clock);
+    }
+
+    /**
+     * @return the installed clock
+     */
+    public static Clock getClock() {
+        return clock;
+    }
+
+    /**
+     * Installs a clock.
+     *
+     * @param newClock clock to use (null restores the system clock)
+     */
+    public static void setClock(Clock newClock) {
+        clock = newClock != null ? newClock : Clock.systemDefaultZone();
+    }
+
+    /**
+     * Pins "today" to a fixed date.
+     *
+     * @param day date {@link #today()} will return
+     */
+    public static void fixAt(LocalDate day) {
+        ZoneId zone = ZoneId.systemDefault();
+        setClock(Clock.fixed(day.atStartOfDay(zone).toInstant(), zone));
+    }
+
+    /**
+     * Restores the system clock.
+     */
+    public static void reset() {
+        setClock(null);
+    }
+}
@@ -12,10 +12,18 @@ import java.time.temporal.ChronoUnit;
  * This class stores the borrowing user, the borrowed media item, borrowed/due dates,
  * and the returned flag. It provides helpers to compute overdue days and fines.
  * </p>
+ * <p>
+ * "Today" comes from {@link LibraryClock}. Overdue days and the fine are memoized for the last
+ * day they were asked for, so a sweep that asks for both (or asks again later the same day)
+ * computes them once; the memo is dropped when the due date, return state or item changes.
+ * </p>
  */
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Loan {
 
+    /** Repository-assigned identifier; 0 until the loan is stored by {@code LoanRepository}. */
+    private long id;
+
     /** The user who borrowed the item. */
     private User user;
 
@@ -42,6 +50,28 @@ public class Loan {
     /** Fine amount recorded for this loan (e.g., set on return when a fine is charged). In NIS. */
     private int fineAmount = 0;
 
+    /** Overdue days and fine of one day, valid while the inputs they were computed from are unchanged. */
+    private static final class DayMemo {
+        final long day;
+        final LocalDate due;
+        final boolean returned;
+        final Media item;
+        final int overdueDays;
+        final int fine;
+
+        DayMemo(long day, LocalDate due, boolean returned, Media item, int overdueDays, int fine) {
+            this.day = day;
+            this.due = due;
+            this.returned = returned;
+            this.item = item;
+            this.overdueDays = overdueDays;
+            this.fine = fine;
+        }
+    }
+
+    /** Last computed day (not persisted). */
+    private transient volatile DayMemo memo;
+
     /** Default constructor for JSON deserialization. */
     public Loan() {}
 
@@ -54,7 +84,7 @@ public class Loan {
     public Loan(User user, Media item) {
         this.user = user;
         this.item = item;
-        this.borrowedDate = LocalDate.now();
+        this.borrowedDate = LibraryClock.today();
         // Due date is borrowedDate + borrowDuration days. The item becomes overdue
         // when current date is after the due date (i.e., on day borrowDuration+1).
         this.dueDate = borrowedDate.plusDays(item != null ? item.getBorrowDuration() : 0);
@@ -63,6 +93,24 @@ public class Loan {
         this.returned = false;
     }
 
+    /**
+     * Returns the repository-assigned loan id.
+     *
+     * @return loan id, or 0 if the loan was never stored
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Sets the loan id (used by the repository and deserialization).
+     *
+     * @param id loan id
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
     /**
      * Returns the borrowing user.
      *
@@ -141,7 +189,9 @@ public class Loan {
     }
 
     /**
-     * Sets the due date (mainly for testing/JSON).
+     * Sets the due date while the loan is built or read from JSON. A loan already held by
+     * {@code LoanRepository} must be changed through {@code LoanRepository.updateDueDate},
+     * which keeps its due-date indexes and fine totals in step.
      *
      * @param date new due date
      */
@@ -191,7 +241,17 @@ public class Loan {
      * @return true if overdue and not returned
      */
     public boolean isOverdue() {
-        return !returned && dueDate != null && LocalDate.now().isAfter(dueDate);
+        return isOverdue(LibraryClock.today());
+    }
+
+    /**
+     * Determines whether the loan is overdue as of the given date.
+     *
+     * @param asOf reference date ("today")
+     * @return true if overdue and not returned
+     */
+    public boolean isOverdue(LocalDate asOf) {
+        return !returned && dueDate != null && asOf.isAfter(dueDate);
     }
 
     /**
@@ -200,8 +260,17 @@ public class Loan {
      * @return number of overdue days, or 0 if not overdue
      */
     public int getOverdueDays() {
-        if (!isOverdue() || dueDate == null) return 0;
-        return (int) ChronoUnit.DAYS.between(dueDate, LocalDate.now());
+        return getOverdueDays(LibraryClock.today());
+    }
+
+    /**
+     * Calculates the number of overdue days as of the given date.
+     *
+     * @param asOf reference date ("today")
+     * @return number of overdue days, or 0 if not overdue
+     */
+    public int getOverdueDays(LocalDate asOf) {
+        return memoFor(asOf).overdueDays;
     }
 
     /**
@@ -210,9 +279,32 @@ public class Loan {
      * @return fine amount in NIS
      */
     public int calculateFine() {
-        if (item == null) return 0;
-        FineStrategy strategy = item.getFineStrategy();
-        if (strategy == null) return 0;
-        return strategy.calculateFine(getOverdueDays());
+        return calculateFine(LibraryClock.today());
+    }
+
+    /**
+     * Calculates the fine based on the media type and the days overdue as of the given date.
+     *
+     * @param asOf reference date ("today")
+     * @return fine amount in NIS
+     */
+    public int calculateFine(LocalDate asOf) {
+        return memoFor(asOf).fine;
+    }
+
+    /**
+     * Returns the memo for the given day, recomputing it if the day or any input changed.
+     */
+    private DayMemo memoFor(LocalDate asOf) {
+        long day = asOf.toEpochDay();
+        DayMemo m = memo;
+        if (m != null && m.day == day && m.due == dueDate && m.returned == returned && m.item == item) return m;
+
+        int days = isOverdue(asOf) ? (int) ChronoUnit.DAYS.between(dueDate, asOf) : 0;
+        FineStrategy strategy = item == null ? null : item.getFineStrategy();
+        int fine = strategy == null ? 0 : strategy.calculateFine(days);
+        m = new DayMemo(day, dueDate, returned, item, days, fine);
+        memo = m;
+        return m;
     }
 }
@@ -2,6 +2,8 @@ package library_system.domain;
 
 import com.fasterxml.jackson.annotation.*;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Base class for media items stored in the library (Book, CD).
  */
@@ -19,22 +21,27 @@ public abstract class Media {
     protected String id;
     protected String title;
 
+    /** Cached {@link TextNormalizer#normalize} form of the title. */
+    private String normalizedTitle;
+
     /** Number of days the item may be borrowed. */
     @JsonProperty("borrowDuration")
     protected int borrowDuration;
 
-    /** Available quantity for this media item. */
-    @JsonProperty("quantity")
-    protected int quantity = 1;
+    /**
+     * Available quantity for this media item, persisted as "quantity" through the accessors.
+     * Borrows and returns go through {@link #tryReserve()} and {@link #release()} so concurrent
+     * updates are never lost.
+     */
+    private final AtomicInteger available = new AtomicInteger(1);
 
     protected Media() {
         this.id = java.util.UUID.randomUUID().toString();
-        this.quantity = 1;
     }
 
     protected Media(String title) {
         this();
-        this.title = title;
+        setTitle(title);
     }
 
     /**
@@ -47,7 +54,16 @@ public abstract class Media {
 
     public String getTitle() { return title; }
 
-    public void setTitle(String title) { this.title = title; }
+    public void setTitle(String title) {
+        this.title = title;
+        this.normalizedTitle = TextNormalizer.normalize(title);
+    }
+
+    /**
+     * @return title folded and trimmed for matching (see {@link TextNormalizer}), or null
+     */
+    @JsonIgnore
+    public String getNormalizedTitle() { return normalizedTitle; }
 
     public int getBorrowDuration() {
         return borrowDuration;
@@ -58,11 +74,34 @@ public abstract class Media {
     }
 
     public int getQuantity() {
-        return quantity;
+        return available.get();
     }
 
     public void setQuantity(int quantity) {
-        this.quantity = Math.max(0, quantity);
+        available.set(Math.max(0, quantity));
+    }
+
+    /**
+     * Takes one copy out of stock if any is left (compare-and-set, no lock).
+     *
+     * @return true if a copy was reserved, false if the item is out of stock
+     */
+    public boolean tryReserve() {
+        int current;
+        do {
+            current = available.get();
+            if (current <= 0) return false;
+        } while (!available.compareAndSet(current, current - 1));
+        return true;
+    }
+
+    /**
+     * Puts one copy back in stock (e.g. on return).
+     *
+     * @return the quantity after the release
+     */
+    public int release() {
+        return available.incrementAndGet();
     }
 
     @JsonProperty("mediaType")
@@ -80,6 +119,7 @@ public abstract class Media {
 
     @Override
     public String toString() {
+        int quantity = getQuantity();
         String avail = (quantity > 0) ? ("Available (Qty: " + quantity + ")") : "Not Available (Qty: 0)";
         return title + " - " + avail + " | Borrow days: " + borrowDuration;
     }
@@ -0,0 +1,66 @@
+package library_system.domain;
+
+import java.util.List;
+
+/**
+ * A user's unpaid fines on a given day: loans that are overdue and not returned (their fine still
+ * grows every day) plus returned loans whose recorded fine is unpaid.
+ */
+public class OutstandingFines {
+
+    private final List<Loan> loans;
+    private final int overdueBooks;
+    private final int overdueCDs;
+    private final int recordedFines;
+    private final int accruingFines;
+    private final int dailyRate;
+
+    /**
+     * @param loans         loans with an outstanding fine
+     * @param overdueBooks  books among them
+     * @param overdueCDs    CDs among them
+     * @param recordedFines unpaid fines recorded on returned loans
+     * @param accruingFines fines of overdue loans that are still out
+     * @param dailyRate     amount the accruing fines grow by each day
+     */
+    public OutstandingFines(List<Loan> loans, int overdueBooks, int overdueCDs,
+                            int recordedFines, int accruingFines, int dailyRate) {
+        this.loans = loans;
+        this.overdueBooks = overdueBooks;
+        this.overdueCDs = overdueCDs;
+        this.recordedFines = recordedFines;
+        this.accruingFines = accruingFines;
+        this.dailyRate = dailyRate;
+    }
+
+    public List<Loan> getLoans() {
+        return loans;
+    }
+
+    public int getOverdueBooks() {
+        return overdueBooks;
+    }
+
+    public int getOverdueCDs() {
+        return overdueCDs;
+    }
+
+    public int getRecordedFines() {
+        return recordedFines;
+    }
+
+    public int getAccruingFines() {
+        return accruingFines;
+    }
+
+    public int getDailyRate() {
+        return dailyRate;
+    }
+
+    /**
+     * @return recorded plus accruing fines
+     */
+    public int getTotalFine() {
+        return recordedFines + accruingFines;
+    }
+}
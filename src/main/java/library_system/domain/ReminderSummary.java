@@ -0,0 +1,76 @@
+package library_system.domain;
+
+/**
+ * Outcome of an overdue reminder run: who had overdue items, who was reached and how the
+ * individual deliveries went.
+ */
+public class ReminderSummary {
+
+    /** Status code: no users in the system. */
+    public static final int NO_USERS = 0;
+
+    /** Status code: users exist but nobody was reminded. */
+    public static final int NOTHING_SENT = 1;
+
+    /** Status code: at least one reminder was delivered. */
+    public static final int SENT = 2;
+
+    private final int usersWithOverdue;
+    private final int usersNotified;
+    private final int deliveries;
+    private final int failedDeliveries;
+    private final int retries;
+    private final boolean noUsers;
+
+    /**
+     * @param noUsers          true if the system has no users at all
+     * @param usersWithOverdue users holding at least one overdue loan
+     * @param usersNotified    users reached by at least one observer
+     * @param deliveries       successful observer deliveries
+     * @param failedDeliveries deliveries that failed after all retries
+     * @param retries          extra attempts made
+     */
+    public ReminderSummary(boolean noUsers, int usersWithOverdue, int usersNotified,
+                           int deliveries, int failedDeliveries, int retries) {
+        this.noUsers = noUsers;
+        this.usersWithOverdue = usersWithOverdue;
+        this.usersNotified = usersNotified;
+        this.deliveries = deliveries;
+        this.failedDeliveries = failedDeliveries;
+        this.retries = retries;
+    }
+
+    public int getUsersWithOverdue() {
+        return usersWithOverdue;
+    }
+
+    public int getUsersNotified() {
+        return usersNotified;
+    }
+
+    public int getDeliveries() {
+        return deliveries;
+    }
+
+    public int getFailedDeliveries() {
+        return failedDeliveries;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return the legacy status code ({@link #NO_USERS}, {@link #NOTHING_SENT} or {@link #SENT})
+     */
+    public int getStatusCode() {
+        if (noUsers) return NO_USERS;
+        return usersNotified > 0 ? SENT : NOTHING_SENT;
+    }
+
+    @Override
+    public String toString() {
+        return "Reminded " + usersNotified + " of " + usersWithOverdue + " users with overdue items ("
+                + deliveries + " delivered, " + failedDeliveries + " failed, " + retries + " retries)";
+    }
+}
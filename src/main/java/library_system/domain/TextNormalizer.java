@@ -0,0 +1,43 @@
+package library_system.domain;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Normalization used for catalog matching (titles, authors, artists, ISBNs).
+ * <p>
+ * Text is Unicode-folded with NFKC (compatibility forms such as full-width letters or ligatures
+ * become their plain equivalents) and lowercased with {@link Locale#ROOT}, so matching does not
+ * depend on the default locale. Media items cache the normalized form of their fields, so the
+ * stored side of a comparison is computed once per value instead of once per query.
+ * </p>
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer() {}
+
+    /**
+     * Folds text for case-insensitive comparison without trimming (used for substring queries).
+     *
+     * @param text text to fold
+     * @return NFKC-normalized, lowercased text, or null for null
+     */
+    public static String fold(String text) {
+        if (text == null) return null;
+        String nfkc = Normalizer.isNormalized(text, Normalizer.Form.NFKC)
+                ? text
+                : Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return nfkc.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Normalizes a key for exact matching: folded and trimmed.
+     *
+     * @param text text to normalize
+     * @return normalized key, or null for null
+     */
+    public static String normalize(String text) {
+        String folded = fold(text);
+        return folded == null ? null : folded.trim();
+    }
+}
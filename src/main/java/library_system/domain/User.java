@@ -110,7 +110,7 @@ public class User {
      *
      * @return fine balance (NIS)
      */
-    public double getFineBalance() {
+    public synchronized double getFineBalance() {
         return fineBalance;
     }
 
@@ -119,7 +119,7 @@ public class User {
      *
      * @param amount total fine amount
      */
-    public void setFineBalance(double amount) {
+    public synchronized void setFineBalance(double amount) {
         this.fineBalance = amount;
     }
 
@@ -128,7 +128,7 @@ public class User {
      *
      * @param amount fine amount to add (must be > 0)
      */
-    public void addFine(double amount) {
+    public synchronized void addFine(double amount) {
         if (amount <= 0) return;
         fineBalance += amount;
     }
@@ -139,7 +139,7 @@ public class User {
      * @param amount amount to pay (must be > 0 and <= current balance)
      * @return true if payment successful, false otherwise
      */
-    public boolean payFine(double amount) {
+    public synchronized boolean payFine(double amount) {
         if (amount <= 0) return false;
         if (fineBalance <= 0) return false;
         if (amount > fineBalance) return false;
@@ -11,7 +11,13 @@ import java.util.regex.Pattern;
  *
  * Credentials are read from environment variables via System.getenv(). This class
  * handles missing credentials and SMTP/authentication errors and prints clear
- * status messages without throwing exceptions to the caller.
+ * status messages without throwing exceptions to the caller of {@link #notify(User, String)}.
+ * {@link #deliver(User, String)} sends the same message but throws on failure instead.
+ * <p>
+ * By default each message goes through {@link Transport#send(Message)}, which opens and closes its
+ * own connection. {@link #enablePooledTransport(int)} switches to a {@link SmtpTransportPool} that
+ * keeps a few authenticated connections open and reuses them across messages.
+ * </p>
  */
 public class EmailNotifier implements Observer {
 
@@ -19,6 +25,9 @@ public class EmailNotifier implements Observer {
     private final String senderPassword;
     private final Session session;
     private final boolean configured;
+
+    /** Connection pool, or null when every message opens its own connection. */
+    private volatile SmtpTransportPool pool;
     private static final Pattern SIMPLE_EMAIL_REGEX = Pattern.compile("^[A-Za-z0-9+_.-]+@(.+)$");
 
     /**
@@ -95,20 +104,72 @@ public class EmailNotifier implements Observer {
         }
 
         try {
-            Message message = new MimeMessage(session);
-            message.setFrom(new InternetAddress(senderEmail));
-            message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(recipient));
-            message.setSubject("Library Notification");
-            message.setText(messageBody == null ? "" : messageBody);
-
-            Transport.send(message);
-            System.out.println("Email sent successfully to: " + recipient);
-
+            send(recipient, messageBody);
         } catch (Exception e) {
             System.out.println("Error sending email: " + e.getMessage());
         }
     }
 
+    /**
+     * Sends the message like {@link #notify(User, String)} but throws when it cannot be sent,
+     * so the reminder dispatcher retries it and counts it as failed.
+     *
+     * @throws IllegalStateException    if the notifier is not configured
+     * @throws IllegalArgumentException if the user has no valid email address
+     * @throws MessagingException       if the SMTP send fails
+     */
+    @Override
+    public void deliver(User user, String messageBody) throws MessagingException {
+        if (!configured) {
+            throw new IllegalStateException("Email notifier not configured.");
+        }
+        String recipient = user == null || user.getEmail() == null ? "" : user.getEmail().trim();
+        if (!SIMPLE_EMAIL_REGEX.matcher(recipient).matches()) {
+            throw new IllegalArgumentException("Invalid email address: " + recipient);
+        }
+        send(recipient, messageBody);
+    }
+
+    private void send(String recipient, String messageBody) throws MessagingException {
+        Message message = new MimeMessage(session);
+        message.setFrom(new InternetAddress(senderEmail));
+        message.setRecipients(Message.RecipientType.TO, InternetAddress.parse(recipient));
+        message.setSubject("Library Notification");
+        message.setText(messageBody == null ? "" : messageBody);
+
+        SmtpTransportPool current = pool;
+        if (current != null) current.send(message);
+        else Transport.send(message);
+        System.out.println("Email sent successfully to: " + recipient);
+    }
+
+    /**
+     * Reuses up to {@code maxConnections} SMTP connections across messages instead of
+     * connecting once per message. Does nothing when the notifier is not configured.
+     *
+     * @param maxConnections connections kept open at most
+     */
+    public synchronized void enablePooledTransport(int maxConnections) {
+        if (!configured || pool != null) return;
+        pool = new SmtpTransportPool(session, senderEmail, senderPassword, maxConnections, 30_000);
+    }
+
+    /**
+     * Closes the pooled connections and returns to one connection per message.
+     */
+    public synchronized void disablePooledTransport() {
+        if (pool == null) return;
+        pool.close();
+        pool = null;
+    }
+
+    /**
+     * @return the connection pool, or null when pooling is off
+     */
+    public SmtpTransportPool getTransportPool() {
+        return pool;
+    }
+
     public boolean isValidEmail(String email) {
         return SIMPLE_EMAIL_REGEX.matcher(email).matches();
     }
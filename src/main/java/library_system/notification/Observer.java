@@ -15,4 +15,17 @@ public interface Observer {
      * @param message message content
      */
     void notify(User user, String message);
+
+    /**
+     * Sends a notification and reports failure by throwing, so callers that retry
+     * (such as {@link ReminderDispatcher}) can tell a failed send from a delivered one.
+     * The default simply calls {@link #notify(User, String)}.
+     *
+     * @param user    user receiving the message
+     * @param message message content
+     * @throws Exception if the message could not be sent
+     */
+    default void deliver(User user, String message) throws Exception {
+        notify(user, message);
+    }
 }
@@ -0,0 +1,273 @@
+package library_system.notification;
+
+import library_system.domain.User;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Delivers notifications to observers on a pool of worker threads.
+ * <p>
+ * {@link #submit(Observer, User, String)} hands a message to the dispatcher and returns at once,
+ * unless {@code queueCapacity} deliveries are already waiting: then it blocks until one finishes,
+ * so a large run never buffers more than that many messages. Each observer has its own queue and
+ * may run at most {@code perObserverLimit} deliveries at the same time (e.g. to stay under an
+ * SMTP server's connection limit). A worker never waits for an observer's slot: deliveries past
+ * the limit stay in the observer's queue until one of its running deliveries ends, while the
+ * workers serve other observers. Workers take one delivery at a time and go to the back of the
+ * line afterwards, so busy observers take turns.
+ * </p>
+ * <p>
+ * A delivery that throws is retried up to {@code maxAttempts} times in total, waiting
+ * {@code initialBackoffMillis} before the first retry and twice as long before each following
+ * one; the wait runs on a timer, not on a worker, and the retry rejoins the observer's queue.
+ * {@link #finish()} waits for every submitted delivery and reports the counts.
+ * </p>
+ */
+public class ReminderDispatcher {
+
+    /**
+     * Counts of a finished dispatch.
+     */
+    public static final class Result {
+        private final int delivered;
+        private final int failed;
+        private final int retries;
+
+        Result(int delivered, int failed, int retries) {
+            this.delivered = delivered;
+            this.failed = failed;
+            this.retries = retries;
+        }
+
+        /** @return deliveries that succeeded (possibly after retries) */
+        public int getDelivered() { return delivered; }
+
+        /** @return deliveries that still failed after the last attempt */
+        public int getFailed() { return failed; }
+
+        /** @return extra attempts made across all deliveries */
+        public int getRetries() { return retries; }
+    }
+
+    /**
+     * Receives the outcome of each delivery (called on a worker thread).
+     */
+    @FunctionalInterface
+    public interface Callback {
+        /**
+         * @param user      recipient
+         * @param delivered true if the observer accepted the message
+         */
+        void done(User user, boolean delivered);
+    }
+
+    /** One submitted message and its retry state. */
+    private static final class Delivery {
+        final Observer observer;
+        final User user;
+        final String message;
+        final Callback callback;
+        int attempt = 1;
+        long backoff;
+
+        Delivery(Observer observer, User user, String message, Callback callback, long backoff) {
+            this.observer = observer;
+            this.user = user;
+            this.message = message;
+            this.callback = callback;
+            this.backoff = backoff;
+        }
+    }
+
+    /** Deliveries waiting for one observer and how many of its deliveries are running. */
+    private static final class Lane {
+        final Deque<Delivery> waiting = new ArrayDeque<>();
+        int running;
+    }
+
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retryTimer;
+    private final Semaphore queueSlots;
+    private final int perObserverLimit;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+
+    /** Guarded by {@code this}. */
+    private final Map<Observer, Lane> lanes = new IdentityHashMap<>();
+
+    /** Submitted deliveries without a final outcome yet; guarded by {@code this}. */
+    private int outstanding = 0;
+
+    private final AtomicInteger delivered = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger retries = new AtomicInteger();
+
+    /**
+     * Creates a dispatcher and starts its workers.
+     *
+     * @param workers              number of worker threads
+     * @param queueCapacity        deliveries that may wait for a worker before submit blocks
+     * @param perObserverLimit     concurrent deliveries allowed per observer
+     * @param maxAttempts          attempts per delivery, including the first
+     * @param initialBackoffMillis wait before the first retry; doubled for each further retry
+     */
+    public ReminderDispatcher(int workers, int queueCapacity, int perObserverLimit,
+                              int maxAttempts, long initialBackoffMillis) {
+        int threads = Math.max(1, workers);
+        AtomicInteger ids = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "reminder-dispatch-" + ids.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "reminder-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        this.queueSlots = new Semaphore(Math.max(1, queueCapacity) + threads);
+        this.perObserverLimit = Math.max(1, perObserverLimit);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+    }
+
+    /**
+     * Queues one delivery, blocking while the queue is full.
+     *
+     * @param observer channel to deliver through
+     * @param user     recipient
+     * @param message  message text
+     * @param callback outcome receiver (may be null)
+     */
+    public void submit(Observer observer, User user, String message, Callback callback) {
+        queueSlots.acquireUninterruptibly();
+        synchronized (this) {
+            outstanding++;
+        }
+        enqueue(new Delivery(observer, user, message, callback, initialBackoffMillis));
+    }
+
+    /**
+     * Queues one delivery without an outcome callback.
+     *
+     * @param observer channel to deliver through
+     * @param user     recipient
+     * @param message  message text
+     */
+    public void submit(Observer observer, User user, String message) {
+        submit(observer, user, message, null);
+    }
+
+    /** Adds a delivery to its observer's queue and starts a worker if the observer has a free slot. */
+    private void enqueue(Delivery d) {
+        Lane lane;
+        synchronized (this) {
+            lane = lanes.computeIfAbsent(d.observer, o -> new Lane());
+            lane.waiting.addLast(d);
+            if (lane.running >= perObserverLimit) return;
+            lane.running++;
+        }
+        schedule(lane);
+    }
+
+    private void schedule(Lane lane) {
+        try {
+            workers.execute(() -> runNext(lane));
+        } catch (RuntimeException e) {
+            // workers stopped (finish() was interrupted): drop what is left of this lane
+            synchronized (this) {
+                lane.running--;
+                while (!lane.waiting.isEmpty()) complete(lane.waiting.pollFirst(), false);
+            }
+        }
+    }
+
+    /** Runs one waiting delivery of the lane, then keeps the slot for the next one or frees it. */
+    private void runNext(Lane lane) {
+        Delivery d;
+        synchronized (this) {
+            d = lane.waiting.pollFirst();
+            if (d == null) {
+                lane.running--;
+                return;
+            }
+        }
+        attempt(d);
+        synchronized (this) {
+            if (lane.waiting.isEmpty()) {
+                lane.running--;
+                return;
+            }
+        }
+        schedule(lane);
+    }
+
+    private void attempt(Delivery d) {
+        try {
+            d.observer.deliver(d.user, d.message);
+        } catch (Exception ex) {
+            if (d.attempt >= maxAttempts) {
+                System.err.println("Failed to notify user " + d.user.getUsername() + ": " + ex.getMessage());
+                complete(d, false);
+                return;
+            }
+            retries.incrementAndGet();
+            long wait = d.backoff;
+            d.attempt++;
+            d.backoff *= 2;
+            try {
+                retryTimer.schedule(() -> enqueue(d), wait, TimeUnit.MILLISECONDS);
+            } catch (RuntimeException stopped) {
+                complete(d, false);
+            }
+            return;
+        }
+        complete(d, true);
+    }
+
+    private void complete(Delivery d, boolean ok) {
+        try {
+            (ok ? delivered : failed).incrementAndGet();
+            if (d.callback != null) d.callback.done(d.user, ok);
+        } finally {
+            queueSlots.release();
+            synchronized (this) {
+                if (--outstanding == 0) notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Waits for every submitted delivery, stops the workers and reports the counts.
+     * The dispatcher cannot be used afterwards.
+     *
+     * @return counts of this dispatch
+     */
+    public Result finish() {
+        try {
+            synchronized (this) {
+                // deliveries bound their own retries
+                while (outstanding > 0) wait();
+            }
+            workers.shutdown();
+            retryTimer.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+            retryTimer.shutdownNow();
+        }
+        return new Result(delivered.get(), failed.get(), retries.get());
+    }
+}
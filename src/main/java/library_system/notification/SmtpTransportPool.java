@@ -0,0 +1,239 @@
+package library_system.notification;
+
+import jakarta.mail.Address;
+import jakarta.mail.Message;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Small pool of connected SMTP transports shared by the messages of one notifier.
+ * <p>
+ * {@link Transport#send(Message)} opens a connection, runs STARTTLS and authentication, sends one
+ * message and disconnects. The pool keeps up to {@code maxConnections} transports connected and
+ * reuses them, so a batch of reminders pays the handshake once per connection instead of once per
+ * message. A transport that sat idle longer than {@code idleCheckMillis} is health-checked with
+ * {@link Transport#isConnected()} (a NOOP on SMTP) before reuse. If a reused connection turns
+ * out to be lost while sending, it is dropped and the message is sent once more on a fresh one.
+ * A message the server refused over a live connection ({@link SendFailedException}), or
+ * delivered to some recipients only, is not retried. A connection that failed in any way is
+ * closed rather than returned to the pool.
+ * </p>
+ * <p>
+ * When all connections are busy, callers wait for one to be returned.
+ * </p>
+ */
+public class SmtpTransportPool implements AutoCloseable {
+
+    /** A borrowed transport and whether it was already used for an earlier message. */
+    private static final class Lease {
+        final Transport transport;
+        final boolean reused;
+
+        Lease(Transport transport, boolean reused) {
+            this.transport = transport;
+            this.reused = reused;
+        }
+    }
+
+    /** An idle transport and when it was returned. */
+    private static final class Idle {
+        final Transport transport;
+        final long since;
+
+        Idle(Transport transport, long since) {
+            this.transport = transport;
+            this.since = since;
+        }
+    }
+
+    private final Session session;
+    private final String username;
+    private final String password;
+    private final int maxConnections;
+    private final long idleCheckMillis;
+
+    private final Deque<Idle> idle = new ArrayDeque<>();
+    private int open = 0;
+    private int connects = 0;
+    private boolean closed = false;
+
+    /**
+     * @param session         mail session providing the SMTP host and properties
+     * @param username        login (null to connect without credentials)
+     * @param password        password
+     * @param maxConnections  connections kept open at most
+     * @param idleCheckMillis idle time after which a connection is checked before reuse
+     */
+    public SmtpTransportPool(Session session, String username, String password,
+                             int maxConnections, long idleCheckMillis) {
+        this.session = session;
+        this.username = username;
+        this.password = password;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.idleCheckMillis = Math.max(0, idleCheckMillis);
+    }
+
+    /**
+     * Sends a message over a pooled connection.
+     *
+     * @param message message to send (its recipients are used)
+     * @throws MessagingException if the message was refused, or cannot be sent even on a fresh connection
+     */
+    public void send(Message message) throws MessagingException {
+        message.saveChanges();
+        Lease lease = borrow();
+        Transport transport = lease.transport;
+        boolean sent = false;
+        try {
+            try {
+                transport.sendMessage(message, message.getAllRecipients());
+            } catch (MessagingException | IllegalStateException first) {
+                if (!lease.reused || !isConnectionLost(transport, first)) throw first;
+                // the server dropped the idle connection: retry once on a new one
+                discard(transport);
+                transport = null;
+                transport = connect();
+                transport.sendMessage(message, message.getAllRecipients());
+            }
+            sent = true;
+        } finally {
+            if (transport != null) {
+                if (sent) release(transport);
+                else discard(transport);
+            }
+        }
+    }
+
+    /**
+     * True if a send failed because the connection itself is gone, as opposed to the server
+     * refusing the message. A connection closed by the server surfaces as an I/O error, as
+     * "not connected", or as a {@link SendFailedException} for the missing reply; the latter only
+     * counts when no recipient was accepted and the transport no longer answers.
+     */
+    private static boolean isConnectionLost(Transport transport, Exception e) {
+        if (e instanceof SendFailedException) {
+            Address[] sent = ((SendFailedException) e).getValidSentAddresses();
+            return (sent == null || sent.length == 0) && !transport.isConnected();
+        }
+        if (e instanceof IllegalStateException) return true;
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IOException) return true;
+        }
+        return false;
+    }
+
+    private Lease borrow() throws MessagingException {
+        while (true) {
+            Idle candidate;
+            synchronized (this) {
+                if (closed) throw new MessagingException("SMTP transport pool is closed");
+                candidate = idle.pollFirst();
+                if (candidate == null) {
+                    if (open < maxConnections) {
+                        open++;
+                        break;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new MessagingException("Interrupted while waiting for an SMTP connection");
+                    }
+                    continue;
+                }
+            }
+            boolean stale = System.currentTimeMillis() - candidate.since >= idleCheckMillis;
+            if (!stale || candidate.transport.isConnected()) return new Lease(candidate.transport, true);
+            discard(candidate.transport);
+        }
+        // a slot was reserved above: open its connection outside the lock
+        try {
+            return new Lease(openTransport(), false);
+        } catch (MessagingException | RuntimeException e) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    /** Opens a new connection for a slot whose previous connection was discarded. */
+    private Transport connect() throws MessagingException {
+        synchronized (this) {
+            open++;
+        }
+        try {
+            return openTransport();
+        } catch (MessagingException | RuntimeException e) {
+            synchronized (this) {
+                open--;
+                notifyAll();
+            }
+            throw e;
+        }
+    }
+
+    private Transport openTransport() throws MessagingException {
+        Transport transport = session.getTransport("smtp");
+        if (username == null) transport.connect();
+        else transport.connect(username, password);
+        synchronized (this) {
+            connects++;
+        }
+        return transport;
+    }
+
+    private synchronized void release(Transport transport) {
+        if (closed) {
+            closeQuietly(transport);
+            open--;
+            return;
+        }
+        idle.addFirst(new Idle(transport, System.currentTimeMillis()));
+        notifyAll();
+    }
+
+    private void discard(Transport transport) {
+        closeQuietly(transport);
+        synchronized (this) {
+            open--;
+            notifyAll();
+        }
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException ignored) {
+            // the connection is being dropped anyway
+        }
+    }
+
+    /**
+     * @return number of connections opened so far (including reconnects)
+     */
+    public synchronized int getConnectCount() {
+        return connects;
+    }
+
+    /**
+     * Closes idle connections; busy ones are closed when their message has been sent.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Idle i : idle) {
+            closeQuietly(i.transport);
+            open--;
+        }
+        idle.clear();
+        notifyAll();
+    }
+}
@@ -66,11 +66,7 @@ public class AdminService {
         if (user.getFineBalance() > 0)
             return "Cannot unregister user: Unpaid fines exist.";
 
-        boolean hasActiveLoans = LoanRepository.getUserLoans(username)
-                .stream()
-                .anyMatch(l -> !l.isReturned());
-
-        if (hasActiveLoans)
+        if (LoanRepository.hasActiveLoans(user))
             return "Cannot unregister user: Active loans exist.";
 
         boolean removed = UserRepository.removeUser(username);
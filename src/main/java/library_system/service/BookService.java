@@ -2,8 +2,19 @@ package library_system.service;
 
 import library_system.repository.BookRepository;
 import library_system.domain.Book;
+import library_system.domain.ImportReport;
+import library_system.domain.TextNormalizer;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 public class BookService {
 
@@ -16,13 +27,105 @@ public class BookService {
             return;
         }
 
-        // Uniqueness checks
-        if (BookRepository.existsByTitle(book.getTitle()) || BookRepository.existsByIsbn(book.getIsbn())) {
+        // Uniqueness checks (hash lookups, atomic with the insert)
+        if (!BookRepository.addBookIfUnique(book)) {
             System.out.println("A book with this title or ISBN already exists.");
+        }
+    }
+
+    /**
+     * Imports books from a supplier feed: a {@code .csv} file, otherwise a JSON array.
+     *
+     * @param file feed to import
+     * @return how many books were added and which rows were rejected
+     * @throws IOException if the file cannot be read or is malformed
+     * @see #importBooksCsv(Reader)
+     * @see #importBooksJson(Reader)
+     */
+    public ImportReport importBooks(File file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return file.getName().toLowerCase(Locale.ROOT).endsWith(".csv") ? importBooksCsv(in) : importBooksJson(in);
+        }
+    }
+
+    /**
+     * Imports books from a JSON array of objects with {@code title}, {@code author}, {@code isbn}
+     * and optional {@code quantity}. The feed is streamed; valid books are added in one batch and
+     * the catalog is saved once.
+     *
+     * @param in JSON source (not closed)
+     * @return import report
+     * @throws IOException if the JSON is malformed
+     */
+    public ImportReport importBooksJson(Reader in) throws IOException {
+        CatalogImport<Book> batch = new CatalogImport<>();
+        Set<String> titles = new HashSet<>();
+        Set<String> isbns = new HashSet<>();
+        batch.readJson(in, (row, fields) -> validate(batch, row, fields, titles, isbns));
+        return batch.finish(BookRepository::addBooks);
+    }
+
+    /**
+     * Imports books from CSV with columns {@code title,author,isbn[,quantity]}. A header row
+     * (any column order) is optional. Otherwise identical to {@link #importBooksJson(Reader)}.
+     *
+     * @param in CSV source (not closed)
+     * @return import report
+     * @throws IOException if reading fails
+     */
+    public ImportReport importBooksCsv(Reader in) throws IOException {
+        CatalogImport<Book> batch = new CatalogImport<>();
+        Set<String> titles = new HashSet<>();
+        Set<String> isbns = new HashSet<>();
+        batch.readCsv(in, List.of("title", "author", "isbn", "quantity"),
+                (row, fields) -> validate(batch, row, fields, titles, isbns));
+        return batch.finish(BookRepository::addBooks);
+    }
+
+    /**
+     * Applies the {@link #addBook(Book)} rules to one import row (required fields, unique title
+     * and ISBN against the catalog and the rows before it) and queues it if valid.
+     */
+    private void validate(CatalogImport<Book> batch, int row, Map<String, String> fields,
+                          Set<String> titles, Set<String> isbns) {
+        String title = fields.get("title");
+        String author = fields.get("author");
+        String isbn = fields.get("isbn");
+        if (CatalogImport.isBlank(title) || CatalogImport.isBlank(author) || CatalogImport.isBlank(isbn)) {
+            batch.reject(row, "title, author and ISBN are required");
+            return;
+        }
+        int quantity = CatalogImport.parseQuantity(fields.get("quantity"));
+        if (quantity < 1) {
+            batch.reject(row, "quantity must be a positive integer");
+            return;
+        }
+        String titleKey = TextNormalizer.normalize(title);
+        String isbnKey = TextNormalizer.normalize(isbn);
+        if (BookRepository.existsByTitle(title) || titles.contains(titleKey)) {
+            batch.reject(row, "duplicate title: " + title.trim());
+            return;
+        }
+        if (BookRepository.existsByIsbn(isbn) || isbns.contains(isbnKey)) {
+            batch.reject(row, "duplicate ISBN: " + isbn.trim());
             return;
         }
+        // keys are claimed only by accepted rows, so a rejected row never blocks a later one
+        titles.add(titleKey);
+        isbns.add(isbnKey);
+        batch.accept(row, new Book(title.trim(), author.trim(), isbn.trim(), quantity));
+    }
 
-        BookRepository.addBook(book);
+    /**
+     * Ranked search for multi-word queries over title and author, best match first.
+     * Unlike {@link #searchByTitle(String)}, words may appear in any order and in either field.
+     *
+     * @param query free-text query
+     * @param limit maximum number of results
+     * @return up to {@code limit} books
+     */
+    public List<Book> searchRanked(String query, int limit) {
+        return BookRepository.searchRanked(query, limit);
     }
 
     public List<Book> searchByTitle(String title) {
@@ -3,13 +3,60 @@ package library_system.service;
 import library_system.repository.BookRepository;
 import library_system.repository.CDRepository;
 import library_system.repository.LoanRepository;
+import library_system.repository.UnitOfWork;
+import library_system.repository.UserRepository;
 import library_system.domain.*;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
  * Service handling borrowing and returning logic for books and CDs.
+ * <p>
+ * Borrowing and returning check existing loans before changing them, so each operation holds
+ * the lock stripe of its item for the whole check-then-act. Operations on different items run
+ * in parallel. Stock itself is taken with {@link Media#tryReserve()}, so the same copy can
+ * never be lent twice.
+ * </p>
+ * <p>
+ * {@link #borrowItems(User, List)} and {@link #returnItems(User, List)} handle several items at
+ * the desk in one step: they lock every involved stripe in stripe order, check all items before
+ * changing any, and write the catalog and loan files once for the whole batch.
+ * </p>
+ * <p>
+ * Every borrow and return runs as a {@link UnitOfWork}, so when the commit journal is enabled
+ * its stock, loan and fine changes reach disk together or are recovered together.
+ * </p>
  */
 public class BorrowService {
 
+    /** Per-item locks shared by every service that changes stock or loans of an item. */
+    static final LockStripes ITEM_LOCKS = new LockStripes(64);
+
+    /**
+     * Lock key of an item: its natural key (books by ISBN, CDs by title and artist), so detached
+     * copies of the same item share the lock of the repository instance.
+     *
+     * @param item media item
+     * @return key for {@link #ITEM_LOCKS}
+     */
+    static Object itemLockKey(Media item) {
+        if (item instanceof Book && ((Book) item).getNormalizedIsbn() != null) {
+            return "BOOK:" + ((Book) item).getNormalizedIsbn();
+        }
+        if (item instanceof CD && item.getNormalizedTitle() != null) {
+            String artist = ((CD) item).getNormalizedArtist();
+            return "CD:" + item.getNormalizedTitle() + '\u001F' + (artist == null ? "" : artist);
+        }
+        return item == null || item.getNormalizedTitle() == null ? "" : item.getNormalizedTitle();
+    }
+
     /**
      * Attempts to borrow a book instance (should be a repository-held instance or equivalent).
      *
@@ -41,57 +88,190 @@ public class BorrowService {
             return false;
         }
 
-        // Locate the repository-held instance (do not create new detached objects)
-        Media repoItem = media;
+        Media repoItem = resolve(media);
+
+        ReentrantLock lock = ITEM_LOCKS.lockFor(itemLockKey(repoItem));
+        lock.lock();
+        try {
+            return borrowLocked(user, repoItem);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Locates the repository-held instance of an item (do not create new detached objects).
+     */
+    private static Media resolve(Media media) {
         if (media instanceof Book) {
             Book wanted = (Book) media;
-            for (Book b : BookRepository.getBooks()) {
-                if (wanted.getIsbn() != null && b.getIsbn() != null && wanted.getIsbn().equalsIgnoreCase(b.getIsbn())) {
-                    repoItem = b;
-                    break;
-                }
-                if (wanted.getTitle() != null && b.getTitle() != null && b.getTitle().equalsIgnoreCase(wanted.getTitle())
-                        && wanted.getAuthor() != null && b.getAuthor() != null && b.getAuthor().equalsIgnoreCase(wanted.getAuthor())) {
-                    repoItem = b;
-                    break;
-                }
-            }
+            Book held = BookRepository.findByIsbnExact(wanted.getIsbn());
+            if (held == null) held = BookRepository.findByTitleAndAuthor(wanted.getTitle(), wanted.getAuthor());
+            if (held != null) return held;
         } else if (media instanceof CD) {
             CD wanted = (CD) media;
-            for (CD c : CDRepository.getAll()) {
-                if (wanted.getTitle() != null && c.getTitle() != null && c.getTitle().equalsIgnoreCase(wanted.getTitle())
-                        && ((wanted.getArtist() == null && c.getArtist() == null) || (wanted.getArtist() != null && c.getArtist() != null && c.getArtist().equalsIgnoreCase(wanted.getArtist())))) {
-                    repoItem = c;
-                    break;
-                }
-            }
+            CD held = CDRepository.findByTitleAndArtist(wanted.getTitle(), wanted.getArtist());
+            if (held != null) return held;
         }
+        return media;
+    }
 
+    /**
+     * Checks and performs a borrow while the item's lock stripe is held.
+     */
+    private boolean borrowLocked(User user, Media repoItem) {
         // Rule: if user already has an active loan for this item -> stop with exact message
         if (LoanRepository.userHasActiveLoanForItem(user, repoItem)) {
             System.out.println("You already borrowed this item and have not returned it yet.");
             return false;
         }
 
-        // Rule: if out of stock -> stop with exact message
-        if (repoItem.getQuantity() <= 0) {
+        // Rule: if out of stock -> stop with exact message (the copy is reserved atomically)
+        if (!repoItem.tryReserve()) {
             System.out.println("This item is out of stock.");
             return false;
         }
 
-        // All checks passed -> perform borrow
-        repoItem.setQuantity(repoItem.getQuantity() - 1);
+        // All checks passed -> perform borrow (stock and loan committed together)
+        UnitOfWork.run(() -> {
+            stockChanged(repoItem);
+            LoanRepository.addLoan(new Loan(user, repoItem));
+            return null;
+        });
 
-        if (repoItem instanceof Book) BookRepository.saveToFile();
-        if (repoItem instanceof CD) CDRepository.saveToFile();
+        System.out.println("Borrow successful! You have borrowed: " + repoItem.getTitle());
+        return true;
+    }
+
+    /**
+     * Borrows several items at once, all or nothing: the user is checked once, every item is
+     * checked and reserved before any loan is created, and if one item cannot be lent none is.
+     *
+     * @param user  the borrowing user
+     * @param items books and/or CDs to borrow
+     * @return true if every item was borrowed
+     */
+    public boolean borrowItems(User user, List<? extends Media> items) {
+        if (user == null || items == null || items.isEmpty() || items.stream().anyMatch(Objects::isNull)) return false;
 
-        Loan loan = new Loan(user, repoItem);
-        LoanRepository.addLoan(loan);
+        if (LoanRepository.hasOverdueLoans(user)) {
+            System.out.println("You cannot borrow: you have overdue items.");
+            return false;
+        }
 
-        System.out.println("Borrow successful! You have borrowed: " + repoItem.getTitle());
+        List<Media> repoItems = new ArrayList<>(items.size());
+        Set<Media> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Media media : items) {
+            Media repoItem = resolve(media);
+            if (!seen.add(repoItem)) {
+                System.out.println("Each item can only be borrowed once: " + repoItem.getTitle());
+                return false;
+            }
+            repoItems.add(repoItem);
+        }
+
+        List<ReentrantLock> locks = lockAll(repoItems);
+        try {
+            for (Media repoItem : repoItems) {
+                if (LoanRepository.userHasActiveLoanForItem(user, repoItem)) {
+                    System.out.println("You already borrowed this item and have not returned it yet: " + repoItem.getTitle());
+                    return false;
+                }
+            }
+            List<Media> reserved = new ArrayList<>(repoItems.size());
+            for (Media repoItem : repoItems) {
+                if (!repoItem.tryReserve()) {
+                    for (Media r : reserved) r.release();
+                    System.out.println("This item is out of stock: " + repoItem.getTitle());
+                    return false;
+                }
+                reserved.add(repoItem);
+            }
+
+            // All checks passed -> create the loans; each file is written once
+            UnitOfWork.run(() -> {
+                for (Media repoItem : repoItems) {
+                    stockChanged(repoItem);
+                    LoanRepository.addLoan(new Loan(user, repoItem));
+                }
+                return null;
+            });
+        } finally {
+            unlockAll(locks);
+        }
+
+        System.out.println("Borrow successful! You have borrowed " + repoItems.size() + " items.");
         return true;
     }
 
+    /**
+     * Returns several items at once, all or nothing: if the user has no active loan for one of
+     * them, nothing is returned. Fines are charged per item and saved with the user once.
+     *
+     * @param user  the user returning
+     * @param items the media being returned
+     * @return true if every item was returned
+     */
+    public boolean returnItems(User user, List<? extends Media> items) {
+        if (user == null || items == null || items.isEmpty() || items.stream().anyMatch(Objects::isNull)) return false;
+
+        List<ReentrantLock> locks = lockAll(items);
+        try {
+            List<Loan> loans = new ArrayList<>(items.size());
+            Set<Loan> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Media item : items) {
+                Loan loan = LoanRepository.findActiveLoan(user, item);
+                if (loan == null || loan.getItem() == null || !seen.add(loan)) {
+                    System.out.println("You have no active loan for this item: " + item.getTitle());
+                    return false;
+                }
+                loans.add(loan);
+            }
+
+            LocalDate today = LibraryClock.today();
+            int totalFine = UnitOfWork.run(() -> {
+                int fines = 0;
+                for (Loan loan : loans) {
+                    Media repoItem = loan.getItem();
+                    repoItem.release();
+                    stockChanged(repoItem);
+
+                    int fine = loan.calculateFine(today);
+                    if (fine > 0) {
+                        LoanRepository.markLoanReturned(loan, fine);
+                        fines += fine;
+                    } else {
+                        LoanRepository.markLoanReturned(loan);
+                    }
+                }
+                if (fines > 0) {
+                    user.addFine(fines);
+                    UserRepository.updateUser(user);
+                }
+                return fines;
+            });
+
+            if (totalFine > 0) System.out.println("Return completed with fine: " + totalFine + " NIS");
+            else System.out.println("Return successful.");
+            return true;
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    /** Locks the stripes of all items in stripe order (deadlock-free across batches). */
+    private static List<ReentrantLock> lockAll(List<? extends Media> items) {
+        List<Object> keys = new ArrayList<>(items.size());
+        for (Media item : items) keys.add(itemLockKey(item));
+        List<ReentrantLock> locks = ITEM_LOCKS.locksFor(keys);
+        for (ReentrantLock lock : locks) lock.lock();
+        return locks;
+    }
+
+    private static void unlockAll(List<ReentrantLock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) locks.get(i).unlock();
+    }
+
     /**
      * Returns a borrowed item for the user.
      *
@@ -102,6 +282,19 @@ public class BorrowService {
     public boolean returnItem(User user, Media item) {
         if (user == null || item == null) return false;
 
+        ReentrantLock lock = ITEM_LOCKS.lockFor(itemLockKey(item));
+        lock.lock();
+        try {
+            return returnLocked(user, item);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Performs a return while the item's lock stripe is held.
+     */
+    private boolean returnLocked(User user, Media item) {
         Loan loan = LoanRepository.findActiveLoan(user, item);
         if (loan == null) {
             System.out.println("You have no active loan for this item.");
@@ -111,25 +304,33 @@ public class BorrowService {
         Media repoItem = loan.getItem();
         if (repoItem == null) return false;
 
-        // Increase quantity
-        repoItem.setQuantity(repoItem.getQuantity() + 1);
-
-        if (repoItem instanceof Book) BookRepository.saveToFile();
-        if (repoItem instanceof CD) CDRepository.saveToFile();
-
-        // Persist loan return via repository which will find and update the active loan
-        int fine = loan.calculateFine();
-        // Use the repository overloaded method to mark returned and record fine atomically
-        if (fine > 0) {
-            LoanRepository.markLoanReturned(loan, fine);
-            user.addFine(fine);
-            library_system.repository.UserRepository.updateUser(user);
-            System.out.println("Return completed with fine: " + fine + " NIS");
-        } else {
-            LoanRepository.markLoanReturned(loan);
-            System.out.println("Return successful.");
-        }
+        // Stock, loan and fine are committed as one unit of work
+        int fine = UnitOfWork.run(() -> {
+            // Increase quantity
+            repoItem.release();
+            stockChanged(repoItem);
 
+            int charged = loan.calculateFine(LibraryClock.today());
+            // Use the repository overloaded method to mark returned and record fine atomically
+            if (charged > 0) {
+                LoanRepository.markLoanReturned(loan, charged);
+                user.addFine(charged);
+                UserRepository.updateUser(user);
+            } else {
+                LoanRepository.markLoanReturned(loan);
+            }
+            return charged;
+        });
+
+        if (fine > 0) System.out.println("Return completed with fine: " + fine + " NIS");
+        else System.out.println("Return successful.");
         return true;
     }
+
+    /** Stages a stock change for the running unit of work and schedules the catalog save. */
+    private static void stockChanged(Media item) {
+        UnitOfWork.stage(item);
+        if (item instanceof Book) BookRepository.markDirty();
+        if (item instanceof CD) CDRepository.markDirty();
+    }
 }
@@ -3,8 +3,19 @@ package library_system.service;
 
 import library_system.repository.CDRepository;
 import library_system.domain.CD;
+import library_system.domain.ImportReport;
+import library_system.domain.TextNormalizer;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Service layer for CD operations.
@@ -26,13 +37,78 @@ public class CDService {
             return;
         }
 
-        // Uniqueness check: title must be unique
-        if (CDRepository.existsByTitle(cd.getTitle())) {
+        // Uniqueness check: title must be unique (hash lookup, atomic with the insert)
+        if (!CDRepository.addCDIfUnique(cd)) {
             System.out.println("A CD with this title already exists.");
-            return;
         }
+    }
+
+    /**
+     * Imports CDs from a supplier feed: a {@code .csv} file, otherwise a JSON array.
+     *
+     * @param file feed to import
+     * @return how many CDs were added and which rows were rejected
+     * @throws IOException if the file cannot be read or is malformed
+     */
+    public ImportReport importCDs(File file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            return file.getName().toLowerCase(Locale.ROOT).endsWith(".csv") ? importCDsCsv(in) : importCDsJson(in);
+        }
+    }
 
-        CDRepository.addCD(cd);
+    /**
+     * Imports CDs from a JSON array of objects with {@code title}, {@code artist} and optional
+     * {@code quantity}. Valid CDs are added in one batch and the catalog is saved once.
+     *
+     * @param in JSON source (not closed)
+     * @return import report
+     * @throws IOException if the JSON is malformed
+     */
+    public ImportReport importCDsJson(Reader in) throws IOException {
+        CatalogImport<CD> batch = new CatalogImport<>();
+        Set<String> titles = new HashSet<>();
+        batch.readJson(in, (row, fields) -> validate(batch, row, fields, titles));
+        return batch.finish(CDRepository::addCDs);
+    }
+
+    /**
+     * Imports CDs from CSV with columns {@code title,artist[,quantity]}; a header row is optional.
+     *
+     * @param in CSV source (not closed)
+     * @return import report
+     * @throws IOException if reading fails
+     */
+    public ImportReport importCDsCsv(Reader in) throws IOException {
+        CatalogImport<CD> batch = new CatalogImport<>();
+        Set<String> titles = new HashSet<>();
+        batch.readCsv(in, List.of("title", "artist", "quantity"), (row, fields) -> validate(batch, row, fields, titles));
+        return batch.finish(CDRepository::addCDs);
+    }
+
+    /**
+     * Applies the {@link #addCD(CD)} rules to one import row and queues it if valid.
+     */
+    private void validate(CatalogImport<CD> batch, int row, Map<String, String> fields, Set<String> titles) {
+        String title = fields.get("title");
+        String artist = fields.get("artist");
+        if (CatalogImport.isBlank(title) || CatalogImport.isBlank(artist)) {
+            batch.reject(row, "title and artist are required");
+            return;
+        }
+        int quantity = CatalogImport.parseQuantity(fields.get("quantity"));
+        if (quantity < 1) {
+            batch.reject(row, "quantity must be a positive integer");
+            return;
+        }
+        String titleKey = TextNormalizer.normalize(title);
+        if (CDRepository.existsByTitle(title) || titles.contains(titleKey)) {
+            batch.reject(row, "duplicate title: " + title.trim());
+            return;
+        }
+        titles.add(titleKey);
+        CD cd = new CD(title.trim(), artist.trim());
+        cd.setQuantity(quantity);
+        batch.accept(row, cd);
     }
 
     /**
@@ -45,6 +121,17 @@ public class CDService {
         return CDRepository.search(keyword);
     }
 
+    /**
+     * Ranked search for multi-word queries over title and artist, best match first.
+     *
+     * @param query free-text query
+     * @param limit maximum number of results
+     * @return up to {@code limit} CDs
+     */
+    public List<CD> searchRanked(String query, int limit) {
+        return CDRepository.searchRanked(query, limit);
+    }
+
     /**
      * Search CDs by title only (does not match artist).
      *
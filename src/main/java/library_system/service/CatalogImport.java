@@ -0,0 +1,134 @@
+package library_system.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import library_system.domain.ImportReport;
+import library_system.domain.Media;
+import library_system.repository.FileUtil;
+import library_system.repository.MapperProvider;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Shared plumbing for bulk catalog imports ({@link BookService#importBooks}, {@link CDService#importCDs}).
+ * <p>
+ * Rows are streamed from a JSON array or a CSV file and handed to the caller as a map of
+ * column name to text. Accepted items are collected in memory and added to the repository in a
+ * single batch at the end, so the catalog file is written once per import instead of once per item.
+ * </p>
+ *
+ * @param <T> imported media type
+ */
+class CatalogImport<T extends Media> {
+
+    /**
+     * Receives one input row.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+        /**
+         * @param row    row number in the source
+         * @param fields column name (lowercase) to value; missing columns are absent or null
+         */
+        void handle(int row, Map<String, String> fields);
+    }
+
+    private final ImportReport report = new ImportReport();
+    private final List<T> batch = new ArrayList<>();
+    private final Map<T, Integer> rowOf = new IdentityHashMap<>();
+
+    /**
+     * Streams a JSON array of objects. Elements that are not objects are rejected.
+     */
+    void readJson(Reader in, RowHandler handler) throws IOException {
+        int[] row = {0};
+        FileUtil.forEachElement(in, MapperProvider.MAPPER, element -> {
+            row[0]++;
+            if (!element.isObject()) {
+                reject(row[0], "not a JSON object");
+                return;
+            }
+            Map<String, String> fields = new HashMap<>();
+            for (Iterator<Map.Entry<String, JsonNode>> it = element.fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> e = it.next();
+                fields.put(e.getKey().toLowerCase(Locale.ROOT), e.getValue().isNull() ? null : e.getValue().asText());
+            }
+            handler.handle(row[0], fields);
+        });
+    }
+
+    /**
+     * Streams a CSV file. A first row naming the columns (any order, case-insensitive) is used as
+     * the header; without one, {@code defaultColumns} give the column order.
+     */
+    void readCsv(Reader in, List<String> defaultColumns, RowHandler handler) throws IOException {
+        List<List<String>> header = new ArrayList<>();
+        FileUtil.forEachCsvRow(in, (line, values) -> {
+            if (line == 1 && values.stream().anyMatch(v -> defaultColumns.get(0).equalsIgnoreCase(v.trim()))) {
+                List<String> names = new ArrayList<>();
+                for (String v : values) names.add(v.trim().toLowerCase(Locale.ROOT));
+                header.add(names);
+                return;
+            }
+            List<String> columns = header.isEmpty() ? defaultColumns : header.get(0);
+            Map<String, String> fields = new HashMap<>();
+            for (int i = 0; i < columns.size() && i < values.size(); i++) fields.put(columns.get(i), values.get(i));
+            handler.handle(line, fields);
+        });
+    }
+
+    /**
+     * Records a rejected row.
+     */
+    void reject(int row, String reason) {
+        report.reject(row, reason);
+    }
+
+    /**
+     * Queues a validated item for the batch insert.
+     */
+    void accept(int row, T item) {
+        batch.add(item);
+        rowOf.put(item, row);
+    }
+
+    /**
+     * Adds the batch through the repository and completes the report.
+     *
+     * @param addAll repository batch insert returning the items it skipped as duplicates
+     * @return the import report
+     */
+    ImportReport finish(Function<List<T>, List<T>> addAll) {
+        List<T> skipped = batch.isEmpty() ? List.of() : addAll.apply(batch);
+        for (T item : skipped) report.reject(rowOf.get(item), "already in the catalog");
+        report.setImported(batch.size() - skipped.size());
+        return report;
+    }
+
+    /**
+     * Parses an optional positive quantity column.
+     *
+     * @return the quantity (1 when blank), or -1 when the value is not a positive integer
+     */
+    static int parseQuantity(String value) {
+        if (value == null || value.isBlank()) return 1;
+        try {
+            int q = Integer.parseInt(value.trim());
+            return q >= 1 ? q : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+}
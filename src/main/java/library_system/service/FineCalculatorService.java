@@ -2,6 +2,8 @@ package library_system.service;
 
 import library_system.domain.Loan;
 
+import java.time.LocalDate;
+
 public class FineCalculatorService {
 
     /**
@@ -15,4 +17,17 @@ public class FineCalculatorService {
             return 0;
         return loan.calculateFine();
     }
+
+    /**
+     * Computes the fine for a given loan as of the given date.
+     *
+     * @param loan overdue loan
+     * @param asOf reference date ("today")
+     * @return fine amount in NIS
+     */
+    public int calculateFine(Loan loan, LocalDate asOf) {
+        if (loan == null)
+            return 0;
+        return loan.calculateFine(asOf);
+    }
 }
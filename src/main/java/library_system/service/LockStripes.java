@@ -0,0 +1,73 @@
+package library_system.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed set of locks shared by hashing keys onto them (lock striping).
+ * <p>
+ * Operations on different keys usually land on different stripes and run in parallel;
+ * operations on the same key always share a stripe and are serialized. Unrelated keys may
+ * occasionally share a stripe, which only costs some parallelism, never correctness.
+ * </p>
+ */
+public class LockStripes {
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * Creates a set of stripes.
+     *
+     * @param stripes number of locks, rounded up to a power of two
+     */
+    public LockStripes(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) locks[i] = new ReentrantLock();
+    }
+
+    /**
+     * Returns the lock guarding a key. Keys that are equal map to the same lock.
+     *
+     * @param key lock key (null is allowed and maps to a fixed stripe)
+     * @return the stripe's lock
+     */
+    public ReentrantLock lockFor(Object key) {
+        return locks[indexFor(key)];
+    }
+
+    /**
+     * Returns the distinct locks guarding several keys, in stripe order. Threads that lock them
+     * in this order cannot deadlock with each other, whatever order their keys came in.
+     *
+     * @param keys lock keys
+     * @return the stripes' locks, each once, ordered by stripe index
+     */
+    public List<ReentrantLock> locksFor(Collection<?> keys) {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Object key : keys) indexes.add(indexFor(key));
+        List<ReentrantLock> result = new ArrayList<>(indexes.size());
+        for (int i : indexes) result.add(locks[i]);
+        return result;
+    }
+
+    /**
+     * @param key lock key
+     * @return index of the stripe guarding the key
+     */
+    public int indexFor(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return h & (locks.length - 1);
+    }
+
+    /**
+     * @return number of stripes
+     */
+    public int size() {
+        return locks.length;
+    }
+}
@@ -3,59 +3,133 @@ package library_system.service;
 import library_system.repository.LoanRepository;
 import library_system.domain.*;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Service that builds an overdue report for a specific user.
  *
  * The report contains the list of overdue loans for the user, the total fine
  * amount for those overdue loans, and counts of overdue books and CDs.
+ * Counts and totals come from the per-user fine aggregate kept by {@link LoanRepository},
+ * so only the listed loans are touched when a report is built.
+ * <p>
+ * {@link #generateAllReports()} and {@link #writeAllReports(Writer)} cover the whole library.
+ * They read the aggregate {@value #CHUNK_USERS} users at a time, in username order, each chunk
+ * under one acquisition of the repository lock. The streaming variant renders a chunk on the
+ * fork/join pool, splitting it until each task holds at most {@value #LEAF_USERS} users, and
+ * writes it before reading the next, so memory stays bounded by one chunk. A user whose fines
+ * change while a run is in progress is reported as of the chunk that contains them.
+ * </p>
  */
 public class OverdueReportService {
 
-    /** Fine calculator used to compute fines for individual loans. */
-    private final FineCalculatorService fineCalculator = new FineCalculatorService();
+    /** Users handled by one fork/join leaf. */
+    static final int LEAF_USERS = 32;
+
+    /** Users read from the aggregate (and, when streaming, rendered and written) at a time. */
+    static final int CHUNK_USERS = 256;
 
     /**
      * Builds an overdue report for the given user.
      *
+     * Loans with unpaid fines are included: those currently overdue and not returned, and
+     * returned ones whose recorded fine is unpaid (the recorded amount is used for those).
+     *
      * @param user the user for whom the report is generated
      * @return an {@link OverdueReport} containing overdue loans, total fine and counts
      */
     public OverdueReport generateReport(User user) {
+        OutstandingFines fines = LoanRepository.getOutstandingFines(user.getUsername(), LibraryClock.today());
 
-        List<Loan> userLoans = LoanRepository.getUserLoans(user.getUsername());
-        List<Loan> overdueItems = new ArrayList<>();
+        // The overdue report should not overwrite the user's persistent fineBalance
+        // which reflects payments. It only displays unpaid outstanding fines.
 
-        int totalFine = 0;
-        int booksCount = 0;
-        int cdsCount = 0;
+        return toReport(fines);
+    }
 
-        for (Loan loan : userLoans) {
+    /**
+     * Builds the report of every user with unpaid fines.
+     *
+     * @return reports keyed by normalized (lowercase) username, in username order
+     */
+    public Map<String, OverdueReport> generateAllReports() {
+        LocalDate today = LibraryClock.today();
+        Map<String, OverdueReport> result = new LinkedHashMap<>();
+        String last = null;
+        while (true) {
+            Map<String, OutstandingFines> chunk = LoanRepository.getOutstandingFines(today, last, CHUNK_USERS);
+            for (Map.Entry<String, OutstandingFines> e : chunk.entrySet()) {
+                result.put(e.getKey(), toReport(e.getValue()));
+                last = e.getKey();
+            }
+            if (chunk.size() < CHUNK_USERS) return result;
+        }
+    }
 
-            // Consider loans that have unpaid fines:
-            // - currently overdue and fine not paid
-            // - OR already returned but a fine amount was recorded and not paid
-            if (loan.isFinePaid()) continue;
-            boolean hasOutstanding = loan.isOverdue() || (loan.isReturned() && loan.getFineAmount() > 0);
-            if (!hasOutstanding) continue;
+    /**
+     * Writes the report of every user with unpaid fines, in username order, one chunk of users
+     * at a time.
+     *
+     * @param out destination (not closed)
+     * @return number of reports written
+     * @throws IOException if writing fails
+     */
+    public int writeAllReports(Writer out) throws IOException {
+        LocalDate today = LibraryClock.today();
+        int written = 0;
+        String last = null;
+        while (true) {
+            List<Map.Entry<String, OutstandingFines>> chunk =
+                    new ArrayList<>(LoanRepository.getOutstandingFines(today, last, CHUNK_USERS).entrySet());
+            if (chunk.isEmpty()) return written;
+            List<String> rendered = ForkJoinPool.commonPool().invoke(new ReportTask(chunk));
+            for (String text : rendered) out.write(text);
+            out.flush();
+            written += chunk.size();
+            last = chunk.get(chunk.size() - 1).getKey();
+            if (chunk.size() < CHUNK_USERS) return written;
+        }
+    }
 
-            overdueItems.add(loan);
+    private static OverdueReport toReport(OutstandingFines fines) {
+        return new OverdueReport(fines.getLoans(), fines.getTotalFine(), fines.getOverdueBooks(), fines.getOverdueCDs());
+    }
 
-            int fine = fineCalculator.calculateFine(loan);
-            // If the loan already has a recorded fineAmount (e.g., on return), prefer that value
-            if (loan.getFineAmount() > 0) fine = loan.getFineAmount();
-             totalFine += fine;
+    /**
+     * Renders the reports of a slice of one chunk, splitting it in halves down to {@link #LEAF_USERS}.
+     * Results keep the order of the input list.
+     */
+    private static final class ReportTask extends RecursiveTask<List<String>> {
+        private final List<Map.Entry<String, OutstandingFines>> fines;
 
-            Media item = loan.getItem();
-            if (item instanceof Book) booksCount++;
-            if (item instanceof CD) cdsCount++;
+        ReportTask(List<Map.Entry<String, OutstandingFines>> fines) {
+            this.fines = fines;
         }
 
-        // The overdue report should not overwrite the user's persistent fineBalance
-        // which reflects payments. It only displays unpaid outstanding fines.
-
-        return new OverdueReport(overdueItems, totalFine, booksCount, cdsCount);
+        @Override
+        protected List<String> compute() {
+            if (fines.size() <= LEAF_USERS) {
+                List<String> result = new ArrayList<>(fines.size());
+                for (Map.Entry<String, OutstandingFines> e : fines) {
+                    result.add("User: " + e.getKey() + "\n" + toReport(e.getValue()) + "\n");
+                }
+                return result;
+            }
+            int mid = fines.size() / 2;
+            ReportTask left = new ReportTask(fines.subList(0, mid));
+            ReportTask right = new ReportTask(fines.subList(mid, fines.size()));
+            left.fork();
+            List<String> result = new ArrayList<>(right.compute());
+            result.addAll(0, left.join());
+            return result;
+        }
     }
 }
@@ -2,15 +2,24 @@ package library_system.service;
 
 import library_system.repository.LoanRepository;
 import library_system.repository.UserRepository;
+import library_system.domain.LibraryClock;
 import library_system.domain.Loan;
 import library_system.domain.User;
+import library_system.domain.ReminderSummary;
 import library_system.notification.Observer;
-import library_system.repository.LoanRepository;
+import library_system.notification.ReminderDispatcher;
+
+import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service responsible for sending overdue reminders to users via registered observers.
  * <p>
+ * {@link #runOverdueReminders()} builds one message per user with overdue items and hands
+ * every (observer, user) delivery to a {@link ReminderDispatcher}, so slow channels such as
+ * email are served by several workers in parallel, with bounded buffering, a per-observer
+ * concurrency limit and retries. It returns a {@link ReminderSummary}.
  * The {@link #sendOverdueReminders()} method returns a status code:
  * 0 = no users, 1 = users exist but no overdue, 2 = reminders sent.
  * </p>
@@ -20,6 +29,12 @@ public class ReminderService {
     /** List of observers that will receive notification events. */
     private final List<Observer> observers = new ArrayList<>();
 
+    private int workers = 8;
+    private int queueCapacity = 256;
+    private int perObserverLimit = 4;
+    private int maxAttempts = 3;
+    private long initialBackoffMillis = 500;
+
     /**
      * Registers a new observer to receive overdue reminder events.
      *
@@ -29,6 +44,24 @@ public class ReminderService {
         observers.add(observer);
     }
 
+    /**
+     * Tunes the dispatch of the following runs.
+     *
+     * @param workers              worker threads delivering messages
+     * @param queueCapacity        messages buffered ahead of the workers
+     * @param perObserverLimit     concurrent deliveries per observer
+     * @param maxAttempts          attempts per delivery, including the first
+     * @param initialBackoffMillis wait before the first retry (doubled for each further retry)
+     */
+    public void configureDispatch(int workers, int queueCapacity, int perObserverLimit,
+                                  int maxAttempts, long initialBackoffMillis) {
+        this.workers = workers;
+        this.queueCapacity = queueCapacity;
+        this.perObserverLimit = perObserverLimit;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMillis = initialBackoffMillis;
+    }
+
     /**
      * Sends overdue reminders to all users who have outstanding overdue items.
      *
@@ -38,20 +71,29 @@ public class ReminderService {
      * 2 = reminders were sent
      *
      * @return status code (0/1/2)
+     * @see #runOverdueReminders()
      */
     public int sendOverdueReminders() {
+        return runOverdueReminders().getStatusCode();
+    }
 
-        List<User> allUsers = UserRepository.getAllUsers();
-
-        if (allUsers.isEmpty()) {
+    /**
+     * Sends overdue reminders to all users who have outstanding overdue items and waits until
+     * every delivery has finished.
+     *
+     * @return counts of users reminded and deliveries made
+     */
+    public ReminderSummary runOverdueReminders() {
+        if (UserRepository.getUsers().isEmpty()) {
             System.out.println("No users in system.");
-            return 0;
+            return new ReminderSummary(true, 0, 0, 0, 0, 0);
         }
 
-        List<Loan> overdueLoans = LoanRepository.getOverdueLoans();
+        LocalDate today = LibraryClock.today();
+        List<Loan> overdueLoans = LoanRepository.getOverdueLoans(today);
         if (overdueLoans.isEmpty()) {
             System.out.println("No overdue items found.");
-            return 1;
+            return new ReminderSummary(false, 0, 0, 0, 0, 0);
         }
 
         Map<String, List<Loan>> byUser = new HashMap<>();
@@ -60,58 +102,62 @@ public class ReminderService {
             byUser.computeIfAbsent(username, k -> new ArrayList<>()).add(loan);
         }
 
-        boolean anySent = false;
+        Set<User> notified = ConcurrentHashMap.newKeySet();
+        ReminderDispatcher dispatcher = new ReminderDispatcher(workers, queueCapacity, perObserverLimit,
+                maxAttempts, initialBackoffMillis);
         for (Map.Entry<String, List<Loan>> e : byUser.entrySet()) {
-            String username = e.getKey();
-            User user = UserRepository.findUser(username);
+            User user = UserRepository.findUser(e.getKey());
             if (user == null) continue;
 
-            List<Loan> loans = e.getValue();
-
-            // Build a detailed message including per-item lines with media type, title, overdue days and fine
-            StringBuilder sb = new StringBuilder();
-            sb.append("--- Overdue Reminder ---\n");
-            sb.append("You have the following overdue items:\n\n");
-
-            int totalFine = 0;
-            for (Loan loan : loans) {
-                String mediaType = loan.getItem() != null ? loan.getItem().getMediaType() : "Unknown";
-                String title = loan.getItem() != null ? loan.getItem().getTitle() : "<unknown>";
-                int days = loan.getOverdueDays();
-                // Respect per-loan payment state: if the loan's fine has already been paid,
-                // do not report a fine amount in the reminder.
-                if (loan.isFinePaid()) {
-                    sb.append(mediaType).append(" - ").append(title)
-                            .append(" | Days overdue: ").append(days)
-                            .append(" | Fine: ").append("PAID").append("\n");
-                } else {
-                    // prefer a recorded fineAmount (e.g., charged on return) when present
-                    int fineAmount = loan.getFineAmount() > 0 ? loan.getFineAmount() : loan.calculateFine();
-                    totalFine += fineAmount;
-                    sb.append(mediaType).append(" - ").append(title)
-                            .append(" | Days overdue: ").append(days)
-                            .append(" | Fine: ").append(fineAmount).append(" NIS\n");
-                }
-            }
-            // Only show total fine if there is an outstanding unpaid amount
-            if (totalFine > 0) {
-                sb.append("\nTotal fine: ").append(totalFine).append(" NIS\n");
-            } else {
-                sb.append("\nNo outstanding unpaid fines. Please return the overdue items when possible.\n");
-            }
-
-            boolean userNotified = false;
+            // the total comes from the user's fine aggregate; the loans are only rendered
+            int totalFine = LoanRepository.getOutstandingFines(e.getKey(), today).getAccruingFines();
+            String message = buildMessage(e.getValue(), today, totalFine);
             for (Observer observer : observers) {
-                try {
-                    observer.notify(user, sb.toString());
-                    userNotified = true;
-                } catch (Exception ex) {
-                    System.err.println("Failed to notify user " + username + ": " + ex.getMessage());
-                }
+                dispatcher.submit(observer, user, message, (u, ok) -> {
+                    if (ok) notified.add(u);
+                });
             }
-            if (userNotified) anySent = true;
         }
+        ReminderDispatcher.Result result = dispatcher.finish();
 
-        return anySent ? 2 : 1;
+        return new ReminderSummary(false, byUser.size(), notified.size(),
+                result.getDelivered(), result.getFailed(), result.getRetries());
+    }
+
+    /**
+     * Builds a detailed message including per-item lines with media type, title, overdue days and fine.
+     *
+     * @param totalFine unpaid fine of the user's overdue loans
+     */
+    private static String buildMessage(List<Loan> loans, LocalDate today, int totalFine) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- Overdue Reminder ---\n");
+        sb.append("You have the following overdue items:\n\n");
+
+        for (Loan loan : loans) {
+            String mediaType = loan.getItem() != null ? loan.getItem().getMediaType() : "Unknown";
+            String title = loan.getItem() != null ? loan.getItem().getTitle() : "<unknown>";
+            int days = loan.getOverdueDays(today);
+            // Respect per-loan payment state: if the loan's fine has already been paid,
+            // do not report a fine amount in the reminder.
+            if (loan.isFinePaid()) {
+                sb.append(mediaType).append(" - ").append(title)
+                        .append(" | Days overdue: ").append(days)
+                        .append(" | Fine: ").append("PAID").append("\n");
+            } else {
+                // prefer a recorded fineAmount (e.g., charged on return) when present
+                int fineAmount = loan.getFineAmount() > 0 ? loan.getFineAmount() : loan.calculateFine(today);
+                sb.append(mediaType).append(" - ").append(title)
+                        .append(" | Days overdue: ").append(days)
+                        .append(" | Fine: ").append(fineAmount).append(" NIS\n");
+            }
+        }
+        // Only show total fine if there is an outstanding unpaid amount
+        if (totalFine > 0) {
+            sb.append("\nTotal fine: ").append(totalFine).append(" NIS\n");
+        } else {
+            sb.append("\nNo outstanding unpaid fines. Please return the overdue items when possible.\n");
+        }
+        return sb.toString();
     }
- }
+}
@@ -2,10 +2,15 @@ package library_system.service;
 
 import library_system.repository.UserRepository;
 import library_system.repository.LoanRepository;
+import library_system.repository.UnitOfWork;
 import library_system.domain.User;
 import library_system.domain.*;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Service handling user registration, authentication, and removal.
@@ -25,7 +30,13 @@ public class UserService {
      * @return true if successfully registered, false otherwise
      */
     public boolean register(String username, String password, String email) {
+        // uniqueness checks and the insert must not interleave with another registration
+        synchronized (UserRepository.class) {
+            return registerLocked(username, password, email);
+        }
+    }
 
+    private boolean registerLocked(String username, String password, String email) {
         if (UserRepository.findUser(username) != null)
             return false;
 
@@ -78,24 +89,77 @@ public class UserService {
             return "Cannot unregister: User has unpaid fines.";
 
         UserRepository.deleteUser(user);
-        UserRepository.saveToFile();
 
         return "User successfully unregistered.";
     }
 
+    /**
+     * Pays part or all of a user's fine balance. Returned loans whose recorded fines the
+     * payments now cover, oldest first, are marked paid in the same unit of work as the
+     * balance update, so the outstanding-fine totals drop with the balance.
+     *
+     * @param user   paying user
+     * @param amount amount paid (must be > 0 and <= current balance)
+     * @return true if the payment was accepted
+     */
+    public boolean payFine(User user, double amount) {
+        if (user == null) return false;
+
+        return UnitOfWork.run(() -> {
+            if (!user.payFine(amount)) return false;
+            settleFines(user);
+            UserRepository.updateUser(user);
+            return true;
+        });
+    }
+
+    /**
+     * Marks paid the oldest returned loans whose fines are no longer part of the balance.
+     */
+    private void settleFines(User user) {
+        List<Loan> unpaid = new ArrayList<>();
+        int recorded = 0;
+        for (Loan loan : LoanRepository.getOutstandingFines(user.getUsername(), LibraryClock.today()).getLoans()) {
+            if (loan.isReturned() && !loan.isFinePaid() && loan.getFineAmount() > 0) {
+                unpaid.add(loan);
+                recorded += loan.getFineAmount();
+            }
+        }
+        unpaid.sort(Comparator.comparingLong(Loan::getId));
+
+        double balance = user.getFineBalance();
+        for (Loan loan : unpaid) {
+            if (recorded - loan.getFineAmount() < balance) break;
+            LoanRepository.markFinePaid(loan);
+            recorded -= loan.getFineAmount();
+        }
+    }
+
     public boolean returnItem(User user, Book book) {
         if (user == null || book == null) return false;
 
+        // same stripe as BorrowService, so a return never interleaves with a borrow of the book
+        ReentrantLock lock = BorrowService.ITEM_LOCKS.lockFor(BorrowService.itemLockKey(book));
+        lock.lock();
+        try {
+            return returnLocked(user, book);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean returnLocked(User user, Book book) {
         Loan loan = LoanRepository.findActiveLoan(user, book);
         if (loan == null) return false;
 
         // 1. increase quantity
-        book.setQuantity(book.getQuantity() + 1);
+        book.release();
 
         // 2. calculate fine if overdue
         double fine = 0;
-        if (loan.isOverdue()) {
-            long daysLate = loan.getBorrowedDate().until(LocalDate.now()).getDays()
+        LocalDate today = LibraryClock.today();
+        if (loan.isOverdue(today)) {
+            long daysLate = loan.getBorrowedDate().until(today).getDays()
                     - book.getBorrowDuration();
 
             if (daysLate > 0) {
@@ -105,9 +169,8 @@ public class UserService {
             }
         }
 
-        // 3. mark loan returned
-        loan.setReturned(true);
-        LoanRepository.saveToFile();
+        // 3. mark loan returned (records the fine and persists only this event)
+        LoanRepository.markLoanReturned(loan, (int) fine);
 
         return true;
     }
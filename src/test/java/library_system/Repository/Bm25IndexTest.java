@@ -0,0 +1,73 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import org.junit.jupiter.api.*;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Bm25IndexTest {
+
+    private Bm25Index<Book> index;
+    private List<Book> books;
+
+    @BeforeEach
+    void setup() {
+        index = new Bm25Index<>(Book::getNormalizedTitle, Book::getNormalizedAuthor);
+        books = new TrackedList<>(index);
+    }
+
+    @Test
+    void testSearch_ranksDocumentsMatchingMoreRareWordsFirst() {
+        Book both = new Book("Java Concurrency in Practice", "Brian Goetz", "1");
+        Book javaOnly = new Book("Java Basics", "John Doe", "2");
+        Book practiceOnly = new Book("The Practice of Programming", "Kernighan", "3");
+        books.add(javaOnly);
+        books.add(practiceOnly);
+        books.add(both);
+        books.add(new Book("Clean Code", "Robert Martin", "4"));
+
+        List<Book> result = index.search("practice JAVA", 10);
+
+        assertEquals(3, result.size());
+        assertSame(both, result.get(0));
+    }
+
+    @Test
+    void testSearch_matchesAuthorWordsAndRespectsLimit() {
+        for (int i = 0; i < 50; i++) books.add(new Book("Volume " + i, "Common Author", "V" + i));
+        Book fowler = new Book("Refactoring", "Martin Fowler", "R");
+        books.add(fowler);
+
+        assertEquals(List.of(fowler), index.search("fowler", 5));
+        List<Book> top = index.search("author", 5);
+        assertEquals(5, top.size());
+        // equal scores keep insertion order
+        assertEquals("Volume 0", top.get(0).getTitle());
+        assertEquals("Volume 4", top.get(4).getTitle());
+    }
+
+    @Test
+    void testRemoveAndClear_dropDocuments() {
+        Book a = new Book("Domain Driven Design", "Evans", "1");
+        books.add(a);
+        for (int i = 0; i < 200; i++) books.add(new Book("Filler " + i, "X", "F" + i));
+        books.removeIf(b -> b.getTitle().startsWith("Filler"));
+
+        assertEquals(1, index.size());
+        assertEquals(List.of(a), index.search("design", 10));
+
+        books.remove(a);
+        assertTrue(index.search("design", 10).isEmpty());
+        books.add(a);
+        books.clear();
+        assertTrue(index.search("design evans", 10).isEmpty());
+    }
+
+    @Test
+    void testTokenize_splitsOnPunctuation() {
+        assertEquals(List.of("c", "3po", "s", "guide"), Bm25Index.tokenize("c-3po's guide!"));
+        assertTrue(index.search("   ", 10).isEmpty());
+    }
+}
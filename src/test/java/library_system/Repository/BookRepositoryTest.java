@@ -34,4 +34,26 @@ public class BookRepositoryTest {
         List<Book> byIsbn = BookRepository.findByIsbn("12345");
         Assertions.assertEquals(1, byIsbn.size());
     }
+
+    @Test
+    public void testUniquenessIndex_followsListChanges() {
+        Book book = new Book("  Dune ", "Herbert", "ISBN-D");
+        BookRepository.getBooks().add(book);
+
+        Assertions.assertTrue(BookRepository.existsByTitle("DUNE"));
+        Assertions.assertSame(book, BookRepository.findByIsbnExact("isbn-d"));
+        Assertions.assertSame(book, BookRepository.findByTitleAndAuthor("dune", "HERBERT"));
+
+        BookRepository.getBooks().remove(book);
+        Assertions.assertFalse(BookRepository.existsByTitle("Dune"));
+        Assertions.assertNull(BookRepository.findByIsbnExact("ISBN-D"));
+    }
+
+    @Test
+    public void testAddBookIfUnique_rejectsDuplicateTitleOrIsbn() {
+        Assertions.assertTrue(BookRepository.addBookIfUnique(new Book("Emma", "Austen", "E-1")));
+        Assertions.assertFalse(BookRepository.addBookIfUnique(new Book("emma", "Other", "E-2")));
+        Assertions.assertFalse(BookRepository.addBookIfUnique(new Book("Persuasion", "Austen", " e-1")));
+        Assertions.assertEquals(1, BookRepository.getBooks().size());
+    }
 }
@@ -0,0 +1,185 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import library_system.domain.Loan;
+import library_system.domain.User;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClosedLoanStoreTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void testAppend_roundTripsFixedWidthRecord() throws Exception {
+        ClosedLoanStore store = new ClosedLoanStore(new File(dir, "loans.archive"));
+        LocalDate borrowed = LocalDate.of(2025, 1, 10);
+
+        store.append(7, "Alice", "{\"isbn\":\"1\"}", borrowed, borrowed.plusDays(28), true, 40);
+
+        ClosedLoanStore.Record r = store.get(0);
+        assertEquals(7, r.getId());
+        assertEquals("Alice", r.getUsername());
+        assertEquals("{\"isbn\":\"1\"}", r.getItemRef());
+        assertEquals(borrowed, r.getBorrowedDate());
+        assertEquals(borrowed.plusDays(28), r.getDueDate());
+        assertTrue(r.isFinePaid());
+        assertEquals(40, r.getFineAmount());
+        assertTrue(store.contains(7));
+        store.close();
+    }
+
+    @Test
+    void testReopen_keepsSyncedRecordsAndGrowsPastInitialMapping() throws Exception {
+        File file = new File(dir, "loans.archive");
+        ClosedLoanStore store = new ClosedLoanStore(file);
+        for (int i = 1; i <= 3000; i++) {
+            store.append(i, i % 2 == 0 ? "even" : "odd", "item" + (i % 5), null, null, false, 0);
+        }
+        store.close();
+
+        ClosedLoanStore reopened = new ClosedLoanStore(file);
+        assertEquals(3000, reopened.size());
+        assertEquals(3000, reopened.getMaxId());
+        assertNull(reopened.get(2999).getBorrowedDate());
+
+        List<Long> even = new ArrayList<>();
+        reopened.forEachOfUser("EVEN", r -> even.add(r.getId()));
+        assertEquals(1500, even.size());
+        assertEquals(2L, even.get(0));
+        reopened.close();
+    }
+
+    @Test
+    void testReopen_dropsTornStringAndRecordsWithMissingStrings() throws Exception {
+        File file = new File(dir, "loans.archive");
+        File keys = new File(dir, "loans.archive.keys");
+        ClosedLoanStore store = new ClosedLoanStore(file);
+        store.append(1, "u", "i", null, null, false, 0);
+        store.sync();
+        store.close();
+        Files.writeString(keys.toPath(), "hal", StandardOpenOption.APPEND);
+
+        store = new ClosedLoanStore(file);
+        store.append(2, "v", "i", null, null, false, 0);
+        store.sync();
+        store.close();
+        ClosedLoanStore reopened = new ClosedLoanStore(file);
+        assertEquals("v", reopened.get(1).getUsername(), "New string must not be glued to the torn one");
+        reopened.close();
+
+        Files.writeString(keys.toPath(), "u\n");
+        ClosedLoanStore damaged = new ClosedLoanStore(file);
+        assertEquals(0, damaged.size(), "Records pointing past the string table are ignored");
+        damaged.close();
+    }
+
+    @Test
+    void testUnsyncedRecords_areNotVisibleAfterReopen() throws Exception {
+        File file = new File(dir, "loans.archive");
+        ClosedLoanStore store = new ClosedLoanStore(file);
+        store.append(1, "u", "i", null, null, false, 0);
+        store.sync();
+        store.append(2, "u", "i", null, null, false, 0);
+        assertEquals(2, store.size());
+
+        ClosedLoanStore reopened = new ClosedLoanStore(file);
+        assertEquals(1, reopened.size());
+        reopened.close();
+        store.close();
+    }
+
+    @Nested
+    class RepositoryArchive {
+
+        @BeforeEach
+        void setup() {
+            LoanRepository.clear();
+            LoanRepository.enableArchive();
+        }
+
+        @AfterEach
+        void cleanup() {
+            LoanRepository.clear();
+            LoanRepository.disableArchive();
+        }
+
+        @Test
+        void testClosedLoans_moveOffHeapAndStayVisible() {
+            User user = new User("arch", "p", "arch@example.com");
+            Loan closed = new Loan(user, new Book("Closed", "A", "ARC-1"));
+            Loan open = new Loan(user, new Book("Open", "A", "ARC-2"));
+            LoanRepository.addLoan(closed);
+            LoanRepository.addLoan(open);
+
+            LoanRepository.markLoanReturned(closed);
+
+            assertEquals(1, LoanRepository.getArchivedLoanCount());
+            List<Loan> all = LoanRepository.getAllLoans();
+            assertEquals(2, all.size());
+            assertEquals("Closed", all.get(0).getItem().getTitle());
+            assertTrue(all.get(0).isReturned());
+            assertEquals(2, LoanRepository.getUserLoans("ARCH").size());
+        }
+
+        @Test
+        void testPages_mergeArchivedAndOpenLoansById() {
+            User user = new User("mixed", "p", "m@example.com");
+            List<Loan> added = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                Loan loan = new Loan(user, new Book("M" + i, "A", "ARC-M" + i));
+                LoanRepository.addLoan(loan);
+                added.add(loan);
+            }
+            LoanRepository.markLoanReturned(added.get(1));
+            LoanRepository.markLoanReturned(added.get(4));
+
+            Page<Loan> page = LoanRepository.getUserLoans("mixed", 1, 4);
+
+            assertEquals(2, LoanRepository.getArchivedLoanCount());
+            assertEquals(List.of(added.get(1).getId(), added.get(2).getId(), added.get(3).getId(), added.get(4).getId()),
+                    page.getItems().stream().map(Loan::getId).toList());
+            assertTrue(page.getItems().get(3).isReturned());
+            assertTrue(page.hasMore());
+            assertEquals(LoanRepository.getAllLoans().stream().map(Loan::getId).toList(),
+                    LoanRepository.streamAllLoans().map(Loan::getId).toList());
+            assertEquals(LoanRepository.getUserLoans("mixed").stream().map(Loan::getId).toList(),
+                    LoanRepository.streamUserLoans("MIXED").map(Loan::getId).toList());
+        }
+
+        @Test
+        void testLoansWithUnpaidFine_stayOnHeap() {
+            Loan loan = new Loan(new User("fined", "p", "f@example.com"), new Book("Late", "A", "ARC-3"));
+            LoanRepository.addLoan(loan);
+
+            LoanRepository.markLoanReturned(loan, 20);
+
+            assertEquals(0, LoanRepository.getArchivedLoanCount());
+            assertSame(loan, LoanRepository.getAllLoans().get(0));
+        }
+
+        @Test
+        void testReload_doesNotDuplicateArchivedLoans() {
+            Loan loan = new Loan(new User("again", "p", "a@example.com"), new Book("B", "A", "ARC-4"));
+            LoanRepository.addLoan(loan);
+            LoanRepository.markLoanReturned(loan);
+
+            LoanRepository.loadFromFile();
+            LoanRepository.addLoan(new Loan(new User("again", "p", "a@example.com"), new Book("C", "A", "ARC-5")));
+
+            List<Loan> all = LoanRepository.getAllLoans();
+            assertEquals(2, all.size());
+            assertNotEquals(all.get(0).getId(), all.get(1).getId(), "Archived ids must not be reused");
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package library_system.repository;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileUtilTest {
+
+    @TempDir
+    Path dir;
+
+    private File write(String json) throws Exception {
+        Path p = dir.resolve("records.json");
+        Files.writeString(p, json);
+        return p.toFile();
+    }
+
+    @Test
+    void testForEachRecord_array() throws Exception {
+        File f = write("[{\"title\":\"A\"}, 5, {\"title\":\"B\"}, null]");
+        List<String> titles = new ArrayList<>();
+
+        int count = FileUtil.forEachRecord(f, MapperProvider.MAPPER, r -> titles.add(r.get("title").asText()));
+
+        assertEquals(2, count, "Non-object elements are skipped");
+        assertEquals(List.of("A", "B"), titles);
+    }
+
+    @Test
+    void testForEachRecord_singleObjectRoot() throws Exception {
+        File f = write("{\"title\":\"Only\"}");
+        List<String> titles = new ArrayList<>();
+
+        FileUtil.forEachRecord(f, MapperProvider.MAPPER, r -> titles.add(r.get("title").asText()));
+
+        assertEquals(List.of("Only"), titles);
+    }
+
+    @Test
+    void testForEachRecord_missingOrNullFile() throws Exception {
+        assertEquals(0, FileUtil.forEachRecord(dir.resolve("none.json").toFile(), MapperProvider.MAPPER, r -> fail()));
+        assertEquals(0, FileUtil.forEachRecord(write("null"), MapperProvider.MAPPER, r -> fail()));
+    }
+
+    @Test
+    void testWriteAtomic_replacesFile() throws Exception {
+        File f = write("old");
+
+        FileUtil.writeAtomic(f, List.of("new"), MapperProvider.MAPPER);
+
+        assertTrue(Files.readString(f.toPath()).contains("new"));
+        try (var files = Files.list(dir)) {
+            assertEquals(1, files.count(), "No temporary file may be left behind");
+        }
+    }
+}
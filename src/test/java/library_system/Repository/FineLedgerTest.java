@@ -0,0 +1,97 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import library_system.domain.CD;
+import library_system.domain.Loan;
+import library_system.domain.Media;
+import library_system.domain.OutstandingFines;
+import library_system.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FineLedgerTest {
+
+    private final User user = new User("ann", "p", "ann@mail.com");
+    private final LocalDate today = LocalDate.now();
+
+    private Loan loan(Media item, LocalDate due) {
+        Loan l = new Loan(user, item);
+        l.setDueDate(due);
+        return l;
+    }
+
+    @Test
+    void testSummary_matchesPerLoanFines() {
+        FineLedger ledger = new FineLedger();
+        Loan book = loan(new Book("B", "A", "1"), today.minusDays(2));
+        Loan cd = loan(new CD("C", "X"), today.minusDays(3));
+        Loan notDue = loan(new Book("N", "A", "2"), today.plusDays(5));
+        ledger.update(book, "ann");
+        ledger.update(cd, "ann");
+        ledger.update(notDue, "ann");
+
+        OutstandingFines f = ledger.summary("ann", today);
+
+        assertEquals(book.calculateFine(today) + cd.calculateFine(today), f.getAccruingFines());
+        assertEquals(1, f.getOverdueBooks());
+        assertEquals(1, f.getOverdueCDs());
+        assertEquals(2, f.getLoans().size());
+        assertEquals(10 + 20, f.getDailyRate());
+    }
+
+    @Test
+    void testDayRollover_countsLoansThatFallDue() {
+        FineLedger ledger = new FineLedger();
+        Loan later = loan(new Book("L", "A", "1"), today.plusDays(1));
+        ledger.update(later, "ann");
+        assertEquals(0, ledger.summary("ann", today).getTotalFine());
+
+        LocalDate inFour = today.plusDays(4);
+        OutstandingFines f = ledger.summary("ann", inFour);
+        assertEquals(later.calculateFine(inFour), f.getAccruingFines());
+        assertEquals(1, f.getOverdueBooks());
+
+        assertEquals(0, ledger.summary("ann", today).getTotalFine(), "Moving back uncounts the loan");
+    }
+
+    @Test
+    void testReturnAndPayment_moveFineFromAccruingToRecordedToNothing() {
+        FineLedger ledger = new FineLedger();
+        Loan l = loan(new CD("C", "X"), today.minusDays(4));
+        ledger.update(l, "ann");
+
+        l.setReturned(true);
+        l.setFineAmount(80);
+        ledger.update(l, "ann");
+        OutstandingFines f = ledger.summary("ann", today.plusDays(10));
+        assertEquals(0, f.getAccruingFines());
+        assertEquals(80, f.getRecordedFines());
+        assertEquals(1, f.getOverdueCDs());
+
+        l.setFinePaid(true);
+        ledger.update(l, "ann");
+        assertEquals(0, ledger.summary("ann", today).getTotalFine());
+        assertTrue(ledger.summary("ann", today).getLoans().isEmpty());
+    }
+
+    @Test
+    void testSummaries_readUsersWithFinesInChunks() {
+        FineLedger ledger = new FineLedger();
+        ledger.update(loan(new Book("B", "A", "1"), today.minusDays(2)), "zed");
+        ledger.update(loan(new CD("C", "X"), today.minusDays(1)), "ann");
+        ledger.update(loan(new Book("N", "A", "2"), today.plusDays(3)), "bob");
+
+        Map<String, OutstandingFines> first = ledger.summaries(today, null, 1);
+        Map<String, OutstandingFines> rest = ledger.summaries(today, "ann", 10);
+
+        assertEquals(List.of("ann"), List.copyOf(first.keySet()));
+        assertEquals(List.of("zed"), List.copyOf(rest.keySet()), "Users without fines are skipped");
+        assertEquals(ledger.summary("zed", today).getTotalFine(), rest.get("zed").getTotalFine());
+        assertTrue(ledger.summaries(today, "zed", 10).isEmpty());
+    }
+}
@@ -0,0 +1,123 @@
+package library_system.repository;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import library_system.domain.Book;
+import library_system.domain.Loan;
+import library_system.domain.User;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoanJournalTest {
+
+    private static final File loanFile = FileUtil.getDataFile("loans.json");
+    private static final File journalFile = FileUtil.getDataFile("loans.journal");
+
+    @BeforeEach
+    void setup() {
+        LoanRepository.clear();
+        LoanRepository.enableJournal(1, 100);
+    }
+
+    @AfterEach
+    void cleanup() {
+        LoanRepository.disableJournal();
+        LoanRepository.clear();
+        if (journalFile.exists()) journalFile.delete();
+    }
+
+    @Test
+    void testAddLoan_appendsToJournalWithoutRewritingSnapshot() {
+        long snapshotSize = loanFile.length();
+
+        LoanRepository.addLoan(new Loan(new User("j1", "p", "j1@example.com"), new Book("T", "A", "J-1")));
+
+        assertEquals(snapshotSize, loanFile.length(), "Snapshot must not be rewritten in journal mode");
+        assertTrue(journalFile.length() > 0, "Borrow must be appended to the journal");
+    }
+
+    @Test
+    void testLoad_replaysJournalOverSnapshot() {
+        User user = new User("j2", "p", "j2@example.com");
+        Loan first = new Loan(user, new Book("First", "A", "J-2"));
+        Loan second = new Loan(user, new Book("Second", "A", "J-3"));
+        LoanRepository.addLoan(first);
+        LoanRepository.addLoan(second);
+        LoanRepository.markLoanReturned(first, 30);
+
+        LoanRepository.loadFromFile();
+
+        assertEquals(2, LoanRepository.getAllLoans().size());
+        Loan reloaded = LoanRepository.getAllLoans().get(0);
+        assertEquals("First", reloaded.getItem().getTitle());
+        assertTrue(reloaded.isReturned(), "Return event must be replayed");
+        assertEquals(30, reloaded.getFineAmount());
+        assertEquals(0, journalFile.length(), "Journal is compacted into the snapshot after replay");
+    }
+
+    @Test
+    void testCompaction_truncatesJournalAtThreshold() {
+        LoanRepository.enableJournal(10, 3);
+        User user = new User("j3", "p", "j3@example.com");
+
+        LoanRepository.addLoan(new Loan(user, new Book("B1", "A", "J-4")));
+        LoanRepository.addLoan(new Loan(user, new Book("B2", "A", "J-5")));
+        assertTrue(journalFile.length() > 0);
+
+        LoanRepository.addLoan(new Loan(user, new Book("B3", "A", "J-6")));
+        assertEquals(0, journalFile.length(), "Third record reaches the threshold and triggers compaction");
+
+        LoanRepository.disableJournal();
+        LoanRepository.loadFromFile();
+        assertEquals(3, LoanRepository.getAllLoans().size());
+    }
+
+    @Test
+    void testReplay_isIdempotent() {
+        Loan loan = new Loan(new User("j4", "p", "j4@example.com"), new Book("Once", "A", "J-7"));
+        LoanRepository.addLoan(loan);
+
+        // simulate a crash after the snapshot was written but before the journal was truncated
+        LoanRepository.saveToFile();
+        LoanRepository.addLoan(new Loan(new User("j5", "p", "j5@example.com"), new Book("Once", "A", "J-7")));
+        LoanRepository.loadFromFile();
+        LoanRepository.loadFromFile();
+
+        assertEquals(2, LoanRepository.getAllLoans().size());
+    }
+
+    @Test
+    void testReplay_truncatesTornTailBeforeNextAppend() throws Exception {
+        File file = FileUtil.getDataFile("torn.journal");
+        ObjectMapper mapper = new ObjectMapper();
+        try {
+            LoanJournal journal = new LoanJournal(file, mapper, 1);
+            journal.append(mapper.createObjectNode().put("op", "BORROW").put("id", 1));
+            journal.append(mapper.createObjectNode().put("op", "BORROW").put("id", 2));
+            journal.close();
+            // crash in the middle of the third append
+            Files.write(file.toPath(), "{\"op\":\"RET".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            journal = new LoanJournal(file, mapper, 1);
+            assertEquals(2, journal.replay(r -> {}));
+            journal.append(mapper.createObjectNode().put("op", "RETURN").put("id", 1));
+            journal.close();
+
+            List<Long> ids = new ArrayList<>();
+            journal = new LoanJournal(file, mapper, 1);
+            assertEquals(3, journal.replay(r -> ids.add(r.get("id").asLong())),
+                    "Record appended after a torn tail must not be lost");
+            assertEquals(List.of(1L, 2L, 1L), ids);
+            journal.close();
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -3,11 +3,14 @@ package library_system.repository;
 import library_system.domain.Book;
 import library_system.domain.CD;
 import library_system.domain.Loan;
+import library_system.domain.OutstandingFines;
 import library_system.domain.User;
 import org.junit.jupiter.api.*;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.time.LocalDate;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -66,10 +69,10 @@ class LoanRepositoryTest {
 
     @Test
     void testLoad_emailSanitization() throws Exception {
+        // legacy format: a full user copy embedded in the loan record
         User user = new User("user2", "pass", "User2@Example.Com ");
         Book book = new Book("Title", "Author", "234", 7);
-        Loan loan = new Loan(user, book);
-        LoanRepository.addLoan(loan);
+        MapperProvider.MAPPER.writerWithDefaultPrettyPrinter().writeValue(loanFile, List.of(new Loan(user, book)));
 
         LoanRepository.loadFromFile();
 
@@ -77,6 +80,50 @@ class LoanRepositoryTest {
         assertEquals("user2@example.com", l.getUser().getEmail(), "Email should be sanitized");
     }
 
+    @Test
+    void testLoad_resolvesCanonicalUserAndItem() {
+        User user = new User("canon", "pass", "canon@example.com");
+        Book book = new Book("Canon", "Author", "CANON-1", 2);
+        UserRepository.addUser(user);
+        BookRepository.addBook(book);
+        try {
+            LoanRepository.addLoan(new Loan(user, book));
+
+            LoanRepository.loadFromFile();
+
+            Loan l = LoanRepository.getAllLoans().get(0);
+            assertSame(user, l.getUser(), "Loan must reference the UserRepository instance");
+            assertSame(book, l.getItem(), "Loan must reference the BookRepository instance");
+        } finally {
+            UserRepository.clear();
+            BookRepository.clear();
+        }
+    }
+
+    @Test
+    void testSave_storesKeysInsteadOfCopies() throws Exception {
+        User user = new User("keys", "secret", "keys@example.com");
+        LoanRepository.addLoan(new Loan(user, new CD("Hits", "Band")));
+
+        String json = Files.readString(loanFile.toPath());
+
+        assertTrue(json.contains("\"username\" : \"keys\""));
+        assertFalse(json.contains("secret"), "Passwords must not be copied into loans.json");
+        assertFalse(json.contains("fineBalance"));
+    }
+
+    @Test
+    void testLoad_migratesLegacyFile() throws Exception {
+        User user = new User("legacy", "secret", "legacy@example.com");
+        MapperProvider.MAPPER.writerWithDefaultPrettyPrinter()
+                .writeValue(loanFile, List.of(new Loan(user, new Book("Old", "A", "LEG-1"))));
+
+        LoanRepository.loadFromFile();
+
+        assertEquals("legacy", LoanRepository.getAllLoans().get(0).getUser().getUsername());
+        assertFalse(Files.readString(loanFile.toPath()).contains("secret"), "Legacy file is rewritten with keys");
+    }
+
     @Test
     void testLoad_fixMissingDueDate() throws Exception {
         User user = new User("user3", "pass", "user3@example.com");
@@ -179,4 +226,128 @@ class LoanRepositoryTest {
         assertEquals("BOOK", l.getItem().getMediaType(), "Media type should be inferred as BOOK");
     }
 
+    @Test
+    void testIndexes_userLookupIsCaseInsensitive() {
+        User user = new User("MixedCase", "pass", "m@example.com");
+        LoanRepository.addLoan(new Loan(user, new Book("T1", "A", "IDX-1")));
+        LoanRepository.addLoan(new Loan(user, new CD("Hits", "Band")));
+
+        assertEquals(2, LoanRepository.getUserLoans("mixedcase").size());
+        assertTrue(LoanRepository.hasActiveLoans(new User("MIXEDCASE", "x", "x@example.com")));
+        assertNotNull(LoanRepository.findActiveLoan(user, new CD("HITS", "band")));
+    }
+
+    @Test
+    void testIndexes_updatedOnReturn() {
+        User user = new User("idx", "pass", "idx@example.com");
+        Book book = new Book("T2", "A", "IDX-2");
+        Loan loan = new Loan(user, book);
+        LoanRepository.addLoan(loan);
+
+        LoanRepository.markLoanReturned(loan);
+
+        assertNull(LoanRepository.findActiveLoan(user, book));
+        assertFalse(LoanRepository.hasActiveLoans(user));
+        assertEquals(1, LoanRepository.getUserLoans("idx").size(), "History is kept after return");
+
+        // the same item can be borrowed again once returned
+        LoanRepository.addLoan(new Loan(user, book));
+        assertNotNull(LoanRepository.findActiveLoan(user, book));
+    }
+
+    @Test
+    void testIndexes_rebuiltOnLoad() {
+        User user = new User("idx2", "pass", "idx2@example.com");
+        Book book = new Book("T3", "A", "IDX-3");
+        LoanRepository.addLoan(new Loan(user, book));
+
+        LoanRepository.loadFromFile();
+
+        assertNotNull(LoanRepository.findActiveLoan(user, book));
+        assertEquals(1, LoanRepository.getUserLoans("IDX2").size());
+    }
+
+    @Test
+    void testOverdueAsOf_rangeQuery() {
+        User user = new User("due", "pass", "due@example.com");
+        Loan early = new Loan(user, new Book("Early", "A", "DUE-1"));
+        early.setDueDate(LocalDate.of(2025, 1, 10));
+        Loan late = new Loan(user, new Book("Late", "A", "DUE-2"));
+        late.setDueDate(LocalDate.of(2025, 1, 20));
+        LoanRepository.addLoan(late);
+        LoanRepository.addLoan(early);
+
+        assertTrue(LoanRepository.getOverdueLoans(LocalDate.of(2025, 1, 10)).isEmpty(), "Due today is not overdue");
+        assertEquals(1, LoanRepository.getOverdueLoans(LocalDate.of(2025, 1, 11)).size());
+        assertEquals(early, LoanRepository.getOverdueLoans(LocalDate.of(2025, 2, 1)).get(0), "Ordered by due date");
+
+        assertFalse(LoanRepository.hasOverdueLoans(user, LocalDate.of(2025, 1, 5)));
+        assertTrue(LoanRepository.hasOverdueLoans(user, LocalDate.of(2025, 1, 15)));
+
+        LoanRepository.markLoanReturned(early);
+        assertFalse(LoanRepository.hasOverdueLoans(user, LocalDate.of(2025, 1, 15)));
+        assertEquals(1, LoanRepository.getOverdueLoans(LocalDate.of(2025, 2, 1)).size());
+    }
+
+    @Test
+    void testUpdateDueDate_reindexesOverdueQueriesAndFines() {
+        User user = new User("renew", "pass", "renew@example.com");
+        Loan loan = new Loan(user, new Book("Renewed", "A", "DUE-3"));
+        loan.setDueDate(LocalDate.now().minusDays(4));
+        LoanRepository.addLoan(loan);
+        assertTrue(LoanRepository.hasOverdueLoans(user, LocalDate.now()));
+        assertEquals(1, LoanRepository.getOutstandingFines("renew", LocalDate.now()).getOverdueBooks());
+
+        LoanRepository.updateDueDate(loan, LocalDate.now().plusDays(7));
+
+        assertEquals(LocalDate.now().plusDays(7), loan.getDueDate());
+        assertTrue(LoanRepository.getOverdueLoans(LocalDate.now()).isEmpty());
+        assertFalse(LoanRepository.hasOverdueLoans(user, LocalDate.now()));
+        assertEquals(0, LoanRepository.getOutstandingFines("renew", LocalDate.now()).getTotalFine());
+        assertEquals(1, LoanRepository.getOverdueLoans(LocalDate.now().plusDays(8)).size());
+
+        LoanRepository.loadFromFile();
+        assertEquals(LocalDate.now().plusDays(7), LoanRepository.getAllLoans().get(0).getDueDate());
+    }
+
+    @Test
+    void testGetAllLoansPage_andStreamMatchFullList() {
+        User user = new User("pager", "p", "pager@example.com");
+        for (int i = 0; i < 7; i++) LoanRepository.addLoan(new Loan(user, new Book("B" + i, "A", "PG-" + i)));
+
+        Page<Loan> page = LoanRepository.getAllLoans(2, 3);
+        List<Loan> all = LoanRepository.getAllLoans();
+
+        assertEquals(all.subList(2, 5), page.getItems());
+        assertTrue(page.hasMore());
+        assertEquals(5, page.getNextOffset());
+        assertEquals(all, LoanRepository.streamAllLoans().toList());
+        assertEquals(2, LoanRepository.getUserLoans("PAGER", 5, 10).getItems().size());
+        assertFalse(LoanRepository.getUserLoans("nobody", 0, 10).hasMore());
+    }
+
+    @Test
+    void testOutstandingFines_followAddReturnAndPayment() {
+        User user = new User("fined", "p", "fined@example.com");
+        Loan kept = new Loan(user, new Book("Kept", "A", "OF-1"));
+        kept.setBorrowedDate(LocalDate.now().minusDays(30));
+        kept.setDueDate(LocalDate.now().minusDays(3));
+        Loan back = new Loan(user, new CD("Back", "X"));
+        back.setDueDate(LocalDate.now().minusDays(1));
+        LoanRepository.addLoan(kept);
+        LoanRepository.addLoan(back);
+
+        LoanRepository.markLoanReturned(back, 20);
+        OutstandingFines fines = LoanRepository.getOutstandingFines("FINED", LocalDate.now());
+        assertEquals(kept.calculateFine(), fines.getAccruingFines());
+        assertEquals(20, fines.getRecordedFines());
+        assertEquals(1, fines.getOverdueBooks());
+        assertEquals(1, fines.getOverdueCDs());
+
+        LoanRepository.markFinePaid(back);
+        LoanRepository.loadFromFile();
+        fines = LoanRepository.getOutstandingFines("fined", LocalDate.now());
+        assertEquals(0, fines.getRecordedFines(), "Payment survives a reload");
+        assertEquals(1, fines.getLoans().size());
+    }
 }
@@ -0,0 +1,111 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import org.junit.jupiter.api.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NGramIndexTest {
+
+    private NGramIndex<Book> index;
+    private List<Book> books;
+
+    @BeforeEach
+    void setup() {
+        index = new NGramIndex<>(Book::getNormalizedTitle);
+        books = new TrackedList<>(index);
+    }
+
+    @Test
+    void testContaining_matchesCaseInsensitiveSubstring() {
+        Book clean = new Book("Clean Code", "Martin", "1");
+        Book other = new Book("Refactoring", "Fowler", "2");
+        books.add(clean);
+        books.add(other);
+
+        assertEquals(List.of(clean), index.containing("AN CO"));
+        assertEquals(List.of(other), index.containing("factor"));
+        assertTrue(index.containing("xyz").isEmpty());
+    }
+
+    @Test
+    void testContaining_gramsPresentButNotAdjacent_isVerified() {
+        books.add(new Book("abcd bcde", "A", "1"));
+
+        // "abc" and "bcd" both occur, but "abcde" does not
+        assertTrue(index.containing("abcde").isEmpty());
+    }
+
+    @Test
+    void testShortQuery_fallsBackToScan() {
+        Book a = new Book("Go", "A", "1");
+        books.add(a);
+        books.add(new Book(null, "B", "2"));
+
+        assertEquals(List.of(a), index.containing("g"));
+    }
+
+    @Test
+    void testListChanges_keepIndexInSync() {
+        Book a = new Book("Alpha", "A", "1");
+        books.add(a);
+        books.remove(a);
+        assertTrue(index.containing("alpha").isEmpty());
+
+        books.add(a);
+        books.clear();
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testMatchesFullScan_afterManyRemovals() {
+        Random random = new Random(42);
+        String alphabet = "abcde ";
+        for (int i = 0; i < 500; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int j = 0; j < 8; j++) title.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            books.add(new Book(title.toString(), "A", String.valueOf(i)));
+        }
+        books.removeIf(b -> b.getIsbn().hashCode() % 3 == 0);
+
+        for (String q : List.of("ab", "abc", "a b", "cde", "eeee", "dcba")) {
+            List<Book> expected = new ArrayList<>();
+            for (Book b : books) if (b.getTitle().contains(q)) expected.add(b);
+            assertEquals(expected, index.containing(q), q);
+        }
+    }
+
+    @Test
+    void testContainingPage_stopsAtLimitAndReportsMore() {
+        for (int i = 0; i < 10; i++) books.add(new Book("Java Part " + i, "A", String.valueOf(i)));
+        books.add(new Book("Python", "A", "P"));
+
+        Page<Book> first = index.containing("java", 0, 4);
+        Page<Book> last = index.containing("java", 8, 4);
+
+        assertEquals(4, first.getItems().size());
+        assertEquals("Java Part 0", first.getItems().get(0).getTitle());
+        assertTrue(first.hasMore());
+        assertEquals(List.of("Java Part 8", "Java Part 9"), last.getItems().stream().map(Book::getTitle).toList());
+        assertFalse(last.hasMore());
+        assertEquals(10, Page.stream((o, l) -> index.containing("java", o, l), 3).count());
+    }
+
+    @Test
+    void testStream_matchesContainingAndIgnoresLaterUpdates() {
+        for (int i = 0; i < 10; i++) books.add(new Book("Java Part " + i, "A", String.valueOf(i)));
+        books.add(new Book("Javelin", "A", "J"));
+
+        Stream<Book> stream = index.stream("java");
+        books.add(new Book("Java Late", "A", "L"));
+
+        assertEquals(index.containing("java").subList(0, 10), stream.toList());
+        assertEquals(12, index.stream("ja").count(), "Short queries scan every element");
+        assertEquals(0, index.stream("kotlin").count());
+    }
+}
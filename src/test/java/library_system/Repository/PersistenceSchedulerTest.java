@@ -0,0 +1,142 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import library_system.domain.User;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistenceSchedulerTest {
+
+    private static final File usersFile = FileUtil.getDataFile("users.json");
+
+    @BeforeEach
+    void setup() {
+        UserRepository.clear();
+        BookRepository.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        PersistenceScheduler.shutdown();
+        UserRepository.clear();
+        BookRepository.clear();
+    }
+
+    @Test
+    void testDisabled_savesImmediately() throws Exception {
+        assertFalse(PersistenceScheduler.isEnabled());
+
+        UserRepository.addUser(new User("now", "p", "now@example.com"));
+
+        assertTrue(Files.readString(usersFile.toPath()).contains("now@example.com"));
+        assertFalse(PersistenceScheduler.isDirty("users"));
+    }
+
+    @Test
+    void testEnabled_defersUntilFlush() throws Exception {
+        PersistenceScheduler.enable(0, 0);
+
+        UserRepository.addUser(new User("later", "p", "later@example.com"));
+
+        assertTrue(PersistenceScheduler.isDirty("users"));
+        assertFalse(Files.readString(usersFile.toPath()).contains("later@example.com"), "Write must be deferred");
+
+        PersistenceScheduler.flush();
+
+        assertFalse(PersistenceScheduler.isDirty("users"));
+        assertTrue(Files.readString(usersFile.toPath()).contains("later@example.com"));
+    }
+
+    @Test
+    void testThreshold_triggersBackgroundFlush() throws Exception {
+        PersistenceScheduler.enable(0, 3);
+
+        BookRepository.addBook(new Book("B1", "A", "PS-1"));
+        BookRepository.addBook(new Book("B2", "A", "PS-2"));
+        UserRepository.addUser(new User("third", "p", "third@example.com"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((PersistenceScheduler.isDirty("users") || PersistenceScheduler.isDirty("books"))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(PersistenceScheduler.isDirty("books"));
+        assertFalse(PersistenceScheduler.isDirty("users"));
+    }
+
+    @Test
+    void testShutdown_flushesPendingChanges() throws Exception {
+        PersistenceScheduler.enable(60_000, 0);
+        UserRepository.addUser(new User("exit", "p", "exit@example.com"));
+
+        PersistenceScheduler.shutdown();
+
+        assertFalse(PersistenceScheduler.isEnabled());
+        assertTrue(Files.readString(usersFile.toPath()).contains("exit@example.com"));
+    }
+
+    @Test
+    void testBatch_issuesEachSaveOnceAtTheEnd() throws Exception {
+        int[] saves = {0};
+
+        PersistenceScheduler.batch(() -> {
+            for (int i = 0; i < 3; i++) PersistenceScheduler.markDirty("counter", () -> saves[0]++);
+            UserRepository.addUser(new User("batched", "p", "batched@example.com"));
+            assertEquals(0, saves[0]);
+            return null;
+        });
+
+        assertEquals(1, saves[0]);
+        assertTrue(Files.readString(usersFile.toPath()).contains("batched@example.com"));
+    }
+
+    @Test
+    void testFlush_keepsFailedSaveDirtyUntilItSucceeds() {
+        PersistenceScheduler.enable(0, 0);
+        int[] attempts = {0};
+
+        PersistenceScheduler.markDirty("flaky", () -> {
+            if (++attempts[0] == 1) throw new IOException("disk full");
+        });
+        PersistenceScheduler.flush();
+
+        assertEquals(1, attempts[0]);
+        assertTrue(PersistenceScheduler.isDirty("flaky"), "A failed save must be retried");
+
+        PersistenceScheduler.shutdown();
+
+        assertEquals(2, attempts[0]);
+        assertFalse(PersistenceScheduler.isDirty("flaky"));
+    }
+
+    @Test
+    void testShutdown_letsRunningBackgroundSaveFinish() throws Exception {
+        PersistenceScheduler.enable(0, 1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean finished = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        PersistenceScheduler.markDirty("slow", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(200);
+                finished.set(true);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        PersistenceScheduler.shutdown();
+
+        assertFalse(interrupted.get(), "Shutdown must not interrupt a save in progress");
+        assertTrue(finished.get(), "Shutdown returns only after the running save completed");
+    }
+}
@@ -0,0 +1,100 @@
+package library_system.repository;
+
+import library_system.domain.Book;
+import library_system.domain.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageFormatTest {
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void cleanup() {
+        BookRepository.setStorageFormat(StorageFormat.JSON);
+        UserRepository.setStorageFormat(StorageFormat.JSON);
+        BookRepository.clear();
+        UserRepository.clear();
+        FileUtil.getDataFile("books.smile").delete();
+        FileUtil.getDataFile("users.smile").delete();
+    }
+
+    @Test
+    void testResolve_swapsExtension() {
+        File json = new File("data", "books.json");
+        assertEquals(new File("data", "books.smile"), StorageFormat.SMILE.resolve(json));
+        assertEquals(json, StorageFormat.JSON.resolve(json));
+    }
+
+    @Test
+    void testConvert_roundTripPreservesDocument() throws Exception {
+        File json = dir.resolve("cds.json").toFile();
+        Files.writeString(json.toPath(), "[{\"mediaType\":\"CD\",\"title\":\"Hits\",\"artist\":\"Band\",\"quantity\":2}]");
+        File smile = dir.resolve("cds.smile").toFile();
+        File back = dir.resolve("back.json").toFile();
+
+        StorageFormat.convert(json, StorageFormat.JSON, smile, StorageFormat.SMILE);
+        StorageFormat.convert(smile, StorageFormat.SMILE, back, StorageFormat.JSON);
+
+        assertEquals(MapperProvider.MAPPER.readTree(json), MapperProvider.MAPPER.readTree(back));
+        assertTrue(smile.length() < json.length(), "Binary snapshot should be more compact");
+    }
+
+    @Test
+    void testRepository_savesAndLoadsBinarySnapshot() {
+        BookRepository.setStorageFormat(StorageFormat.SMILE);
+        BookRepository.clear();
+        BookRepository.addBook(new Book("Binary", "Author", "SMILE-1", 3));
+
+        BookRepository.loadFromFile();
+
+        assertTrue(FileUtil.getDataFile("books.smile").exists());
+        assertEquals(1, BookRepository.findByIsbn("SMILE-1").size());
+        assertEquals(3, BookRepository.findByIsbn("SMILE-1").get(0).getQuantity());
+    }
+
+    @Test
+    void testSwitchFormat_migratesExistingData() {
+        UserRepository.clear();
+        UserRepository.addUser(new User("migrated", "p", "m@example.com"));
+
+        UserRepository.setStorageFormat(StorageFormat.SMILE);
+        UserRepository.loadFromFile();
+
+        assertNotNull(UserRepository.findUser("migrated"), "Existing JSON data is converted on switch");
+    }
+
+    @Test
+    void testSwitchBack_carriesChangesMadeInOtherFormat() {
+        UserRepository.clear();
+        UserRepository.addUser(new User("first", "p", "f@example.com"));
+        UserRepository.setStorageFormat(StorageFormat.SMILE);
+        UserRepository.addUser(new User("second", "p", "s@example.com"));
+
+        UserRepository.setStorageFormat(StorageFormat.JSON);
+        UserRepository.loadFromFile();
+
+        assertNotNull(UserRepository.findUser("second"), "Stale JSON file must be refreshed on switch back");
+    }
+
+    @Test
+    void testMigrate_keepsNewerTarget() throws Exception {
+        File json = dir.resolve("books.json").toFile();
+        File smile = dir.resolve("books.smile").toFile();
+        Files.writeString(json.toPath(), "[]");
+        MapperProvider.SMILE_MAPPER.writeValue(smile, MapperProvider.MAPPER.readTree("[{\"title\":\"Live\"}]"));
+        json.setLastModified(smile.lastModified() - 10_000);
+
+        StorageFormat.migrate(json, StorageFormat.JSON, StorageFormat.SMILE);
+
+        assertEquals("Live", MapperProvider.SMILE_MAPPER.readTree(smile).get(0).get("title").asText());
+    }
+}
@@ -0,0 +1,136 @@
+package library_system.repository;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import library_system.domain.Book;
+import library_system.domain.Loan;
+import library_system.domain.User;
+import org.junit.jupiter.api.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitOfWorkTest {
+
+    private static final File journalFile = FileUtil.getDataFile("commits.journal");
+
+    @BeforeEach
+    void setup() {
+        UnitOfWork.disable();
+        journalFile.delete();
+        LoanRepository.clear();
+        UserRepository.clear();
+        BookRepository.clear();
+    }
+
+    @AfterEach
+    void cleanup() {
+        UnitOfWork.disable();
+        PersistenceScheduler.shutdown();
+        journalFile.delete();
+        LoanRepository.clear();
+        UserRepository.clear();
+        BookRepository.clear();
+    }
+
+    @Test
+    void testRun_commitsAcrossRepositoriesAndEmptiesJournal() {
+        UnitOfWork.enable();
+        Book book = new Book("Dune", "Herbert", "111", 2);
+        BookRepository.addBook(book);
+        User user = new User("reader", "p", "reader@mail.com");
+        UserRepository.addUser(user);
+
+        UnitOfWork.run(() -> {
+            book.tryReserve();
+            UnitOfWork.stage(book);
+            BookRepository.markDirty();
+            LoanRepository.addLoan(new Loan(user, book));
+            user.addFine(5);
+            UserRepository.updateUser(user);
+            return null;
+        });
+
+        assertEquals(0, journalFile.length(), "Journal should be empty once the commit is written out");
+        LoanRepository.loadFromFile();
+        UserRepository.loadFromFile();
+        BookRepository.loadFromFile();
+        assertEquals(1, LoanRepository.getUserLoans("reader").size());
+        assertEquals(5.0, UserRepository.findUser("reader").getFineBalance());
+        assertEquals(1, BookRepository.findByIsbnExact("111").getQuantity());
+    }
+
+    @Test
+    void testRun_writesFilesEvenWithWriteBehind() {
+        UnitOfWork.enable();
+        PersistenceScheduler.enable(60_000, 0);
+        Book book = new Book("Dune", "Herbert", "111", 2);
+        BookRepository.addBook(book);
+        PersistenceScheduler.flush();
+
+        UnitOfWork.run(() -> {
+            book.tryReserve();
+            UnitOfWork.stage(book);
+            BookRepository.markDirty();
+            return null;
+        });
+
+        assertFalse(PersistenceScheduler.isDirty("books"), "A committed unit of work is written through");
+    }
+
+    @Test
+    void testStage_outsideUnitOfWork_isIgnored() {
+        UnitOfWork.enable();
+        assertFalse(UnitOfWork.stage(MapperProvider.MAPPER.createObjectNode()));
+        assertFalse(UnitOfWork.stage(new User("u", "p", "u@mail.com")));
+    }
+
+    @Test
+    void testEnable_recoversCommitsWithoutDoneMarker() throws Exception {
+        Book book = new Book("Dune", "Herbert", "111", 2);
+        BookRepository.addBook(book);
+        User user = new User("reader", "p", "reader@mail.com");
+        UserRepository.addUser(user);
+
+        ObjectNode loan = MapperProvider.MAPPER.createObjectNode();
+        loan.put("id", 77);
+        loan.put("username", "reader");
+        loan.set("item", LoanRepository.itemRef(book));
+        loan.put("borrowedDate", LocalDate.now().toString());
+        loan.put("dueDate", LocalDate.now().plusDays(28).toString());
+        loan.put("returned", false);
+        ObjectNode add = MapperProvider.MAPPER.createObjectNode();
+        add.put("op", "ADD");
+        add.set("loan", loan);
+
+        ObjectNode item = LoanRepository.itemRef(book);
+        item.put("quantity", 1);
+        User after = new User("reader", "p", "reader@mail.com");
+        after.addFine(12);
+
+        ObjectNode unfinished = MapperProvider.MAPPER.createObjectNode();
+        unfinished.put("txn", 2);
+        unfinished.putArray("items").add(item);
+        unfinished.putArray("users").add(MapperProvider.MAPPER.<ObjectNode>valueToTree(after));
+        unfinished.putArray("loans").add(add);
+
+        ObjectNode finished = MapperProvider.MAPPER.createObjectNode();
+        finished.put("txn", 1);
+        finished.putArray("items").add(LoanRepository.itemRef(book).put("quantity", 0));
+        String lines = finished + "\n{\"done\":1}\n" + unfinished + "\n{\"txn\":3,\"items\":[";
+        Files.writeString(journalFile.toPath(), lines, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        UnitOfWork.enable();
+
+        assertEquals(1, book.getQuantity(), "Only the unfinished commit is re-applied");
+        assertEquals(12.0, user.getFineBalance());
+        List<Loan> loans = LoanRepository.getUserLoans("reader");
+        assertEquals(1, loans.size());
+        assertSame(book, loans.get(0).getItem());
+        assertEquals(0, journalFile.length());
+    }
+}
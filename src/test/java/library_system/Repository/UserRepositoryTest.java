@@ -58,4 +58,33 @@ class UserRepositoryTest {
 
         assertEquals(50, UserRepository.findUser("sara").getFineBalance());
     }
+
+    @Test
+    void testGetAllUsersPage() {
+        for (int i = 0; i < 5; i++) UserRepository.addUser(new User("u" + i, "p", "u" + i + "@mail.com"));
+
+        Page<User> page = UserRepository.getAllUsers(3, 10);
+
+        assertEquals(List.of("u3", "u4"), page.getItems().stream().map(User::getUsername).toList());
+        assertFalse(page.hasMore());
+        assertEquals(5, UserRepository.streamUsers().count());
+    }
+
+    @Test
+    void testLookupIndexes_followListChangesAndEmailUpdates() {
+        User u = new User("Omar", "p", "omar@mail.com");
+        UserRepository.getUsers().add(u);
+
+        assertSame(u, UserRepository.findUser("OMAR"));
+        assertSame(u, UserRepository.findUserByEmail(" Omar@Mail.com "));
+
+        u.setEmail("omar@new.com");
+        UserRepository.updateUser(u);
+        assertNull(UserRepository.findUserByEmail("omar@mail.com"));
+        assertSame(u, UserRepository.findUserByEmail("omar@new.com"));
+
+        UserRepository.getUsers().remove(u);
+        assertNull(UserRepository.findUser("omar"));
+        assertNull(UserRepository.findUserByEmail("omar@new.com"));
+    }
 }
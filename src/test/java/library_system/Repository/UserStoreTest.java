@@ -0,0 +1,117 @@
+package library_system.repository;
+
+import library_system.domain.User;
+import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserStoreTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    void testPut_appendsOneRecordAndLastRecordWins() throws Exception {
+        File file = new File(dir, "users.log");
+        UserStore store = new UserStore(file, MapperProvider.MAPPER);
+        User alice = new User("Alice", "p", "alice@mail.com");
+        store.put(alice);
+        store.put(new User("bob", "p", "bob@mail.com"));
+        long before = file.length();
+
+        alice.addFine(15);
+        store.put(alice);
+
+        assertEquals(3, store.size());
+        assertTrue(file.length() - before < before, "An update should append only the changed user");
+        List<User> loaded = new UserStore(file, MapperProvider.MAPPER).load();
+        assertEquals(List.of("Alice", "bob"), loaded.stream().map(User::getUsername).toList());
+        assertEquals(15.0, loaded.get(0).getFineBalance());
+        store.close();
+    }
+
+    @Test
+    void testDeleteAndTornTail_areHonoredOnLoad() throws Exception {
+        File file = new File(dir, "users.log");
+        UserStore store = new UserStore(file, MapperProvider.MAPPER);
+        store.put(new User("gone", "p", "g@mail.com"));
+        store.put(new User("kept", "p", "k@mail.com"));
+        store.delete("GONE");
+        store.close();
+        Files.writeString(file.toPath(), "{\"key\":\"half", StandardOpenOption.APPEND);
+
+        List<User> loaded = new UserStore(file, MapperProvider.MAPPER).load();
+
+        assertEquals(List.of("kept"), loaded.stream().map(User::getUsername).toList());
+    }
+
+    @Test
+    void testPutAfterTornTail_survivesReload() throws Exception {
+        File file = new File(dir, "users.log");
+        UserStore store = new UserStore(file, MapperProvider.MAPPER);
+        store.put(new User("first", "p", "f@mail.com"));
+        store.close();
+        Files.writeString(file.toPath(), "{\"key\":\"half", StandardOpenOption.APPEND);
+
+        store = new UserStore(file, MapperProvider.MAPPER);
+        store.load();
+        store.put(new User("second", "p", "s@mail.com"));
+        store.close();
+
+        List<User> loaded = new UserStore(file, MapperProvider.MAPPER).load();
+        assertEquals(List.of("first", "second"), loaded.stream().map(User::getUsername).toList());
+    }
+
+    @Test
+    void testRewrite_dropsSupersededRecords() throws Exception {
+        UserStore store = new UserStore(new File(dir, "users.log"), MapperProvider.MAPPER);
+        User u = new User("u", "p", "u@mail.com");
+        for (int i = 0; i < UserStore.MIN_GARBAGE + 1; i++) store.put(u);
+        store.setLiveCount(1);
+        assertTrue(store.needsCompaction());
+
+        store.rewrite(List.of(u));
+
+        assertEquals(1, store.size());
+        assertFalse(store.needsCompaction());
+        assertEquals(1, store.load().size());
+        store.close();
+    }
+
+    @Nested
+    class RepositoryRecordStore {
+
+        @BeforeEach
+        void setup() {
+            UserRepository.clear();
+            UserRepository.enableRecordStore();
+        }
+
+        @AfterEach
+        void cleanup() {
+            UserRepository.clear();
+            UserRepository.disableRecordStore();
+        }
+
+        @Test
+        void testUpdateUser_survivesReload() {
+            User u = new User("store", "p", "store@mail.com");
+            UserRepository.addUser(u);
+            UserRepository.addUser(new User("other", "p", "other@mail.com"));
+            u.addFine(30);
+            UserRepository.updateUser(u);
+            UserRepository.removeUser("other");
+
+            UserRepository.loadFromFile();
+
+            assertEquals(1, UserRepository.getAllUsers().size());
+            assertEquals(30.0, UserRepository.findUser("store").getFineBalance());
+        }
+    }
+}
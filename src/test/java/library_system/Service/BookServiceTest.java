@@ -2,9 +2,11 @@ package library_system.service;
 
 import library_system.repository.BookRepository;
 import library_system.domain.Book;
+import library_system.domain.ImportReport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -54,4 +56,64 @@ class BookServiceTest {
         assertEquals(1, result.size());
         assertEquals("Java Basics", result.get(0).getTitle());
     }
+
+    @Test
+    void testImportBooksCsv_headerQuotesAndRejects() throws Exception {
+        String csv = "isbn,title,author,quantity\n"
+                + "333,\"Spring, in Action\",Craig Walls,2\n"
+                + "444,\"The \"\"Quoted\"\" Book\",Someone,\n"
+                + "555,java basics,Other,1\n"
+                + "111,New Title,Other,1\n"
+                + "666,No Author,,1\n"
+                + "777,Bad Qty,A,zero\n"
+                + "333,Spring Again,B,1\n";
+
+        ImportReport report = bookService.importBooksCsv(new StringReader(csv));
+
+        assertEquals(2, report.getImported());
+        assertEquals(5, report.getRejectedCount());
+        assertEquals(4, report.getRejects().get(0).getRow());
+        assertTrue(report.getRejects().get(0).getReason().contains("duplicate title"));
+        assertEquals(2, bookService.searchByIsbn("333").get(0).getQuantity());
+        assertEquals("The \"Quoted\" Book", bookService.searchByIsbn("444").get(0).getTitle());
+        assertEquals(4, BookRepository.getBooks().size());
+    }
+
+    @Test
+    void testImportBooksJson_rejectsNonObjectsAndDuplicates() throws Exception {
+        String json = "[{\"title\":\"Clean Code\",\"author\":\"Robert Martin\",\"isbn\":\"888\",\"quantity\":3},"
+                + "42,"
+                + "{\"title\":\"Clean Code\",\"author\":\"X\",\"isbn\":\"999\"},"
+                + "{\"title\":\"Refactoring\",\"author\":\"Martin Fowler\",\"isbn\":\"222\"}]";
+
+        ImportReport report = bookService.importBooksJson(new StringReader(json));
+
+        assertEquals(1, report.getImported());
+        assertEquals(List.of(2, 3, 4), report.getRejects().stream().map(ImportReport.Reject::getRow).toList());
+        assertEquals("not a JSON object", report.getRejects().get(0).getReason());
+        assertEquals(3, bookService.searchByIsbn("888").get(0).getQuantity());
+    }
+
+    @Test
+    void testImportBooksCsv_rejectedRowDoesNotClaimItsTitle() throws Exception {
+        String csv = "isbn,title,author,quantity\n"
+                + "111,Fresh Title,Other,1\n"
+                + "901,Fresh Title,Other,1\n";
+
+        ImportReport report = bookService.importBooksCsv(new StringReader(csv));
+
+        assertEquals(1, report.getImported(), "Row 1 is rejected for its ISBN and must not block row 2's title");
+        assertTrue(report.getRejects().get(0).getReason().contains("duplicate ISBN"));
+        assertEquals("Fresh Title", bookService.searchByIsbn("901").get(0).getTitle());
+    }
+
+    @Test
+    void testSearchRanked_multiWordQueryAcrossTitleAndAuthor() {
+        bookService.addBook(new Book("Effective Java", "Joshua Bloch", "333"));
+
+        List<Book> result = bookService.searchRanked("bloch java", 2);
+
+        assertEquals(2, result.size());
+        assertEquals("Effective Java", result.get(0).getTitle());
+    }
 }
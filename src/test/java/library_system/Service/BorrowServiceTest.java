@@ -3,11 +3,21 @@ package library_system.service;
 import library_system.domain.*;
 import library_system.repository.BookRepository;
 import library_system.repository.CDRepository;
+import library_system.repository.FileUtil;
 import library_system.repository.LoanRepository;
+import library_system.repository.UnitOfWork;
 import library_system.repository.UserRepository;
 import org.junit.jupiter.api.*;
 
+import java.io.File;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -162,4 +172,125 @@ public class BorrowServiceTest {
 
         assertFalse(result, "Return must fail when internal item is null");
     }
+
+    // ------------------------------------------------------------
+    // Concurrency
+    // ------------------------------------------------------------
+
+    @Test
+    public void testConcurrentBorrows_neverLendMoreCopiesThanInStock() throws Exception {
+        Book book = new Book("Concurrency", "Goetz", "CC-1");
+        book.setQuantity(5);
+        BookRepository.getBooks().add(book);
+
+        int threads = 16;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            User borrower = new User("u" + i, "p", "u" + i + "@test.com");
+            results.add(pool.submit(() -> {
+                start.await();
+                return service.borrowBookInstance(borrower, book);
+            }));
+        }
+        start.countDown();
+
+        int successes = 0;
+        for (Future<Boolean> f : results) if (f.get(10, TimeUnit.SECONDS)) successes++;
+        pool.shutdown();
+
+        assertEquals(5, successes);
+        assertEquals(0, book.getQuantity());
+        assertEquals(5, LoanRepository.getAllLoans().size());
+    }
+
+    @Test
+    public void testConcurrentBorrows_sameUserGetsOneLoanPerItem() throws Exception {
+        Book book = new Book("Once", "Author", "CC-2");
+        book.setQuantity(10);
+        BookRepository.getBooks().add(book);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) results.add(pool.submit(() -> service.borrowBookInstance(user, book)));
+
+        int successes = 0;
+        for (Future<Boolean> f : results) if (f.get(10, TimeUnit.SECONDS)) successes++;
+        pool.shutdown();
+
+        assertEquals(1, successes);
+        assertEquals(9, book.getQuantity());
+    }
+
+    // ------------------------------------------------------------
+    // Batch checkout / return
+    // ------------------------------------------------------------
+
+    @Test
+    public void testBorrowItems_allOrNothing() {
+        Book inStock = new Book("Batch A", "X", "B-1");
+        Book soldOut = new Book("Batch B", "X", "B-2");
+        soldOut.setQuantity(0);
+        CD cd = new CD("Batch CD", "Band");
+        BookRepository.getBooks().add(inStock);
+        BookRepository.getBooks().add(soldOut);
+        CDRepository.getAll().add(cd);
+
+        assertFalse(service.borrowItems(user, List.of(inStock, cd, soldOut)));
+        assertEquals(1, inStock.getQuantity(), "Reservations must be rolled back");
+        assertEquals(1, cd.getQuantity());
+        assertTrue(LoanRepository.getAllLoans().isEmpty());
+
+        assertTrue(service.borrowItems(user, List.of(inStock, cd)));
+        assertEquals(0, inStock.getQuantity());
+        assertEquals(2, LoanRepository.getUserLoans("sara").size());
+        assertFalse(service.borrowItems(user, List.of(cd)), "Already borrowed");
+    }
+
+    @Test
+    public void testReturnItems_chargesFinesOnceAndRejectsUnknownItems() {
+        Book a = new Book("Ret A", "X", "R-1");
+        Book b = new Book("Ret B", "X", "R-2");
+        BookRepository.getBooks().add(a);
+        BookRepository.getBooks().add(b);
+        assertTrue(service.borrowItems(user, List.of(a, b)));
+        for (Loan loan : LoanRepository.getUserLoans("sara")) {
+            loan.setBorrowedDate(LocalDate.now().minusDays(40));
+            LoanRepository.updateDueDate(loan, LocalDate.now().minusDays(5));
+        }
+
+        assertFalse(service.returnItems(user, List.of(a, new Book("Never", "X", "R-3"))));
+        assertEquals(0, a.getQuantity(), "Nothing is returned when one item fails");
+
+        assertTrue(service.returnItems(user, List.of(a, b)));
+        assertEquals(1, a.getQuantity());
+        assertEquals(1, b.getQuantity());
+        assertEquals(2 * new BookFineStrategy().calculateFine(5), user.getFineBalance());
+        assertFalse(LoanRepository.hasActiveLoans(user));
+    }
+
+    @Test
+    public void testReturnItem_withCommitJournal_persistsStockLoanAndFineTogether() {
+        Book book = new Book("Journaled", "X", "J-1");
+        BookRepository.getBooks().add(book);
+        UnitOfWork.enable();
+        try {
+            assertTrue(service.borrowBookInstance(user, book));
+            Loan loan = LoanRepository.getUserLoans("sara").get(0);
+            LoanRepository.updateDueDate(loan, LocalDate.now().minusDays(3));
+
+            assertTrue(service.returnItem(user, book));
+
+            File journal = FileUtil.getDataFile("commits.journal");
+            assertEquals(0, journal.length(), "Every commit was written out");
+            LoanRepository.loadFromFile();
+            UserRepository.loadFromFile();
+            assertFalse(LoanRepository.hasActiveLoans(user));
+            assertEquals(user.getFineBalance(), UserRepository.findUser("sara").getFineBalance());
+            assertTrue(user.getFineBalance() > 0);
+        } finally {
+            UnitOfWork.disable();
+        }
+    }
 }
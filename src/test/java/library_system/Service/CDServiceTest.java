@@ -2,9 +2,11 @@ package library_system.service;
 
 import library_system.repository.CDRepository;
 import library_system.domain.CD;
+import library_system.domain.ImportReport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringReader;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -91,4 +93,21 @@ class CDServiceTest {
 
         assertEquals(2, result.size());
     }
+
+    @Test
+    void testImportCDsCsv_withoutHeader() throws Exception {
+        cdService.addCD(new CD("Thriller", "Michael Jackson"));
+        String csv = "Abbey Road,The Beatles,2\n"
+                + "\n"
+                + "thriller,Someone Else\n"
+                + "Blue,,1\n"
+                + "Kind of Blue,Miles Davis\n";
+
+        ImportReport report = cdService.importCDsCsv(new StringReader(csv));
+
+        assertEquals(2, report.getImported());
+        assertEquals(List.of(3, 4), report.getRejects().stream().map(ImportReport.Reject::getRow).toList());
+        assertEquals(3, cdService.getAllCDs().size());
+        assertEquals(2, cdService.searchByTitle("Abbey Road").get(0).getQuantity());
+    }
 }
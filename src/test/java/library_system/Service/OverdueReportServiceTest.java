@@ -2,10 +2,15 @@ package library_system.service;
 
 import library_system.repository.LoanRepository;
 import library_system.domain.*;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.StringWriter;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -29,6 +34,11 @@ public class OverdueReportServiceTest {
         cd = new CD("Best Hits", "Artist");
     }
 
+    @AfterEach
+    void cleanup() {
+        LoanRepository.clear();
+    }
+
     @Test
     void testGenerateOverdueReport() {
         Loan loan1 = new Loan(user, book);
@@ -52,4 +62,46 @@ public class OverdueReportServiceTest {
 
         assertEquals(expectedFine, report.getTotalFine());
     }
+
+    @Test
+    void testGenerateAllReports_matchesPerUserReports() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            User u = new User(String.format("user%03d", i), "p", "u" + i + "@example.com");
+            users.add(u);
+            Loan loan = new Loan(u, i % 2 == 0 ? new Book("B" + i, "A", "ALL-" + i) : new CD("C" + i, "X"));
+            loan.setDueDate(LocalDate.now().minusDays(1 + i % 5));
+            LoanRepository.addLoan(loan);
+        }
+        LoanRepository.addLoan(new Loan(user, book)); // not overdue: no report
+
+        Map<String, OverdueReport> all = reportService.generateAllReports();
+
+        assertEquals(100, all.size());
+        assertEquals("user000", all.keySet().iterator().next());
+        for (User u : users) {
+            OverdueReport single = reportService.generateReport(u);
+            OverdueReport fromAll = all.get(u.getUsername());
+            assertEquals(single.getTotalFine(), fromAll.getTotalFine());
+            assertEquals(single.getOverdueBooks(), fromAll.getOverdueBooks());
+            assertEquals(single.getOverdueCDs(), fromAll.getOverdueCDs());
+        }
+    }
+
+    @Test
+    void testWriteAllReports_streamsEveryUserInOrder() throws Exception {
+        int count = OverdueReportService.CHUNK_USERS + 10;
+        for (int i = 0; i < count; i++) {
+            Loan loan = new Loan(new User(String.format("s%04d", i), "p", "s" + i + "@example.com"), new CD("C" + i, "X"));
+            loan.setDueDate(LocalDate.now().minusDays(2));
+            LoanRepository.addLoan(loan);
+        }
+
+        StringWriter out = new StringWriter();
+        assertEquals(count, reportService.writeAllReports(out));
+
+        String text = out.toString();
+        assertEquals(count, text.split("--- Overdue Report ---", -1).length - 1);
+        assertTrue(text.indexOf("User: s0000") < text.indexOf(String.format("User: s%04d", count - 1)));
+    }
 }
@@ -4,14 +4,19 @@ import library_system.repository.LoanRepository;
 import library_system.repository.UserRepository;
 import library_system.domain.Book;
 import library_system.domain.Loan;
+import library_system.domain.ReminderSummary;
 import library_system.domain.User;
+import library_system.notification.EmailNotifier;
 import library_system.notification.Observer;
+import jakarta.mail.Session;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.net.ServerSocket;
 import java.time.LocalDate;
+import java.util.Properties;
 
 public class ReminderServiceTest {
 
@@ -67,4 +72,57 @@ public class ReminderServiceTest {
         Assertions.assertEquals(2, status);
         Assertions.assertTrue(called[0]);
     }
+
+    @Test
+    public void testRunOverdueReminders_reportsSummary() {
+        for (int i = 0; i < 3; i++) {
+            User u = new User("late" + i, "p", "late" + i + "@example.com");
+            UserRepository.addUser(u);
+            Loan loan = new Loan(u, new Book("Late " + i, "A", "ISBN-LATE-" + i));
+            loan.setBorrowedDate(LocalDate.now().minusDays(30));
+            loan.setDueDate(LocalDate.now().minusDays(2));
+            LoanRepository.addLoan(loan);
+        }
+        reminderService.configureDispatch(2, 1, 1, 2, 1);
+        reminderService.addObserver((user, message) -> {
+            if (user.getUsername().equals("late1")) throw new IllegalStateException("bounced");
+        });
+
+        ReminderSummary summary = reminderService.runOverdueReminders();
+
+        Assertions.assertEquals(3, summary.getUsersWithOverdue());
+        Assertions.assertEquals(2, summary.getUsersNotified());
+        Assertions.assertEquals(1, summary.getFailedDeliveries());
+        Assertions.assertEquals(1, summary.getRetries());
+        Assertions.assertEquals(ReminderSummary.SENT, summary.getStatusCode());
+    }
+
+    @Test
+    public void testRunOverdueReminders_countsFailedEmails() throws Exception {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "localhost");
+        props.put("mail.smtp.port", String.valueOf(closedPort));
+        props.put("mail.smtp.connectiontimeout", "1000");
+        EmailNotifier notifier = new EmailNotifier("library@example.com", "pw", Session.getInstance(props));
+
+        User u = new User("bounce", "p", "bounce@example.com");
+        UserRepository.addUser(u);
+        Loan loan = new Loan(u, new Book("Lost Book", "A", "ISBN-LOST"));
+        loan.setBorrowedDate(LocalDate.now().minusDays(30));
+        loan.setDueDate(LocalDate.now().minusDays(2));
+        LoanRepository.addLoan(loan);
+        reminderService.configureDispatch(1, 4, 1, 2, 1);
+        reminderService.addObserver(notifier);
+
+        ReminderSummary summary = reminderService.runOverdueReminders();
+
+        Assertions.assertTrue(summary.getFailedDeliveries() > 0);
+        Assertions.assertEquals(0, summary.getDeliveries());
+        Assertions.assertEquals(0, summary.getUsersNotified());
+        Assertions.assertEquals(ReminderSummary.NOTHING_SENT, summary.getStatusCode());
+    }
 }
@@ -60,6 +60,31 @@ class UserServiceTest {
         assertNull(UserRepository.findUser(user.getUsername()));
     }
 
+    @Test
+    void testPayFine_marksSettledLoansPaid() {
+        Loan first = new Loan(user, book);
+        Loan second = new Loan(user, new Book("Java Advanced", "James", "5678"));
+        LoanRepository.addLoan(first);
+        LoanRepository.addLoan(second);
+        LoanRepository.markLoanReturned(first, 10);
+        LoanRepository.markLoanReturned(second, 10);
+        user.addFine(20);
+
+        assertTrue(userService.payFine(user, 5));
+        assertEquals(15, user.getFineBalance());
+        assertEquals(20, LoanRepository.getOutstandingFines("testUser", LocalDate.now()).getRecordedFines());
+
+        assertTrue(userService.payFine(user, 5));
+        assertTrue(first.isFinePaid());
+        assertFalse(second.isFinePaid());
+        assertEquals(10, LoanRepository.getOutstandingFines("testUser", LocalDate.now()).getRecordedFines());
+
+        assertTrue(userService.payFine(user, 10));
+        assertTrue(second.isFinePaid());
+        assertEquals(0, LoanRepository.getOutstandingFines("testUser", LocalDate.now()).getTotalFine());
+        assertFalse(userService.payFine(user, 1));
+    }
+
     @Test
     void testLoginLogout() {
         assertTrue(userService.login("testUser", "pass"));
@@ -38,4 +38,25 @@ public class LoanTest {
         int expectedFine = book.getFineStrategy().calculateFine(3);
         assertEquals(expectedFine, loan.calculateFine());
     }
+
+    @Test
+    void testFixedClock_drivesLoanDatesAndMemoFollowsChanges() {
+        LibraryClock.fixAt(LocalDate.of(2025, 3, 1));
+        try {
+            Loan loan = new Loan(new User("clock", "p", "clock@example.com"), new CD("Hits", "Band"));
+            assertEquals(LocalDate.of(2025, 3, 1), loan.getBorrowedDate());
+            assertEquals(0, loan.calculateFine());
+
+            LibraryClock.fixAt(loan.getDueDate().plusDays(2));
+            assertEquals(2, loan.getOverdueDays());
+            assertEquals(40, loan.calculateFine());
+
+            loan.setDueDate(loan.getDueDate().minusDays(1));
+            assertEquals(60, loan.calculateFine(), "A new due date invalidates the memo");
+            loan.markReturned();
+            assertEquals(0, loan.getOverdueDays(), "Returning invalidates the memo");
+        } finally {
+            LibraryClock.reset();
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package library_system.domain;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention benchmark for {@link Media#tryReserve()} / {@link Media#release()}.
+ * <p>
+ * Not a unit test (surefire does not pick it up). Run it from the IDE, or with
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass="library_system.domain.MediaContentionBenchmark"}.
+ * For 1, 2, 4, ... up to the number of cores it prints borrow+return pairs per second on one
+ * shared item, next to the former pattern (get then set under a lock) as a baseline.
+ * </p>
+ */
+public class MediaContentionBenchmark {
+
+    private static final long WARMUP_MILLIS = 500;
+    private static final long RUN_MILLIS = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%-8s %18s %18s%n", "threads", "atomic ops/s", "locked ops/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Book atomic = new Book("Bench", "A", "B-1", threads);
+            Book locked = new Book("Bench", "A", "B-2", threads);
+
+            run(threads, WARMUP_MILLIS, () -> reserveRelease(atomic));
+            long atomicOps = run(threads, RUN_MILLIS, () -> reserveRelease(atomic));
+            run(threads, WARMUP_MILLIS, () -> lockedDecrementIncrement(locked));
+            long lockedOps = run(threads, RUN_MILLIS, () -> lockedDecrementIncrement(locked));
+
+            System.out.printf("%-8d %18d %18d%n", threads,
+                    atomicOps * 1000 / RUN_MILLIS, lockedOps * 1000 / RUN_MILLIS);
+        }
+    }
+
+    private static boolean reserveRelease(Media m) {
+        if (!m.tryReserve()) return false;
+        m.release();
+        return true;
+    }
+
+    private static boolean lockedDecrementIncrement(Media m) {
+        synchronized (m) {
+            if (m.getQuantity() <= 0) return false;
+            m.setQuantity(m.getQuantity() - 1);
+        }
+        synchronized (m) {
+            m.setQuantity(m.getQuantity() + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Runs {@code op} on {@code threads} threads for {@code millis} and returns the number of successful calls.
+     */
+    private static long run(int threads, long millis, Op op) throws InterruptedException {
+        LongAdder done = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long n = 0;
+                while (System.nanoTime() < deadline[0]) {
+                    if (op.run()) n++;
+                }
+                done.add(n);
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        // published to the workers by the latch
+        deadline[0] = System.nanoTime() + millis * 1_000_000;
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        return done.sum();
+    }
+
+    @FunctionalInterface
+    private interface Op {
+        boolean run();
+    }
+}
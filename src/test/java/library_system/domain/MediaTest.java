@@ -0,0 +1,66 @@
+package library_system.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MediaTest {
+
+    @Test
+    void testTryReserve_failsAtZero() {
+        Book book = new Book("T", "A", "1", 1);
+
+        assertTrue(book.tryReserve());
+        assertFalse(book.tryReserve());
+        assertEquals(0, book.getQuantity());
+    }
+
+    @Test
+    void testRelease_returnsCopyToStock() {
+        CD cd = new CD("Album", "Band");
+        cd.setQuantity(0);
+
+        assertEquals(1, cd.release());
+        assertTrue(cd.tryReserve());
+    }
+
+    @Test
+    void testConcurrentReserve_neverOversells() throws Exception {
+        Book book = new Book("T", "A", "2", 1000);
+        AtomicInteger reserved = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    if (book.tryReserve()) reserved.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(1000, reserved.get());
+        assertEquals(0, book.getQuantity());
+    }
+
+    @Test
+    void testNormalizedKeys_followSetters() {
+        Book book = new Book("  Clean Code ", "MARTIN", " ISBN-1 ");
+        assertEquals("clean code", book.getNormalizedTitle());
+        assertEquals("martin", book.getNormalizedAuthor());
+        assertEquals("isbn-1", book.getNormalizedIsbn());
+
+        book.setTitle("Ｒｅｆａｃｔｏｒｉｎｇ"); // full-width letters fold to ASCII
+        assertEquals("refactoring", book.getNormalizedTitle());
+
+        CD cd = new CD("Album", null);
+        assertNull(cd.getNormalizedArtist());
+        cd.setArtist("The Band");
+        assertEquals("the band", cd.getNormalizedArtist());
+    }
+}
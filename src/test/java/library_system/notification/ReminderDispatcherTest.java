@@ -0,0 +1,79 @@
+package library_system.notification;
+
+import library_system.domain.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReminderDispatcherTest {
+
+    @Test
+    void testFailingDelivery_isRetriedWithBackoffThenCounted() {
+        AtomicInteger calls = new AtomicInteger();
+        Observer flaky = (user, message) -> {
+            if (calls.incrementAndGet() < 3) throw new IllegalStateException("try again");
+        };
+        Observer broken = (user, message) -> {
+            throw new IllegalStateException("down");
+        };
+        ReminderDispatcher dispatcher = new ReminderDispatcher(2, 4, 1, 3, 1);
+
+        dispatcher.submit(flaky, new User("a", "p", "a@mail.com"), "m");
+        dispatcher.submit(broken, new User("b", "p", "b@mail.com"), "m");
+        ReminderDispatcher.Result result = dispatcher.finish();
+
+        assertEquals(1, result.getDelivered());
+        assertEquals(1, result.getFailed());
+        assertEquals(4, result.getRetries());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    void testPerObserverLimit_capsConcurrentDeliveries() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Observer slow = (user, message) -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        };
+        ReminderDispatcher dispatcher = new ReminderDispatcher(8, 2, 2, 1, 0);
+
+        for (int i = 0; i < 40; i++) dispatcher.submit(slow, new User("u" + i, "p", "u@mail.com"), "m");
+        ReminderDispatcher.Result result = dispatcher.finish();
+
+        assertEquals(40, result.getDelivered());
+        assertTrue(peak.get() <= 2, "At most 2 concurrent deliveries per observer, saw " + peak.get());
+    }
+
+    @Test
+    void testObserverAtLimit_doesNotHoldUpOtherObservers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Observer stuck = (user, message) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        CountDownLatch otherDone = new CountDownLatch(1);
+        ReminderDispatcher dispatcher = new ReminderDispatcher(2, 8, 1, 1, 0);
+
+        for (int i = 0; i < 3; i++) dispatcher.submit(stuck, new User("s" + i, "p", "s@mail.com"), "m");
+        dispatcher.submit((user, message) -> { }, new User("o", "p", "o@mail.com"), "m",
+                (user, ok) -> otherDone.countDown());
+
+        assertTrue(otherDone.await(5, TimeUnit.SECONDS),
+                "A free worker must serve another observer instead of waiting for a full one");
+        release.countDown();
+        assertEquals(4, dispatcher.finish().getDelivered());
+    }
+}
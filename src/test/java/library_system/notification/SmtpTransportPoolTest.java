@@ -0,0 +1,189 @@
+package library_system.notification;
+
+import library_system.domain.User;
+import jakarta.mail.Message;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmtpTransportPoolTest {
+
+    /** Minimal local SMTP server: accepts every message and counts connections and messages. */
+    static class FakeSmtpServer implements AutoCloseable {
+        final ServerSocket server = new ServerSocket(0);
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger messages = new AtomicInteger();
+        final List<Socket> clients = new CopyOnWriteArrayList<>();
+        volatile boolean rejectRecipients = false;
+
+        FakeSmtpServer() throws IOException {
+            Thread acceptor = new Thread(() -> {
+                while (!server.isClosed()) {
+                    try {
+                        Socket s = server.accept();
+                        connections.incrementAndGet();
+                        clients.add(s);
+                        Thread session = new Thread(() -> serve(s));
+                        session.setDaemon(true);
+                        session.start();
+                    } catch (IOException closed) {
+                        return;
+                    }
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        /** Drops every open client connection, as a server-side idle timeout would. */
+        void dropClients() throws IOException {
+            for (Socket s : clients) s.close();
+            clients.clear();
+        }
+
+        private void serve(Socket s) {
+            try (s;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+                 PrintWriter out = new PrintWriter(s.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+                out.print("220 fake ESMTP\r\n");
+                out.flush();
+                String line;
+                boolean data = false;
+                while ((line = in.readLine()) != null) {
+                    if (data) {
+                        if (line.equals(".")) {
+                            data = false;
+                            messages.incrementAndGet();
+                            out.print("250 queued\r\n");
+                            out.flush();
+                        }
+                        continue;
+                    }
+                    String cmd = line.toUpperCase();
+                    if (cmd.startsWith("EHLO")) out.print("250-fake\r\n250 OK\r\n");
+                    else if (cmd.startsWith("DATA")) { out.print("354 go\r\n"); data = true; }
+                    else if (cmd.startsWith("RCPT") && rejectRecipients) out.print("550 no such user\r\n");
+                    else if (cmd.startsWith("QUIT")) { out.print("221 bye\r\n"); out.flush(); return; }
+                    else out.print("250 OK\r\n");
+                    out.flush();
+                }
+            } catch (IOException ignored) {
+                // client went away
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+            dropClients();
+        }
+    }
+
+    private FakeSmtpServer smtp;
+    private EmailNotifier notifier;
+
+    @BeforeEach
+    void setup() throws Exception {
+        smtp = new FakeSmtpServer();
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "localhost");
+        props.put("mail.smtp.port", String.valueOf(smtp.port()));
+        props.put("mail.smtp.auth", "false");
+        notifier = new EmailNotifier("sender@test.com", "secret", Session.getInstance(props));
+    }
+
+    @AfterEach
+    void cleanup() throws Exception {
+        notifier.disablePooledTransport();
+        smtp.close();
+    }
+
+    @Test
+    void testPooledNotifier_reusesOneConnection() {
+        notifier.enablePooledTransport(2);
+        User user = new User("u", "p", "u@test.com");
+
+        for (int i = 0; i < 5; i++) notifier.notify(user, "message " + i);
+
+        assertEquals(5, smtp.messages.get());
+        assertEquals(1, smtp.connections.get());
+        assertEquals(1, notifier.getTransportPool().getConnectCount());
+    }
+
+    @Test
+    void testDroppedConnection_isReplacedOnNextSend() throws Exception {
+        notifier.enablePooledTransport(1);
+        User user = new User("u", "p", "u@test.com");
+        notifier.notify(user, "first");
+
+        smtp.dropClients();
+        notifier.notify(user, "second");
+
+        assertEquals(2, smtp.messages.get());
+        assertEquals(2, smtp.connections.get());
+    }
+
+    @Test
+    void testRefusedMessage_isNotRetriedAndFreesItsSlot() throws Exception {
+        Properties props = new Properties();
+        props.put("mail.smtp.host", "localhost");
+        props.put("mail.smtp.port", String.valueOf(smtp.port()));
+        Session session = Session.getInstance(props);
+        MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("sender@test.com"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("u@test.com"));
+        message.setText("m");
+
+        try (SmtpTransportPool pool = new SmtpTransportPool(session, null, null, 1, 0)) {
+            pool.send(message);
+            smtp.rejectRecipients = true;
+            assertThrows(SendFailedException.class, () -> pool.send(message));
+            assertEquals(1, pool.getConnectCount(), "A refused message must not be retried on a new connection");
+
+            smtp.rejectRecipients = false;
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> pool.send(message),
+                    "The failed send must give its connection slot back");
+        }
+        assertEquals(2, smtp.messages.get());
+    }
+
+    @Test
+    void testConcurrentSends_stayWithinMaxConnections() throws Exception {
+        notifier.enablePooledTransport(2);
+        Thread[] senders = new Thread[6];
+        for (int t = 0; t < senders.length; t++) {
+            int n = t;
+            senders[t] = new Thread(() -> {
+                for (int i = 0; i < 5; i++) notifier.notify(new User("u" + n, "p", "u" + n + "@test.com"), "m");
+            });
+            senders[t].start();
+        }
+        for (Thread t : senders) t.join();
+
+        assertEquals(30, smtp.messages.get());
+        assertTrue(smtp.connections.get() <= 2, "Opened " + smtp.connections.get() + " connections");
+    }
+}